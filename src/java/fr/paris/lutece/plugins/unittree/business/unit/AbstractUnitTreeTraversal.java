@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * AbstractUnitTreeTraversal
+ *
+ */
+public abstract class AbstractUnitTreeTraversal implements IUnitTreeTraversal
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Integer> selectAllSubUnitsId( int nIdUnit, Plugin plugin )
+    {
+        List<Unit> listUnits = selectAllSubUnits( nIdUnit, plugin );
+        List<Integer> listIdUnits = new ArrayList<>( listUnits.size( ) );
+
+        for ( Unit unit : listUnits )
+        {
+            listIdUnits.add( unit.getIdUnit( ) );
+        }
+
+        return listIdUnits;
+    }
+
+    /**
+     * Build a unit from the current row of a query selecting the columns <code>id_unit, id_parent, code, label, description</code>, with the mapping of
+     * {@link UnitDAO}
+     * 
+     * @param daoUtil
+     *            the DAOUtil
+     * @return the unit
+     */
+    protected Unit dataToObject( DAOUtil daoUtil )
+    {
+        return UnitDAO.dataToObject( daoUtil );
+    }
+}
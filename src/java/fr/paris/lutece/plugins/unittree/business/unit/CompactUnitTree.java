@@ -0,0 +1,747 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * Compact structural index of the unit tree. The units are renumbered with dense indexes, from 0 to size - 1, in the order of their ids. The hierarchy is
+ * stored as parent, first child and next sibling links in primitive arrays, so that the structural queries run without boxing nor object allocation.
+ * The units are also numbered with nested intervals : left is the rank of the unit in a depth first pre-order traversal, and right is the greatest left of
+ * its sub tree. A unit is then an ancestor of another one if the interval of the second is inside the interval of the first, and the sub units of a
+ * unit are the units found at the positions left + 1 to right of the pre-order. Each unit finally gets its depth and a jump pointer to one of its
+ * ancestors, chosen with the skew binary scheme so that any ancestor, and the lowest common ancestor of two units, is reached in O(log n) jumps. The
+ * whole index takes nine ints per unit and is immutable. A modified tree is derived from an existing one without numbering it again : the arrays are
+ * copied, then only the intervals of the units whose rank changes, the intervals of the ancestors and the jump pointers of a moved sub tree are
+ * updated.
+ *
+ */
+public final class CompactUnitTree
+{
+    /** The value of a link that points to no unit */
+    public static final int NONE = -1;
+
+    private final int [ ] _ids;
+    private final int [ ] _parent;
+    private final int [ ] _firstChild;
+    private final int [ ] _nextSibling;
+    private final int [ ] _left;
+    private final int [ ] _right;
+    private final int [ ] _preOrder;
+    private final int [ ] _depth;
+    private final int [ ] _jump;
+
+    /**
+     * Constructor
+     * 
+     * @param listUnits
+     *            all the units of the tree. The children of a unit keep the order they have in this list.
+     */
+    public CompactUnitTree( List<Unit> listUnits )
+    {
+        int nSize = listUnits.size( );
+        _ids = new int [ nSize];
+        _parent = new int [ nSize];
+        _firstChild = new int [ nSize];
+        _nextSibling = new int [ nSize];
+        _left = new int [ nSize];
+        _right = new int [ nSize];
+        _preOrder = new int [ nSize];
+        _depth = new int [ nSize];
+        _jump = new int [ nSize];
+
+        for ( int i = 0; i < nSize; i++ )
+        {
+            _ids [i] = listUnits.get( i ).getIdUnit( );
+        }
+
+        Arrays.sort( _ids );
+        Arrays.fill( _firstChild, NONE );
+        Arrays.fill( _nextSibling, NONE );
+
+        // The children are prepended to their parent, so the list is read backwards to keep its order
+        for ( int i = nSize - 1; i >= 0; i-- )
+        {
+            Unit unit = listUnits.get( i );
+            int nIndex = indexOf( unit.getIdUnit( ) );
+            int nParent = indexOf( unit.getIdParent( ) );
+            _parent [nIndex] = nParent;
+
+            if ( nParent != NONE )
+            {
+                _nextSibling [nIndex] = _firstChild [nParent];
+                _firstChild [nParent] = nIndex;
+            }
+        }
+
+        number( );
+    }
+
+    /**
+     * Constructor of a derived tree
+     * 
+     * @param ids
+     *            the ids of the units
+     * @param parent
+     *            the parent links
+     * @param firstChild
+     *            the first child links
+     * @param nextSibling
+     *            the next sibling links
+     * @param left
+     *            the left bounds
+     * @param right
+     *            the right bounds
+     * @param preOrder
+     *            the units in pre-order
+     * @param depth
+     *            the depths
+     * @param jump
+     *            the jump pointers
+     */
+    private CompactUnitTree( int [ ] ids, int [ ] parent, int [ ] firstChild, int [ ] nextSibling, int [ ] left, int [ ] right, int [ ] preOrder,
+            int [ ] depth, int [ ] jump )
+    {
+        _ids = ids;
+        _parent = parent;
+        _firstChild = firstChild;
+        _nextSibling = nextSibling;
+        _left = left;
+        _right = right;
+        _preOrder = preOrder;
+        _depth = depth;
+        _jump = jump;
+    }
+
+    /**
+     * Number the units with nested intervals, and compute their depth and jump pointer. Units that are not reachable from a root unit, which only happens
+     * with corrupted data, keep {@link #NONE} as interval and depth.
+     */
+    private void number( )
+    {
+        Arrays.fill( _left, NONE );
+        Arrays.fill( _right, NONE );
+        Arrays.fill( _preOrder, NONE );
+        Arrays.fill( _depth, NONE );
+
+        int nPosition = 0;
+
+        for ( int nRoot = 0; nRoot < _ids.length; nRoot++ )
+        {
+            if ( _parent [nRoot] == NONE )
+            {
+                for ( int nIndex = nRoot; nIndex != NONE; nIndex = next( nIndex, nRoot ) )
+                {
+                    _left [nIndex] = nPosition;
+                    _right [nIndex] = nPosition;
+                    _preOrder [nPosition++] = nIndex;
+                    jump( nIndex );
+                }
+            }
+        }
+
+        // Going backwards in pre-order visits the sub units before their parent, so the right bounds bubble up in one pass
+        for ( int nPositionBack = nPosition - 1; nPositionBack > 0; nPositionBack-- )
+        {
+            int nIndex = _preOrder [nPositionBack];
+            int nParent = _parent [nIndex];
+
+            if ( ( nParent != NONE ) && ( _right [nParent] < _right [nIndex] ) )
+            {
+                _right [nParent] = _right [nIndex];
+            }
+        }
+    }
+
+    /**
+     * Compute the depth and the jump pointer of a unit, once those of its parent are known. The jump pointer of a root unit is the unit itself. Otherwise,
+     * if the two previous jumps from the parent cover the same distance, the unit jumps over both of them, else it jumps to its parent.
+     * 
+     * @param nIndex
+     *            the index of the unit
+     */
+    private void jump( int nIndex )
+    {
+        int nParent = _parent [nIndex];
+
+        if ( nParent == NONE )
+        {
+            _depth [nIndex] = 0;
+            _jump [nIndex] = nIndex;
+
+            return;
+        }
+
+        _depth [nIndex] = _depth [nParent] + 1;
+
+        int nJump = _jump [nParent];
+
+        if ( ( _depth [nParent] - _depth [nJump] ) == ( _depth [nJump] - _depth [_jump [nJump]] ) )
+        {
+            _jump [nIndex] = _jump [nJump];
+        }
+        else
+        {
+            _jump [nIndex] = nParent;
+        }
+    }
+
+    /**
+     * Get the number of units in the tree
+     * 
+     * @return the number of units
+     */
+    public int size( )
+    {
+        return _ids.length;
+    }
+
+    /**
+     * Get the dense index of a unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return the index of the unit, or {@link #NONE} if the unit is not in the tree
+     */
+    public int indexOf( int nIdUnit )
+    {
+        int nIndex = Arrays.binarySearch( _ids, nIdUnit );
+
+        return ( nIndex >= 0 ) ? nIndex : NONE;
+    }
+
+    /**
+     * Get the id of the unit at a given index
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return the id unit
+     */
+    public int getIdUnit( int nIndex )
+    {
+        return _ids [nIndex];
+    }
+
+    /**
+     * Get the parent of a unit
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return the index of the parent unit, or {@link #NONE} for the root unit
+     */
+    public int getParent( int nIndex )
+    {
+        return _parent [nIndex];
+    }
+
+    /**
+     * Get the first child of a unit
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return the index of the first child, or {@link #NONE} if the unit has no sub unit
+     */
+    public int getFirstChild( int nIndex )
+    {
+        return _firstChild [nIndex];
+    }
+
+    /**
+     * Get the next sibling of a unit
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return the index of the next sibling, or {@link #NONE} if the unit is the last child of its parent
+     */
+    public int getNextSibling( int nIndex )
+    {
+        return _nextSibling [nIndex];
+    }
+
+    /**
+     * Get the left bound of the interval of a unit, which is its rank in a depth first pre-order traversal
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return the left bound
+     */
+    public int getLeft( int nIndex )
+    {
+        return _left [nIndex];
+    }
+
+    /**
+     * Get the right bound of the interval of a unit, which is the greatest left bound of its sub tree
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return the right bound
+     */
+    public int getRight( int nIndex )
+    {
+        return _right [nIndex];
+    }
+
+    /**
+     * Get the unit at a given rank of the depth first pre-order traversal
+     * 
+     * @param nLeft
+     *            the rank, which is the left bound of the unit
+     * @return the index of the unit
+     */
+    public int getIndexAt( int nLeft )
+    {
+        return _preOrder [nLeft];
+    }
+
+    /**
+     * Get the depth of a unit
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return the depth of the unit, 0 for the root unit
+     */
+    public int getDepth( int nIndex )
+    {
+        return _depth [nIndex];
+    }
+
+    /**
+     * Get the ancestor of a unit at a given depth
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @param nDepth
+     *            the depth of the ancestor
+     * @return the index of the ancestor, the unit itself if it is at this depth, or {@link #NONE} if the unit is not that deep
+     */
+    public int getAncestorAtDepth( int nIndex, int nDepth )
+    {
+        if ( ( nDepth < 0 ) || ( _depth [nIndex] < nDepth ) )
+        {
+            return NONE;
+        }
+
+        int nCurrent = nIndex;
+
+        while ( _depth [nCurrent] > nDepth )
+        {
+            nCurrent = ( _depth [_jump [nCurrent]] < nDepth ) ? _parent [nCurrent] : _jump [nCurrent];
+        }
+
+        return nCurrent;
+    }
+
+    /**
+     * Get the lowest common ancestor of two units, which is the deepest unit being the unit or an ancestor of both units
+     * 
+     * @param nIndex1
+     *            the index of the first unit
+     * @param nIndex2
+     *            the index of the second unit
+     * @return the index of the lowest common ancestor, or {@link #NONE} if the units are not in the same tree
+     */
+    public int getLowestCommonAncestor( int nIndex1, int nIndex2 )
+    {
+        if ( ( _depth [nIndex1] == NONE ) || ( _depth [nIndex2] == NONE ) )
+        {
+            return NONE;
+        }
+
+        int nDepth = Math.min( _depth [nIndex1], _depth [nIndex2] );
+        int nCurrent1 = getAncestorAtDepth( nIndex1, nDepth );
+        int nCurrent2 = getAncestorAtDepth( nIndex2, nDepth );
+
+        // At the same depth, both units have their jump pointers at the same depth, so they can jump together
+        while ( nCurrent1 != nCurrent2 )
+        {
+            if ( _parent [nCurrent1] == NONE )
+            {
+                // Two different root units
+                return NONE;
+            }
+
+            if ( _jump [nCurrent1] != _jump [nCurrent2] )
+            {
+                nCurrent1 = _jump [nCurrent1];
+                nCurrent2 = _jump [nCurrent2];
+            }
+            else
+            {
+                nCurrent1 = _parent [nCurrent1];
+                nCurrent2 = _parent [nCurrent2];
+            }
+        }
+
+        return nCurrent1;
+    }
+
+    /**
+     * Check if a unit is a strict ancestor of another unit
+     * 
+     * @param nIndexAncestor
+     *            the index of the ancestor unit
+     * @param nIndex
+     *            the index of the unit to check
+     * @return true if the first unit is a parent, at any level, of the second unit
+     */
+    public boolean isAncestor( int nIndexAncestor, int nIndex )
+    {
+        return ( _left [nIndex] != NONE ) && ( _left [nIndexAncestor] < _left [nIndex] ) && ( _left [nIndex] <= _right [nIndexAncestor] );
+    }
+
+    /**
+     * Get the number of units of a sub tree
+     * 
+     * @param nIndex
+     *            the index of the root of the sub tree
+     * @return the number of units of the sub tree, including its root
+     */
+    public int getSubTreeSize( int nIndex )
+    {
+        return ( _left [nIndex] != NONE ) ? ( _right [nIndex] - _left [nIndex] + 1 ) : 0;
+    }
+
+    /**
+     * Get the unit following a given unit in a depth first pre-order traversal of a sub tree. The traversal only follows the links of the tree, so it
+     * needs no stack : <code>for ( int n = next( nRoot, nRoot ); n != NONE; n = next( n, nRoot ) )</code> visits all the sub units of nRoot.
+     * 
+     * @param nIndex
+     *            the index of the current unit
+     * @param nIndexRoot
+     *            the index of the root of the traversed sub tree
+     * @return the index of the next unit, or {@link #NONE} when the whole sub tree is visited
+     */
+    public int next( int nIndex, int nIndexRoot )
+    {
+        if ( _firstChild [nIndex] != NONE )
+        {
+            return _firstChild [nIndex];
+        }
+
+        for ( int nCurrent = nIndex; nCurrent != nIndexRoot; nCurrent = _parent [nCurrent] )
+        {
+            if ( _nextSibling [nCurrent] != NONE )
+            {
+                return _nextSibling [nCurrent];
+            }
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Get a new tree with a new unit added as a leaf. The new unit takes its rank in the pre-order, the units after it are shifted by one and its ancestors
+     * get a wider interval.
+     * 
+     * @param nIdUnit
+     *            the id of the new unit, which must not be in the tree
+     * @param nParent
+     *            the index of the parent unit, which must be reachable from a root unit
+     * @param nPreviousSibling
+     *            the index of the sub unit of the parent after which the new unit is linked, or {@link #NONE} to link it as first child
+     * @return the new tree
+     */
+    public CompactUnitTree withLeaf( int nIdUnit, int nParent, int nPreviousSibling )
+    {
+        int nIndex = -( Arrays.binarySearch( _ids, nIdUnit ) + 1 );
+        int nPosition = ( ( nPreviousSibling != NONE ) ? _right [nPreviousSibling] : _left [nParent] ) + 1;
+        int nParentShifted = shift( nParent, nIndex, 1 );
+        int nPreviousShifted = shift( nPreviousSibling, nIndex, 1 );
+
+        int [ ] parent = insert( shift( _parent, nIndex, 1 ), nIndex, nParentShifted );
+        int [ ] firstChild = insert( shift( _firstChild, nIndex, 1 ), nIndex, NONE );
+        int [ ] nextSibling = insert( shift( _nextSibling, nIndex, 1 ), nIndex, NONE );
+        int [ ] right = insert( shift( _right, nPosition, 1 ), nIndex, nPosition );
+        link( nIndex, nParentShifted, nPreviousShifted, parent, firstChild, nextSibling );
+
+        // The ancestors whose sub tree ended just before the new unit now end with it
+        for ( int nAncestor = nParentShifted; nAncestor != NONE; nAncestor = parent [nAncestor] )
+        {
+            right [nAncestor] = Math.max( right [nAncestor], nPosition );
+        }
+
+        CompactUnitTree tree = new CompactUnitTree( insert( _ids, nIndex, nIdUnit ), parent, firstChild, nextSibling, insert( shift( _left, nPosition, 1 ),
+                nIndex, nPosition ), right, insert( shift( _preOrder, nIndex, 1 ), nPosition, nIndex ), insert( _depth, nIndex, NONE ), insert( shift( _jump,
+                nIndex, 1 ), nIndex, NONE ) );
+        tree.jump( nIndex );
+
+        return tree;
+    }
+
+    /**
+     * Get a new tree with a leaf unit removed. The units after it in the pre-order are shifted by one and its ancestors get a narrower interval.
+     * 
+     * @param nIndex
+     *            the index of the unit, which must have a parent and no sub unit, and be reachable from a root unit
+     * @return the new tree
+     */
+    public CompactUnitTree withoutLeaf( int nIndex )
+    {
+        int nPosition = _left [nIndex];
+        int [ ] firstChild = _firstChild.clone( );
+        int [ ] nextSibling = _nextSibling.clone( );
+        unlink( nIndex, _parent [nIndex], firstChild, nextSibling );
+
+        // The rights equal to the position are the ancestors whose sub tree ended with the removed unit
+        return new CompactUnitTree( remove( _ids, nIndex ), shift( remove( _parent, nIndex ), nIndex + 1, -1 ), shift( remove( firstChild, nIndex ),
+                nIndex + 1, -1 ), shift( remove( nextSibling, nIndex ), nIndex + 1, -1 ), shift( remove( _left, nIndex ), nPosition + 1, -1 ), shift( remove(
+                _right, nIndex ), nPosition, -1 ), shift( remove( _preOrder, nPosition ), nIndex + 1, -1 ), remove( _depth, nIndex ), shift( remove( _jump,
+                nIndex ), nIndex + 1, -1 ) );
+    }
+
+    /**
+     * Get a new tree with a unit moved, with its sub tree, under a new parent or to another rank among its siblings. The block of the sub tree is moved in
+     * the pre-order, so only the units between its old and its new rank get a new interval. The old and the new ancestors get a narrower and a wider
+     * interval, and only the units of the moved sub tree get a new depth and jump pointer.
+     * 
+     * @param nIndex
+     *            the index of the unit, which must have a parent and be reachable from a root unit
+     * @param nParent
+     *            the index of the new parent unit, which must be reachable from a root unit and not be the unit nor one of its sub units
+     * @param nPreviousSibling
+     *            the index of the sub unit of the new parent, other than the moved unit, after which the unit is linked, or {@link #NONE} to link it as
+     *            first child
+     * @return the new tree
+     */
+    public CompactUnitTree withMovedSubTree( int nIndex, int nParent, int nPreviousSibling )
+    {
+        int nSize = _ids.length;
+        int nLeft = _left [nIndex];
+        int nRight = _right [nIndex];
+        int nCount = ( nRight - nLeft ) + 1;
+
+        int [ ] parent = _parent.clone( );
+        int [ ] firstChild = _firstChild.clone( );
+        int [ ] nextSibling = _nextSibling.clone( );
+        int [ ] left = _left.clone( );
+        int [ ] right = _right.clone( );
+        unlink( nIndex, _parent [nIndex], firstChild, nextSibling );
+        link( nIndex, nParent, nPreviousSibling, parent, firstChild, nextSibling );
+
+        // New rank of the unit, counted in the pre-order once the block of its sub tree is taken out. The previous sibling may be an old ancestor of the
+        // unit, the new parent is not in the block.
+        int nNewLeft;
+
+        if ( nPreviousSibling != NONE )
+        {
+            nNewLeft = ( ( _right [nPreviousSibling] >= nRight ) ? ( _right [nPreviousSibling] - nCount ) : _right [nPreviousSibling] ) + 1;
+        }
+        else
+        {
+            nNewLeft = ( ( _left [nParent] > nRight ) ? ( _left [nParent] - nCount ) : _left [nParent] ) + 1;
+        }
+
+        int [ ] preOrder = new int [ nSize];
+        int [ ] rest = new int [ nSize - nCount];
+        System.arraycopy( _preOrder, 0, rest, 0, nLeft );
+        System.arraycopy( _preOrder, nRight + 1, rest, nLeft, nSize - nRight - 1 );
+        System.arraycopy( rest, 0, preOrder, 0, nNewLeft );
+        System.arraycopy( _preOrder, nLeft, preOrder, nNewLeft, nCount );
+        System.arraycopy( rest, nNewLeft, preOrder, nNewLeft + nCount, rest.length - nNewLeft );
+
+        // Only the ranks between the old and the new place of the block change, the sub trees keeping their size
+        for ( int nPosition = Math.min( nLeft, nNewLeft ); nPosition <= Math.max( nRight, ( nNewLeft + nCount ) - 1 ); nPosition++ )
+        {
+            int nCurrent = preOrder [nPosition];
+            left [nCurrent] = nPosition;
+            right [nCurrent] = nPosition + ( _right [nCurrent] - _left [nCurrent] );
+        }
+
+        // The common ancestors lose and get back the block
+        for ( int nAncestor = _parent [nIndex]; nAncestor != NONE; nAncestor = _parent [nAncestor] )
+        {
+            right [nAncestor] -= nCount;
+        }
+
+        for ( int nAncestor = nParent; nAncestor != NONE; nAncestor = _parent [nAncestor] )
+        {
+            right [nAncestor] += nCount;
+        }
+
+        CompactUnitTree tree = new CompactUnitTree( _ids, parent, firstChild, nextSibling, left, right, preOrder, _depth.clone( ), _jump.clone( ) );
+
+        for ( int nPosition = nNewLeft; nPosition < ( nNewLeft + nCount ); nPosition++ )
+        {
+            tree.jump( preOrder [nPosition] );
+        }
+
+        return tree;
+    }
+
+    /**
+     * Link a unit to its parent
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @param nParent
+     *            the index of the parent
+     * @param nPreviousSibling
+     *            the index of the sibling after which the unit is linked, or {@link #NONE} to link it as first child
+     * @param parent
+     *            the parent links to update
+     * @param firstChild
+     *            the first child links to update
+     * @param nextSibling
+     *            the next sibling links to update
+     */
+    private static void link( int nIndex, int nParent, int nPreviousSibling, int [ ] parent, int [ ] firstChild, int [ ] nextSibling )
+    {
+        parent [nIndex] = nParent;
+
+        if ( nPreviousSibling != NONE )
+        {
+            nextSibling [nIndex] = nextSibling [nPreviousSibling];
+            nextSibling [nPreviousSibling] = nIndex;
+        }
+        else
+        {
+            nextSibling [nIndex] = firstChild [nParent];
+            firstChild [nParent] = nIndex;
+        }
+    }
+
+    /**
+     * Unlink a unit from the sub units of its parent
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @param nParent
+     *            the index of the parent
+     * @param firstChild
+     *            the first child links to update
+     * @param nextSibling
+     *            the next sibling links to update
+     */
+    private static void unlink( int nIndex, int nParent, int [ ] firstChild, int [ ] nextSibling )
+    {
+        if ( firstChild [nParent] == nIndex )
+        {
+            firstChild [nParent] = nextSibling [nIndex];
+        }
+        else
+        {
+            int nPrevious = firstChild [nParent];
+
+            while ( nextSibling [nPrevious] != nIndex )
+            {
+                nPrevious = nextSibling [nPrevious];
+            }
+
+            nextSibling [nPrevious] = nextSibling [nIndex];
+        }
+
+        nextSibling [nIndex] = NONE;
+    }
+
+    /**
+     * Shift an index or a bound
+     * 
+     * @param nValue
+     *            the value
+     * @param nFrom
+     *            the smallest value to shift
+     * @param nDelta
+     *            the shift
+     * @return the shifted value, or {@link #NONE} if the value is {@link #NONE}
+     */
+    private static int shift( int nValue, int nFrom, int nDelta )
+    {
+        return ( ( nValue != NONE ) && ( nValue >= nFrom ) ) ? ( nValue + nDelta ) : nValue;
+    }
+
+    /**
+     * Copy an array of indexes or bounds, shifting its values
+     * 
+     * @param values
+     *            the values
+     * @param nFrom
+     *            the smallest value to shift
+     * @param nDelta
+     *            the shift
+     * @return the shifted copy
+     */
+    private static int [ ] shift( int [ ] values, int nFrom, int nDelta )
+    {
+        int [ ] shifted = new int [ values.length];
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            shifted [i] = shift( values [i], nFrom, nDelta );
+        }
+
+        return shifted;
+    }
+
+    /**
+     * Copy an array with a value inserted
+     * 
+     * @param values
+     *            the values
+     * @param nAt
+     *            the position of the inserted value
+     * @param nValue
+     *            the inserted value
+     * @return the new array
+     */
+    private static int [ ] insert( int [ ] values, int nAt, int nValue )
+    {
+        int [ ] inserted = new int [ values.length + 1];
+        System.arraycopy( values, 0, inserted, 0, nAt );
+        inserted [nAt] = nValue;
+        System.arraycopy( values, nAt, inserted, nAt + 1, values.length - nAt );
+
+        return inserted;
+    }
+
+    /**
+     * Copy an array with a value removed
+     * 
+     * @param values
+     *            the values
+     * @param nAt
+     *            the position of the removed value
+     * @return the new array
+     */
+    private static int [ ] remove( int [ ] values, int nAt )
+    {
+        int [ ] removed = new int [ values.length - 1];
+        System.arraycopy( values, 0, removed, 0, nAt );
+        System.arraycopy( values, nAt + 1, removed, nAt, values.length - nAt - 1 );
+
+        return removed;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * Ids allocated by blocks from the table <code>unittree_sequence</code>. A block is reserved by incrementing the row of the sequence in its own
+ * transaction, then its ids are handed out in memory without any lock. Each node reserves its own blocks, so the ids are unique across the nodes, but
+ * they are not allocated in order and the remaining ids of a block are lost when the node stops.
+ *
+ */
+public class HiLoUnitIdGenerator implements IUnitIdGenerator
+{
+    private static final String PROPERTY_BLOCK_SIZE = "unittree.unitIdGenerator.blockSize";
+    private static final int DEFAULT_BLOCK_SIZE = 50;
+    private static final String BEAN_TRANSACTION_MANAGER = "unittree.transactionManager";
+    private static final String SEQUENCE_UNIT = "unittree_unit";
+    private static final String MESSAGE_NO_SEQUENCE = "The sequence " + SEQUENCE_UNIT + " is missing in the table unittree_sequence";
+
+    private static final String SQL_QUERY_INCREMENT = " UPDATE unittree_sequence SET next_value = next_value + ? WHERE name = ? ";
+    private static final String SQL_QUERY_SELECT = " SELECT next_value FROM unittree_sequence WHERE name = ? ";
+
+    private final AtomicReference<Block> _block = new AtomicReference<>( );
+    private final Object _lock = new Object( );
+    private final int _nBlockSize;
+
+    /**
+     * Constructor. The size of the blocks is read from the property unittree.unitIdGenerator.blockSize at each reservation
+     */
+    public HiLoUnitIdGenerator( )
+    {
+        _nBlockSize = 0;
+    }
+
+    /**
+     * Constructor with a fixed size of the blocks
+     * 
+     * @param nBlockSize
+     *            the number of ids reserved at once
+     */
+    HiLoUnitIdGenerator( int nBlockSize )
+    {
+        _nBlockSize = Math.max( 1, nBlockSize );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int newId( Plugin plugin )
+    {
+        while ( true )
+        {
+            Block block = _block.get( );
+
+            if ( block != null )
+            {
+                int nId = block.next( );
+
+                if ( nId != Block.EXHAUSTED )
+                {
+                    return nId;
+                }
+            }
+
+            // Only the threads finding the block exhausted wait for the next one
+            synchronized( _lock )
+            {
+                if ( _block.get( ) == block )
+                {
+                    _block.set( reserveBlock( plugin ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserve a block of ids in a new transaction, so that the block stays reserved even if the transaction creating the unit is rolled back
+     * 
+     * @param plugin
+     *            the plugin
+     * @return the reserved block
+     */
+    private Block reserveBlock( Plugin plugin )
+    {
+        int nBlockSize = ( _nBlockSize > 0 ) ? _nBlockSize : Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_BLOCK_SIZE, DEFAULT_BLOCK_SIZE ) );
+        PlatformTransactionManager transactionManager = SpringContextService.getBean( BEAN_TRANSACTION_MANAGER );
+        TransactionTemplate transactionTemplate = new TransactionTemplate( transactionManager );
+        transactionTemplate.setPropagationBehavior( TransactionDefinition.PROPAGATION_REQUIRES_NEW );
+
+        Integer nNextValue = transactionTemplate.execute( status -> {
+            // The update locks the row of the sequence until the commit : the read below sees the value written by this transaction only
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INCREMENT, plugin ) )
+            {
+                daoUtil.setInt( 1, nBlockSize );
+                daoUtil.setString( 2, SEQUENCE_UNIT );
+                daoUtil.executeUpdate( );
+            }
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, plugin ) )
+            {
+                daoUtil.setString( 1, SEQUENCE_UNIT );
+                daoUtil.executeQuery( );
+
+                return daoUtil.next( ) ? daoUtil.getInt( 1 ) : null;
+            }
+        } );
+
+        if ( nNextValue == null )
+        {
+            throw new AppException( MESSAGE_NO_SEQUENCE );
+        }
+
+        return new Block( nNextValue - nBlockSize, nNextValue );
+    }
+
+    /**
+     * Block of reserved ids, from a first id included to a limit excluded
+     */
+    private static final class Block
+    {
+        static final int EXHAUSTED = -1;
+        private final AtomicInteger _nNext;
+        private final int _nLimit;
+
+        /**
+         * Constructor
+         * 
+         * @param nFirst
+         *            the first id of the block
+         * @param nLimit
+         *            the id following the last id of the block
+         */
+        Block( int nFirst, int nLimit )
+        {
+            _nNext = new AtomicInteger( nFirst );
+            _nLimit = nLimit;
+        }
+
+        /**
+         * Get the next id of the block
+         * 
+         * @return the next id, or {@link #EXHAUSTED} if all the ids of the block have been handed out
+         */
+        int next( )
+        {
+            int nId = _nNext.getAndIncrement( );
+
+            return ( nId < _nLimit ) ? nId : EXHAUSTED;
+        }
+    }
+}
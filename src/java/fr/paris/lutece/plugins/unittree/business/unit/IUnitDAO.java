@@ -33,9 +33,12 @@
  */
 package fr.paris.lutece.plugins.unittree.business.unit;
 
+import fr.paris.lutece.portal.business.user.AdminUser;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -63,6 +66,29 @@ public interface IUnitDAO
      */
     Unit load( int nIdUnit, Plugin plugin );
 
+    /**
+     * Load the units having the given ids. The ids are queried by chunks, so that the IN lists of the queries stay bounded.
+     * 
+     * @param listIdUnits
+     *            the ids unit
+     * @param plugin
+     *            the plugin
+     * @return the map of the found units, by id unit
+     */
+    Map<Integer, Unit> selectByIds( Collection<Integer> listIdUnits, Plugin plugin );
+
+    /**
+     * Load the admin users having the given ids, with the same fields as a user loaded by the core from its id. The ids are queried by chunks, so that
+     * the IN lists of the queries stay bounded.
+     * 
+     * @param listIdUsers
+     *            the ids user
+     * @param plugin
+     *            the plugin
+     * @return the map of the found users, by id user
+     */
+    Map<Integer, AdminUser> selectUsersByIds( Collection<Integer> listIdUsers, Plugin plugin );
+
     /**
      * Load the unit by code
      * 
@@ -114,6 +140,55 @@ public interface IUnitDAO
      */
     List<Integer> selectAllIdsUser( Plugin plugin );
 
+    /**
+     * Load the index of all the users assigned to the units, with one query
+     * 
+     * @param plugin
+     *            the plugin
+     * @return the membership index
+     */
+    UnitMembershipIndex selectMembershipIndex( Plugin plugin );
+
+    /**
+     * Load the index of the users assigned to a unit or to one of its sub units, at any depth, with one query
+     * 
+     * @param nIdUnit
+     *            the id of the root of the sub tree
+     * @param plugin
+     *            the plugin
+     * @return the membership index of the sub tree
+     */
+    UnitMembershipIndex selectSubTreeMembershipIndex( int nIdUnit, Plugin plugin );
+
+    /**
+     * Count the users matching a search
+     * 
+     * @param search
+     *            the search
+     * @param plugin
+     *            the plugin
+     * @return the number of users
+     */
+    int countUsersBySearch( UnitUserSearch search, Plugin plugin );
+
+    /**
+     * Select a page of the users matching a search
+     * 
+     * @param search
+     *            the search
+     * @param nOffset
+     *            the index of the first user of the page
+     * @param nLimit
+     *            the maximum number of users of the page
+     * @param mapIdUserIdUnit
+     *            the map to fill with the id of the unit shown for each user, by id user, or null. In a sub tree, the unit of a user assigned to several
+     *            units is the unit nearest to the root of the sub tree, then the smallest id unit.
+     * @param plugin
+     *            the plugin
+     * @return the users of the page, sorted
+     */
+    List<AdminUser> selectUsersBySearch( UnitUserSearch search, int nOffset, int nLimit, Map<Integer, Integer> mapIdUserIdUnit, Plugin plugin );
+
     /**
      * Select the ids user from a given id unit
      * 
@@ -190,6 +265,45 @@ public interface IUnitDAO
      */
     void addUserToUnit( int nIdUnit, int nIdUser, Plugin plugin );
 
+    /**
+     * Add users to an unit with one batch of inserts
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param idsUser
+     *            the ids of the users, which must not be already in the unit
+     * @param plugin
+     *            the plugin
+     */
+    void addUsersToUnit( int nIdUnit, int [ ] idsUser, Plugin plugin );
+
+    /**
+     * Insert units with one batch of inserts per table. The ids of the units must be set, and the parents must be inserted before their sub units.
+     * 
+     * @param listUnits
+     *            the units, the parents first
+     * @param mapPaths
+     *            the materialized paths by id unit, which must contain the paths of the parents which are not in the list. The paths of the inserted units
+     *            are added to the map
+     * @param plugin
+     *            the plugin
+     */
+    void insertBatch( List<Unit> listUnits, Map<Integer, String> mapPaths, Plugin plugin );
+
+    /**
+     * Add users to units with one batch of inserts
+     * 
+     * @param idsUnit
+     *            the ids unit of the assignments
+     * @param idsUser
+     *            the ids user of the assignments, in the same order as the ids unit
+     * @param nSize
+     *            the number of assignments
+     * @param plugin
+     *            the plugin
+     */
+    void addUsersToUnits( int [ ] idsUnit, int [ ] idsUser, int nSize, Plugin plugin );
+
     /**
      * Check if the user is in the unit
      * 
@@ -215,6 +329,20 @@ public interface IUnitDAO
      */
     void removeUserFromUnit( int nIdUser, int nIdUnit, Plugin plugin );
 
+    /**
+     * Remove users from units with one batch of deletes
+     * 
+     * @param idsUnit
+     *            the ids unit of the assignments
+     * @param idsUser
+     *            the ids user of the assignments, in the same order as the ids unit
+     * @param nSize
+     *            the number of assignments
+     * @param plugin
+     *            the plugin
+     */
+    void removeUsersFromUnits( int [ ] idsUnit, int [ ] idsUser, int nSize, Plugin plugin );
+
     /**
      * Remove users from a given id unit
      * 
@@ -245,4 +373,97 @@ public interface IUnitDAO
      *            The plugin
      */
     void updateParent( int nIdUnitToMove, int nIdNewParent, Plugin plugin );
+
+    /**
+     * Select the ids of all the sub units of a unit, at any depth
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param plugin
+     *            the plugin
+     * @return the ids of the sub units
+     */
+    List<Integer> selectAllSubUnitsId( int nIdUnit, Plugin plugin );
+
+    /**
+     * Select all the sub units of a unit, at any depth. The units are ordered by depth, then by label
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param plugin
+     *            the plugin
+     * @return a list of {@link Unit}
+     */
+    List<Unit> selectAllSubUnits( int nIdUnit, Plugin plugin );
+
+    /**
+     * Select a unit and all its parent units, from the unit itself up to the root unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param plugin
+     *            the plugin
+     * @return a list of {@link Unit}
+     */
+    List<Unit> selectParentUnits( int nIdUnit, Plugin plugin );
+
+    /**
+     * Check if a unit is a parent, at any level, of another unit
+     * 
+     * @param nIdUnitParent
+     *            the id of the parent unit
+     * @param nIdUnit
+     *            the id of the unit to check
+     * @param plugin
+     *            the plugin
+     * @return true if the first unit is a parent of the second unit, false otherwise
+     */
+    boolean isParent( int nIdUnitParent, int nIdUnit, Plugin plugin );
+
+    /**
+     * Insert the missing rows of the closure table, for instance after the upgrade creating the table. The rows are built level by level, from the links
+     * of depth n to the links of depth n + 1, until no deeper link exists : the closure of a tree of any depth is completed.
+     * 
+     * @param plugin
+     *            the plugin
+     * @return the number of inserted rows
+     */
+    int completeClosure( Plugin plugin );
+
+    /**
+     * Set the missing materialized paths, for instance after the upgrade creating the path column. The paths are built level by level, from the units
+     * having a path to their sub units.
+     * 
+     * @param plugin
+     *            the plugin
+     * @return the number of updated units
+     */
+    int completePaths( Plugin plugin );
+
+    /**
+     * Select the materialized path of a unit, made of the ids of the unit and of its parent units from the root unit, for instance /0/12/453/
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param plugin
+     *            the plugin
+     * @return the path, or null if the unit does not exist
+     */
+    String selectPath( int nIdUnit, Plugin plugin );
+
+    /**
+     * Get a SQL fragment restricting a column holding ids unit to a sub tree. The fragment can be used in a WHERE clause of a query on any table, for
+     * instance <code>" WHERE " + getSubTreeFilter( "r.id_unit", 12, true, plugin )</code>, and is resolved with an index range scan on the paths.
+     * 
+     * @param strColumn
+     *            the name of the column holding the ids unit, optionally prefixed by the table alias
+     * @param nIdUnit
+     *            the id of the root of the sub tree
+     * @param bIncludeUnit
+     *            true if the root of the sub tree must match the filter, false to only match its sub units
+     * @param plugin
+     *            the plugin
+     * @return the SQL fragment
+     */
+    String getSubTreeFilter( String strColumn, int nIdUnit, boolean bIncludeUnit, Plugin plugin );
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Sub tree traversal loading the whole unit table in one query, then walking the tree over an adjacency map built in memory. Suited to small and medium
+ * trees.
+ *
+ */
+public class InMemoryUnitTreeTraversal extends AbstractUnitTreeTraversal
+{
+    private static final String SQL_QUERY_SELECT_ALL = " SELECT id_unit, id_parent, code, label, description FROM unittree_unit ORDER BY label ASC ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Unit> selectAllSubUnits( int nIdUnit, Plugin plugin )
+    {
+        Map<Integer, List<Unit>> mapChildren = new HashMap<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ALL, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                Unit unit = dataToObject( daoUtil );
+                mapChildren.computeIfAbsent( unit.getIdParent( ), k -> new ArrayList<>( ) ).add( unit );
+            }
+        }
+
+        // Breadth first walk : the children lists are already ordered by label
+        List<Unit> listUnits = new ArrayList<>( mapChildren.getOrDefault( nIdUnit, Collections.emptyList( ) ) );
+
+        for ( int i = 0; i < listUnits.size( ); i++ )
+        {
+            List<Unit> listChildren = mapChildren.get( listUnits.get( i ).getIdUnit( ) );
+
+            if ( listChildren != null )
+            {
+                listUnits.addAll( listChildren );
+            }
+        }
+
+        return listUnits;
+    }
+}
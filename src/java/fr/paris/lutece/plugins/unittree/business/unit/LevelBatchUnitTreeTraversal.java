@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Sub tree traversal walking the tree breadth first : the children of a whole level are fetched with <code>id_parent IN ( ... )</code> queries. The number
+ * of queries depends on the depth of the sub tree, not on its size. Works on any database.
+ *
+ */
+public class LevelBatchUnitTreeTraversal extends AbstractUnitTreeTraversal
+{
+    private static final String SQL_QUERY_SELECT_CHILDREN = " SELECT id_unit, id_parent, code, label, description FROM unittree_unit WHERE id_parent IN ( ";
+    private static final String SQL_ORDER_BY_LABEL_ASC = " ORDER BY label ASC ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Unit> selectAllSubUnits( int nIdUnit, Plugin plugin )
+    {
+        List<Unit> listUnits = new ArrayList<>( );
+        List<Integer> listLevel = new ArrayList<>( );
+        listLevel.add( nIdUnit );
+
+        while ( !listLevel.isEmpty( ) )
+        {
+            List<Integer> listNextLevel = new ArrayList<>( );
+
+            for ( int nFrom = 0; nFrom < listLevel.size( ); nFrom += UnitDAO.IN_LIST_CHUNK_SIZE )
+            {
+                List<Integer> listBatch = listLevel.subList( nFrom, Math.min( nFrom + UnitDAO.IN_LIST_CHUNK_SIZE, listLevel.size( ) ) );
+
+                for ( Unit unit : selectChildren( listBatch, plugin ) )
+                {
+                    listUnits.add( unit );
+                    listNextLevel.add( unit.getIdUnit( ) );
+                }
+            }
+
+            listLevel = listNextLevel;
+        }
+
+        return listUnits;
+    }
+
+    /**
+     * Select the direct children of a batch of units
+     * 
+     * @param listIdParents
+     *            the ids of the parent units
+     * @param plugin
+     *            the plugin
+     * @return the children, ordered by label
+     */
+    private List<Unit> selectChildren( List<Integer> listIdParents, Plugin plugin )
+    {
+        String strQuery = UnitDAO.getInQuery( SQL_QUERY_SELECT_CHILDREN, listIdParents.size( ) ) + SQL_ORDER_BY_LABEL_ASC;
+
+        List<Unit> listUnits = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( strQuery, plugin ) )
+        {
+            int nIndex = 0;
+
+            for ( Integer nIdParent : listIdParents )
+            {
+                daoUtil.setInt( ++nIndex, nIdParent );
+            }
+
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listUnits.add( dataToObject( daoUtil ) );
+            }
+        }
+
+        return listUnits;
+    }
+}
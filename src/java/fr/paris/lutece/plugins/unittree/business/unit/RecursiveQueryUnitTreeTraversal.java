@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Sub tree traversal using a single <code>WITH RECURSIVE</code> query. Requires MySQL 8, MariaDB 10.2, PostgreSQL or HSQLDB 2.
+ *
+ */
+public class RecursiveQueryUnitTreeTraversal extends AbstractUnitTreeTraversal
+{
+    private static final String SQL_QUERY_SELECT_ALL_SUB_UNITS = " WITH RECURSIVE sub_units ( id_unit, depth ) AS ( "
+            + " SELECT id_unit, 1 FROM unittree_unit WHERE id_parent = ? " + " UNION ALL "
+            + " SELECT u.id_unit, s.depth + 1 FROM unittree_unit u INNER JOIN sub_units s ON u.id_parent = s.id_unit ) "
+            + " SELECT u.id_unit, u.id_parent, u.code, u.label, u.description FROM unittree_unit u INNER JOIN sub_units s ON u.id_unit = s.id_unit "
+            + " ORDER BY s.depth ASC, u.label ASC ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Unit> selectAllSubUnits( int nIdUnit, Plugin plugin )
+    {
+        List<Unit> listUnits = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ALL_SUB_UNITS, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listUnits.add( dataToObject( daoUtil ) );
+            }
+        }
+
+        return listUnits;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ *
+ * Ids read from a native sequence of the database, with the query of the property <code>unittree.unitIdGenerator.sequenceQuery</code>. The sequence
+ * must be created beforehand, starting after the greatest id unit.
+ *
+ */
+public class SequenceUnitIdGenerator implements IUnitIdGenerator
+{
+    private static final String PROPERTY_SEQUENCE_QUERY = "unittree.unitIdGenerator.sequenceQuery";
+    private static final String DEFAULT_SEQUENCE_QUERY = "SELECT nextval( 'unittree_unit_seq' )";
+    private static final String MESSAGE_NO_VALUE = "The sequence of the units did not return any value";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int newId( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( AppPropertiesService.getProperty( PROPERTY_SEQUENCE_QUERY, DEFAULT_SEQUENCE_QUERY ), plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            if ( !daoUtil.next( ) )
+            {
+                throw new AppException( MESSAGE_NO_VALUE );
+            }
+
+            return daoUtil.getInt( 1 );
+        }
+    }
+}
@@ -33,11 +33,25 @@
  */
 package fr.paris.lutece.plugins.unittree.business.unit;
 
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.business.user.AdminUserFilter;
 import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.util.sql.DAOUtil;
 
+import org.apache.commons.lang3.StringUtils;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  *
@@ -46,6 +60,10 @@ import java.util.List;
  */
 public class UnitDAO implements IUnitDAO
 {
+    private static final String PROPERTY_TREE_TRAVERSAL = "unittree.unitTreeTraversal";
+    private static final String BEAN_DEFAULT_TREE_TRAVERSAL = "unittree.closureTableUnitTreeTraversal";
+    private static final String PROPERTY_ID_GENERATOR = "unittree.unitIdGenerator";
+    private static final String BEAN_DEFAULT_ID_GENERATOR = "unittree.hiLoUnitIdGenerator";
     private static final String SQL_WHERE = " WHERE ";
     private static final String SQL_AND = " AND ";
     private static final String SQL_OR = " OR ";
@@ -53,11 +71,21 @@ public class UnitDAO implements IUnitDAO
     private static final String SQL_FILTER_ID_PARENT = " id_parent = ? ";
     private static final String SQL_FILTER_LABEL = " label = ? ";
     private static final String SQL_FILTER_DESCRIPTION = " description = ? ";
+    private static final String SQL_PARAMETER = "?";
+    private static final String SQL_SEPARATOR = ", ";
+    private static final String SQL_END_IN = " ) ";
+    // Maximum number of parameters of the IN lists, the longer lists being queried by chunks
+    static final int IN_LIST_CHUNK_SIZE = 500;
+    private static final int INITIAL_MEMBERSHIP_CAPACITY = 256;
 
     // Table unittree_unit
-    private static final String SQL_QUERY_NEW_PK = " SELECT max( id_unit ) FROM unittree_unit ";
-    private static final String SQL_QUERY_INSERT = " INSERT INTO unittree_unit ( id_unit, id_parent, code, label, description ) VALUES ( ?, ?, ?, ?, ?) ";
+    private static final String SQL_QUERY_INSERT = " INSERT INTO unittree_unit ( id_unit, id_parent, code, label, description, path ) VALUES ( ?, ?, ?, ?, ?, ? ) ";
     private static final String SQL_QUERY_SELECT = " SELECT id_unit, id_parent, code, label, description FROM unittree_unit WHERE id_unit = ? ";
+    private static final String SQL_QUERY_SELECT_BY_IDS = " SELECT id_unit, id_parent, code, label, description FROM unittree_unit WHERE id_unit IN ( ";
+    // Same columns as the loading of a user by the core
+    private static final String SQL_USER_COLUMNS = " au.id_user, au.access_code, au.last_name, au.first_name, au.email, au.status, au.locale, au.level_user, "
+            + " au.accessibility_mode, au.reset_password, au.password_max_valid_date, au.account_max_valid_date, au.last_login, au.workgroup_key ";
+    private static final String SQL_QUERY_SELECT_USERS_BY_IDS = " SELECT " + SQL_USER_COLUMNS + " FROM core_admin_user au WHERE au.id_user IN ( ";
     private static final String SQL_QUERY_SELECT_BY_CODE = " SELECT id_unit, id_parent, code, label, description FROM unittree_unit WHERE code = ? ";
 
     private static final String SQL_QUERY_SELECT_ALL = " SELECT id_unit, id_parent, code, label, description FROM unittree_unit ";
@@ -75,34 +103,103 @@ public class UnitDAO implements IUnitDAO
     private static final String SQL_QUERY_ADD_USER_TO_UNIT = " INSERT INTO unittree_unit_user ( id_unit, id_user ) VALUES ( ?, ? ) ";
     private static final String SQL_QUERY_SELECT_IDS_USER = " SELECT id_user FROM unittree_unit_user WHERE id_unit = ? ";
     private static final String SQL_QUERY_SELECT_ALL_IDS_USER = " SELECT id_user FROM unittree_unit_user ";
+    private static final String SQL_QUERY_SELECT_ALL_UNIT_USERS = " SELECT id_unit, id_user FROM unittree_unit_user ";
+    private static final String SQL_QUERY_SELECT_SUB_TREE_UNIT_USERS = " SELECT uu.id_unit, uu.id_user FROM unittree_unit_user uu "
+            + " INNER JOIN unittree_unit_closure c ON c.id_descendant = uu.id_unit WHERE c.id_ancestor = ? ";
     private static final String SQL_QUERY_REMOVE_USER_FROM_UNIT = " DELETE FROM unittree_unit_user WHERE id_user = ? AND id_unit = ? ";
     private static final String SQL_QUERY_REMOVE_USERS_FROM_UNIT = " DELETE FROM unittree_unit_user WHERE id_unit = ? ";
     private static final String SQL_QUERY_CHECK_USER = " SELECT id_unit FROM unittree_unit_user WHERE id_user = ? AND id_unit = ? ";
     private static final String SQL_QUERY_UPDATE_UNIT_PARENT = " UPDATE unittree_unit SET id_parent = ? WHERE id_unit = ? ";
 
+    // Search of the users of a unit, joined to the table core_admin_user
+    private static final String SQL_QUERY_COUNT_USERS_BY_SEARCH = " SELECT COUNT( DISTINCT au.id_user ) ";
+    private static final String SQL_QUERY_SELECT_USERS_BY_SEARCH = " SELECT " + SQL_USER_COLUMNS;
+    private static final String SQL_QUERY_SELECT_NEAREST_UNITS_OF_USERS = " SELECT uu.id_user, uu.id_unit FROM unittree_unit_user uu INNER JOIN unittree_unit_closure c ON c.id_descendant = uu.id_unit "
+            + " WHERE c.id_ancestor = ? AND uu.id_user IN ( ";
+    private static final String SQL_ORDER_BY_NEAREST_UNIT = " ORDER BY uu.id_user, c.depth, uu.id_unit ";
+    private static final String SQL_FROM_USERS_BY_SEARCH = " FROM core_admin_user au INNER JOIN unittree_unit_user uu ON uu.id_user = au.id_user ";
+    private static final String SQL_FILTER_USER_UNIT = " uu.id_unit = ? ";
+    private static final String SQL_FILTER_USER_SUB_TREE = " uu.id_unit IN ( SELECT id_descendant FROM unittree_unit_closure WHERE id_ancestor = ? ) ";
+    private static final String SQL_FILTER_USER_ACCESS_CODE = " au.access_code LIKE ? ";
+    private static final String SQL_FILTER_USER_LAST_NAME = " au.last_name LIKE ? ";
+    private static final String SQL_FILTER_USER_FIRST_NAME = " au.first_name LIKE ? ";
+    private static final String SQL_FILTER_USER_EMAIL = " au.email LIKE ? ";
+    private static final String SQL_FILTER_USER_STATUS = " au.status = ? ";
+    private static final String SQL_FILTER_USER_LEVEL = " au.level_user = ? ";
+    private static final String SQL_FILTER_USER_LEVEL_ABOVE = " au.level_user > ? ";
+    private static final String SQL_GROUP_BY_USER = " GROUP BY " + SQL_USER_COLUMNS;
+    private static final String SQL_ORDER_BY = " ORDER BY ";
+    private static final String SQL_ASC = " ASC ";
+    private static final String SQL_DESC = " DESC ";
+    private static final String SQL_THEN_BY_ID_USER = ", au.id_user ASC ";
+    private static final String SQL_LIMIT = " LIMIT ? OFFSET ? ";
+    private static final String SQL_LIKE_WILDCARD = "%";
+    private static final String COLUMN_USER_LAST_NAME = "au.last_name";
+    private static final Map<String, String> MAP_USER_SORT_COLUMNS = new HashMap<>( );
+
+    static
+    {
+        MAP_USER_SORT_COLUMNS.put( "lastName", COLUMN_USER_LAST_NAME );
+        MAP_USER_SORT_COLUMNS.put( "firstName", "au.first_name" );
+        MAP_USER_SORT_COLUMNS.put( "accessCode", "au.access_code" );
+        MAP_USER_SORT_COLUMNS.put( "email", "au.email" );
+    }
+
+    // Materialized path
+    private static final String SQL_QUERY_SELECT_PATH = " SELECT path FROM unittree_unit WHERE id_unit = ? ";
+    private static final String SQL_QUERY_MOVE_PATHS = " UPDATE unittree_unit SET path = CONCAT( ?, SUBSTRING( path, ? ) ) WHERE path LIKE ? ";
+    private static final String SQL_QUERY_SELECT_MAX_PATH_LENGTH = " SELECT MAX( LENGTH( path ) ) FROM unittree_unit WHERE path LIKE ? ";
+    private static final String SQL_QUERY_SELECT_PATHS = " SELECT id_unit, id_parent, path FROM unittree_unit ";
+    private static final String SQL_QUERY_UPDATE_PATH = " UPDATE unittree_unit SET path = ? WHERE id_unit = ? ";
+    private static final String SQL_FILTER_SUB_TREE = " %s IN ( SELECT id_unit FROM unittree_unit WHERE path LIKE '%s%%' ) ";
+    private static final String SQL_FILTER_SUB_TREE_EXCLUDING_UNIT = " %s IN ( SELECT id_unit FROM unittree_unit WHERE path LIKE '%s%%' AND path <> '%s' ) ";
+    private static final String SQL_FILTER_NONE = " 1 = 0 ";
+    private static final String PATH_SEPARATOR = "/";
+    private static final int PATH_MAX_LENGTH = 700;
+    private static final String MESSAGE_PATH_TOO_LONG = "The path of the unit %d would be longer than %d characters : the unit tree is too deep";
+    private static final String PATTERN_COLUMN = "[A-Za-z0-9_.]+";
+
+    // Table unittree_unit_closure
+    private static final String SQL_QUERY_INSERT_CLOSURE = " INSERT INTO unittree_unit_closure ( id_ancestor, id_descendant, depth ) VALUES ( ?, ?, ? ) ";
+    private static final String SQL_QUERY_INSERT_CLOSURE_SELF = " INSERT INTO unittree_unit_closure ( id_ancestor, id_descendant, depth ) VALUES ( ?, ?, 0 ) ";
+    private static final String SQL_QUERY_INSERT_CLOSURE_ANCESTORS = " INSERT INTO unittree_unit_closure ( id_ancestor, id_descendant, depth ) "
+            + " SELECT id_ancestor, ?, depth + 1 FROM unittree_unit_closure WHERE id_descendant = ? ";
+    private static final String SQL_QUERY_DELETE_CLOSURE = " DELETE FROM unittree_unit_closure WHERE id_descendant = ? OR id_ancestor = ? ";
+    private static final String SQL_QUERY_SELECT_CLOSURE_SUB_TREE = " SELECT id_descendant, depth FROM unittree_unit_closure WHERE id_ancestor = ? ";
+    private static final String SQL_QUERY_DELETE_CLOSURE_OUTER_LINKS = " DELETE FROM unittree_unit_closure WHERE id_descendant = ? AND depth > ? ";
+    private static final String SQL_QUERY_INSERT_CLOSURE_SUB_TREE = " INSERT INTO unittree_unit_closure ( id_ancestor, id_descendant, depth ) "
+            + " SELECT p.id_ancestor, s.id_descendant, p.depth + s.depth + 1 FROM unittree_unit_closure p, unittree_unit_closure s "
+            + " WHERE p.id_descendant = ? AND s.id_ancestor = ? ";
+    private static final String SQL_QUERY_SELECT_PARENT_UNITS = " SELECT u.id_unit, u.id_parent, u.code, u.label, u.description "
+            + " FROM unittree_unit u INNER JOIN unittree_unit_closure c ON u.id_unit = c.id_ancestor " + " WHERE c.id_descendant = ? ORDER BY c.depth ASC ";
+    private static final String SQL_QUERY_COUNT_UNITS_WITHOUT_ROOT_LINK = " SELECT COUNT(*) FROM unittree_unit u "
+            + " WHERE NOT EXISTS ( SELECT 1 FROM unittree_unit_closure c WHERE c.id_descendant = u.id_unit AND c.id_ancestor = ? ) ";
+    private static final String SQL_QUERY_INSERT_MISSING_CLOSURE_SELF = " INSERT INTO unittree_unit_closure ( id_ancestor, id_descendant, depth ) "
+            + " SELECT u.id_unit, u.id_unit, 0 FROM unittree_unit u "
+            + " WHERE NOT EXISTS ( SELECT 1 FROM unittree_unit_closure s WHERE s.id_ancestor = u.id_unit AND s.id_descendant = u.id_unit ) ";
+    private static final String SQL_QUERY_INSERT_MISSING_CLOSURE_LEVEL = " INSERT INTO unittree_unit_closure ( id_ancestor, id_descendant, depth ) "
+            + " SELECT c.id_ancestor, u.id_unit, c.depth + 1 FROM unittree_unit_closure c INNER JOIN unittree_unit u ON u.id_parent = c.id_descendant "
+            + " WHERE c.depth = ? AND NOT EXISTS ( SELECT 1 FROM unittree_unit_closure l WHERE l.id_ancestor = c.id_ancestor AND l.id_descendant = u.id_unit ) ";
+    private static final String SQL_QUERY_COUNT_CLOSURE_LEVEL = " SELECT COUNT(*) FROM unittree_unit_closure WHERE depth = ? ";
+    private static final String SQL_QUERY_IS_PARENT = " SELECT depth FROM unittree_unit_closure WHERE id_ancestor = ? AND id_descendant = ? AND depth > 0 ";
+
+    private IUnitTreeTraversal _treeTraversal;
+    private IUnitIdGenerator _idGenerator;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public int newPrimaryKey( Plugin plugin )
     {
-        int nKey = 1;
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_NEW_PK, plugin ) )
-        {
-            daoUtil.executeQuery( );
-            if ( daoUtil.next( ) )
-            {
-                nKey = daoUtil.getInt( 1 ) + 1;
-            }
-        }
-        return nKey;
+        return getIdGenerator( ).newId( plugin );
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized int insert( Unit unit, Plugin plugin )
+    public int insert( Unit unit, Plugin plugin )
     {
         int nIndex = 1;
         int nIdUnit = newPrimaryKey( plugin );
@@ -114,14 +211,72 @@ public class UnitDAO implements IUnitDAO
             daoUtil.setInt( nIndex++, unit.getIdParent( ) );
             daoUtil.setString( nIndex++, unit.getCode( ) );
             daoUtil.setString( nIndex++, unit.getLabel( ) );
-            daoUtil.setString( nIndex, unit.getDescription( ) );
+            daoUtil.setString( nIndex++, unit.getDescription( ) );
+            daoUtil.setString( nIndex, checkPath( nIdUnit, getPath( selectPath( unit.getIdParent( ), plugin ), nIdUnit ) ) );
 
             daoUtil.executeUpdate( );
         }
 
+        insertClosure( nIdUnit, unit.getIdParent( ), plugin );
+
         return nIdUnit;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insertBatch( List<Unit> listUnits, Map<Integer, String> mapPaths, Plugin plugin )
+    {
+        if ( listUnits.isEmpty( ) )
+        {
+            return;
+        }
+
+        List<String> listPaths = new ArrayList<>( listUnits.size( ) );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            for ( Unit unit : listUnits )
+            {
+                String strPath = checkPath( unit.getIdUnit( ), getPath( mapPaths.get( unit.getIdParent( ) ), unit.getIdUnit( ) ) );
+                mapPaths.put( unit.getIdUnit( ), strPath );
+                listPaths.add( strPath );
+
+                int nIndex = 1;
+                daoUtil.setInt( nIndex++, unit.getIdUnit( ) );
+                daoUtil.setInt( nIndex++, unit.getIdParent( ) );
+                daoUtil.setString( nIndex++, unit.getCode( ) );
+                daoUtil.setString( nIndex++, unit.getLabel( ) );
+                daoUtil.setString( nIndex++, unit.getDescription( ) );
+                daoUtil.setString( nIndex, strPath );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+
+        // The closure rows are read from the paths : one row per unit of the path, the unit itself at depth 0
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_CLOSURE, plugin ) )
+        {
+            for ( int i = 0; i < listUnits.size( ); i++ )
+            {
+                int nIdUnit = listUnits.get( i ).getIdUnit( );
+                String [ ] ancestors = StringUtils.split( listPaths.get( i ), PATH_SEPARATOR );
+
+                for ( int j = 0; j < ancestors.length; j++ )
+                {
+                    daoUtil.setInt( 1, Integer.parseInt( ancestors [j] ) );
+                    daoUtil.setInt( 2, nIdUnit );
+                    daoUtil.setInt( 3, ancestors.length - 1 - j );
+                    daoUtil.addBatch( );
+                }
+            }
+
+            daoUtil.executeBatch( );
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -144,6 +299,78 @@ public class UnitDAO implements IUnitDAO
         return unit;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Integer, Unit> selectByIds( Collection<Integer> listIdUnits, Plugin plugin )
+    {
+        Map<Integer, Unit> mapUnits = new HashMap<>( );
+        List<Integer> listDistinctIdUnits = new ArrayList<>( new LinkedHashSet<>( listIdUnits ) );
+        listDistinctIdUnits.remove( null );
+
+        for ( int nFrom = 0; nFrom < listDistinctIdUnits.size( ); nFrom += IN_LIST_CHUNK_SIZE )
+        {
+            List<Integer> listChunk = listDistinctIdUnits.subList( nFrom, Math.min( nFrom + IN_LIST_CHUNK_SIZE, listDistinctIdUnits.size( ) ) );
+
+            try ( DAOUtil daoUtil = new DAOUtil( getInQuery( SQL_QUERY_SELECT_BY_IDS, listChunk.size( ) ), plugin ) )
+            {
+                int nIndex = 0;
+
+                for ( Integer nIdUnit : listChunk )
+                {
+                    daoUtil.setInt( ++nIndex, nIdUnit );
+                }
+
+                daoUtil.executeQuery( );
+
+                while ( daoUtil.next( ) )
+                {
+                    Unit unit = dataToObject( daoUtil );
+                    mapUnits.put( unit.getIdUnit( ), unit );
+                }
+            }
+        }
+
+        return mapUnits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Integer, AdminUser> selectUsersByIds( Collection<Integer> listIdUsers, Plugin plugin )
+    {
+        Map<Integer, AdminUser> mapUsers = new HashMap<>( );
+        List<Integer> listDistinctIdUsers = new ArrayList<>( new LinkedHashSet<>( listIdUsers ) );
+        listDistinctIdUsers.remove( null );
+
+        for ( int nFrom = 0; nFrom < listDistinctIdUsers.size( ); nFrom += IN_LIST_CHUNK_SIZE )
+        {
+            List<Integer> listChunk = listDistinctIdUsers.subList( nFrom, Math.min( nFrom + IN_LIST_CHUNK_SIZE, listDistinctIdUsers.size( ) ) );
+
+            try ( DAOUtil daoUtil = new DAOUtil( getInQuery( SQL_QUERY_SELECT_USERS_BY_IDS, listChunk.size( ) ), plugin ) )
+            {
+                int nIndex = 0;
+
+                for ( Integer nIdUser : listChunk )
+                {
+                    daoUtil.setInt( ++nIndex, nIdUser );
+                }
+
+                daoUtil.executeQuery( );
+
+                while ( daoUtil.next( ) )
+                {
+                    AdminUser user = dataToUser( daoUtil );
+                    mapUsers.put( user.getUserId( ), user );
+                }
+            }
+        }
+
+        return mapUsers;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -193,6 +420,13 @@ public class UnitDAO implements IUnitDAO
     @Override
     public void remove( int nIdUnit, Plugin plugin )
     {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_CLOSURE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.setInt( 2, nIdUnit );
+            daoUtil.executeUpdate( );
+        }
+
         try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, plugin ) )
         {
             daoUtil.setInt( 1, nIdUnit );
@@ -255,6 +489,30 @@ public class UnitDAO implements IUnitDAO
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeUsersFromUnits( int [ ] idsUnit, int [ ] idsUser, int nSize, Plugin plugin )
+    {
+        if ( nSize == 0 )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_REMOVE_USER_FROM_UNIT, plugin ) )
+        {
+            for ( int i = 0; i < nSize; i++ )
+            {
+                daoUtil.setInt( 1, idsUser [i] );
+                daoUtil.setInt( 2, idsUnit [i] );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -333,36 +591,28 @@ public class UnitDAO implements IUnitDAO
      * {@inheritDoc}
      */
     @Override
-    public List<Integer> selectIdsUser( int nIdUnit, Plugin plugin )
+    public UnitMembershipIndex selectMembershipIndex( Plugin plugin )
     {
-        List<Integer> listIdUsers = new ArrayList<>( );
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_IDS_USER, plugin ) )
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ALL_UNIT_USERS, plugin ) )
         {
-            daoUtil.setInt( 1, nIdUnit );
             daoUtil.executeQuery( );
 
-            while ( daoUtil.next( ) )
-            {
-                listIdUsers.add( daoUtil.getInt( 1 ) );
-            }
+            return membershipIndexFromData( daoUtil );
         }
-
-        return listIdUsers;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized void addUserToUnit( int nIdUnit, int nIdUser, Plugin plugin )
+    public UnitMembershipIndex selectSubTreeMembershipIndex( int nIdUnit, Plugin plugin )
     {
-        int nIndex = 1;
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_ADD_USER_TO_UNIT, plugin ) )
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_SUB_TREE_UNIT_USERS, plugin ) )
         {
-            daoUtil.setInt( nIndex++, nIdUnit );
-            daoUtil.setInt( nIndex, nIdUser );
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.executeQuery( );
 
-            daoUtil.executeUpdate( );
+            return membershipIndexFromData( daoUtil );
         }
     }
 
@@ -370,174 +620,1021 @@ public class UnitDAO implements IUnitDAO
      * {@inheritDoc}
      */
     @Override
-    public boolean isUserInUnit( int nIdUser, int nIdUnit, Plugin plugin )
+    public int countUsersBySearch( UnitUserSearch search, Plugin plugin )
     {
-        boolean bIsUserInAnUnit = false;
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CHECK_USER, plugin ) )
+        StringBuilder sbSQL = new StringBuilder( SQL_QUERY_COUNT_USERS_BY_SEARCH );
+        appendUserSearchCriteria( search, sbSQL );
+
+        try ( DAOUtil daoUtil = new DAOUtil( sbSQL.toString( ), plugin ) )
         {
-            daoUtil.setInt( 1, nIdUser );
-            daoUtil.setInt( 2, nIdUnit );
+            setUserSearchValues( search, daoUtil );
             daoUtil.executeQuery( );
 
-            if ( daoUtil.next( ) )
-            {
-                bIsUserInAnUnit = true;
-            }
+            return daoUtil.next( ) ? daoUtil.getInt( 1 ) : 0;
         }
-        return bIsUserInAnUnit;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<Unit> getUnitWithNoChildren( Plugin plugin )
+    public List<AdminUser> selectUsersBySearch( UnitUserSearch search, int nOffset, int nLimit, Map<Integer, Integer> mapIdUserIdUnit, Plugin plugin )
     {
-        List<Unit> listUnits = new ArrayList<>( );
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_NO_CHILDREN + SQL_ORDER_BY_LABEL_ASC, plugin ) )
+        StringBuilder sbSQL = new StringBuilder( SQL_QUERY_SELECT_USERS_BY_SEARCH );
+        appendUserSearchCriteria( search, sbSQL );
+        sbSQL.append( SQL_GROUP_BY_USER ).append( SQL_ORDER_BY );
+
+        String strColumn = MAP_USER_SORT_COLUMNS.get( search.getSortedAttributeName( ) );
+        sbSQL.append( ( strColumn != null ) ? strColumn : COLUMN_USER_LAST_NAME );
+        sbSQL.append( search.isAscSort( ) ? SQL_ASC : SQL_DESC ).append( SQL_THEN_BY_ID_USER ).append( SQL_LIMIT );
+
+        List<AdminUser> listUsers = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( sbSQL.toString( ), plugin ) )
         {
+            int nIndex = setUserSearchValues( search, daoUtil );
+            daoUtil.setInt( nIndex++, nLimit );
+            daoUtil.setInt( nIndex, nOffset );
             daoUtil.executeQuery( );
 
             while ( daoUtil.next( ) )
             {
-                Unit unit = dataToObject( daoUtil );
-                listUnits.add( unit );
+                listUsers.add( dataToUser( daoUtil ) );
             }
         }
-        return listUnits;
-    }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void updateParent( int nIdUnitToMove, int nIdNewParent, Plugin plugin )
-    {
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_UNIT_PARENT, plugin ) )
+        if ( mapIdUserIdUnit != null )
         {
-            daoUtil.setInt( 1, nIdNewParent );
-            daoUtil.setInt( 2, nIdUnitToMove );
-            daoUtil.executeUpdate( );
+            selectNearestUnitsOfUsers( search, listUsers, mapIdUserIdUnit, plugin );
         }
-    }
 
-    // PRIVATE METHODS
+        return listUsers;
+    }
 
     /**
-     * Build the SQL query with filter
+     * Select the unit shown for each user of a page of a search. The user of a search in a unit is shown in this unit. The user of a search in a sub
+     * tree may be assigned to several units of the sub tree : the unit nearest to the root of the sub tree is shown, the smallest id unit if several
+     * units are at the same depth.
      * 
-     * @param uFilter
-     *            the filter
-     * @return a SQL query
+     * @param search
+     *            the search
+     * @param listUsers
+     *            the users of the page
+     * @param mapIdUserIdUnit
+     *            the map to fill with the id unit of each user, by id user
+     * @param plugin
+     *            the plugin
      */
-    private String buildSQLQuery( UnitFilter uFilter )
+    private static void selectNearestUnitsOfUsers( UnitUserSearch search, List<AdminUser> listUsers, Map<Integer, Integer> mapIdUserIdUnit, Plugin plugin )
     {
-        StringBuilder sbSQL = new StringBuilder( SQL_QUERY_SELECT_ALL );
-        int nIndex = 1;
-
-        if ( uFilter.containsIdParent( ) )
+        if ( !search.isInDepthSearch( ) )
         {
-            nIndex = addSQLWhereOr( uFilter.isWideSearch( ), sbSQL, nIndex );
-            sbSQL.append( SQL_FILTER_ID_PARENT );
+            for ( AdminUser user : listUsers )
+            {
+                mapIdUserIdUnit.put( user.getUserId( ), search.getIdUnit( ) );
+            }
+
+            return;
         }
 
-        if ( uFilter.containsLabel( ) )
+        if ( listUsers.isEmpty( ) )
         {
-            nIndex = addSQLWhereOr( uFilter.isWideSearch( ), sbSQL, nIndex );
-            sbSQL.append( SQL_FILTER_LABEL );
+            return;
         }
 
-        if ( uFilter.containsDescription( ) )
+        String strQuery = getInQuery( SQL_QUERY_SELECT_NEAREST_UNITS_OF_USERS, listUsers.size( ) ) + SQL_ORDER_BY_NEAREST_UNIT;
+
+        try ( DAOUtil daoUtil = new DAOUtil( strQuery, plugin ) )
         {
-            addSQLWhereOr( uFilter.isWideSearch( ), sbSQL, nIndex );
-            sbSQL.append( SQL_FILTER_DESCRIPTION );
-        }
+            int nIndex = 1;
+            daoUtil.setInt( nIndex++, search.getIdUnit( ) );
 
-        sbSQL.append( SQL_ORDER_BY_LABEL_ASC );
+            for ( AdminUser user : listUsers )
+            {
+                daoUtil.setInt( nIndex++, user.getUserId( ) );
+            }
 
-        return sbSQL.toString( );
+            daoUtil.executeQuery( );
+
+            // The rows of each user are sorted by depth then id unit : the first one is kept
+            while ( daoUtil.next( ) )
+            {
+                mapIdUserIdUnit.putIfAbsent( daoUtil.getInt( 1 ), daoUtil.getInt( 2 ) );
+            }
+        }
     }
 
     /**
-     * Add a <b>WHERE</b> or a <b>OR</b> depending of the index. <br/>
-     * <ul>
-     * <li>if <code>nIndex</code> == 1, then we add a <b>WHERE</b></li>
-     * <li>if <code>nIndex</code> != 1, then we add a <b>OR</b> or a <b>AND</b> depending of the wide search characteristic</li>
-     * </ul>
+     * Append the FROM clause and the criteria of a search of users to a query
      * 
-     * @param bIsWideSearch
-     *            true if it is a wide search, false otherwise
+     * @param search
+     *            the search
      * @param sbSQL
-     *            the SQL query
-     * @param nIndex
-     *            the index
-     * @return the new index
+     *            the query
      */
-    private int addSQLWhereOr( boolean bIsWideSearch, StringBuilder sbSQL, int nIndex )
+    private static void appendUserSearchCriteria( UnitUserSearch search, StringBuilder sbSQL )
     {
-        if ( nIndex == 1 )
+        sbSQL.append( SQL_FROM_USERS_BY_SEARCH ).append( SQL_WHERE );
+        sbSQL.append( search.isInDepthSearch( ) ? SQL_FILTER_USER_SUB_TREE : SQL_FILTER_USER_UNIT );
+
+        AdminUserFilter auFilter = search.getAdminUserFilter( );
+
+        if ( auFilter != null )
         {
-            sbSQL.append( SQL_WHERE );
+            appendUserSearchFilter( StringUtils.isNotBlank( auFilter.getAccessCode( ) ), SQL_FILTER_USER_ACCESS_CODE, sbSQL );
+            appendUserSearchFilter( StringUtils.isNotBlank( auFilter.getLastName( ) ), SQL_FILTER_USER_LAST_NAME, sbSQL );
+            appendUserSearchFilter( StringUtils.isNotBlank( auFilter.getFirstName( ) ), SQL_FILTER_USER_FIRST_NAME, sbSQL );
+            appendUserSearchFilter( StringUtils.isNotBlank( auFilter.getEmail( ) ), SQL_FILTER_USER_EMAIL, sbSQL );
+            appendUserSearchFilter( auFilter.getStatus( ) != -1, SQL_FILTER_USER_STATUS, sbSQL );
+            appendUserSearchFilter( auFilter.getUserLevel( ) != -1, SQL_FILTER_USER_LEVEL, sbSQL );
         }
-        else
+
+        appendUserSearchFilter( search.getLevelAbove( ) != UnitUserSearch.LEVEL_NONE, SQL_FILTER_USER_LEVEL_ABOVE, sbSQL );
+    }
+
+    /**
+     * Append a criterion of a search of users to a query if it is set
+     * 
+     * @param bSet
+     *            true if the criterion is set, false otherwise
+     * @param strFilter
+     *            the SQL of the criterion
+     * @param sbSQL
+     *            the query
+     */
+    private static void appendUserSearchFilter( boolean bSet, String strFilter, StringBuilder sbSQL )
+    {
+        if ( bSet )
         {
-            sbSQL.append( bIsWideSearch ? SQL_OR : SQL_AND );
+            sbSQL.append( SQL_AND ).append( strFilter );
         }
-
-        return nIndex + 1;
     }
 
     /**
-     * Set the filter values on the DAOUtil
+     * Set the values of the criteria of a search of users, in the order of {@link #appendUserSearchCriteria(UnitUserSearch, StringBuilder)}
      * 
-     * @param uFilter
-     *            the filter
+     * @param search
+     *            the search
      * @param daoUtil
-     *            the DAOUtil
+     *            the query
+     * @return the index of the next parameter of the query
      */
-    private void setFilterValues( UnitFilter uFilter, DAOUtil daoUtil )
+    private static int setUserSearchValues( UnitUserSearch search, DAOUtil daoUtil )
     {
         int nIndex = 1;
+        daoUtil.setInt( nIndex++, search.getIdUnit( ) );
 
-        if ( uFilter.containsIdParent( ) )
+        AdminUserFilter auFilter = search.getAdminUserFilter( );
+
+        if ( auFilter != null )
         {
-            daoUtil.setInt( nIndex++, uFilter.getIdParent( ) );
+            nIndex = setUserSearchLikeValue( auFilter.getAccessCode( ), daoUtil, nIndex );
+            nIndex = setUserSearchLikeValue( auFilter.getLastName( ), daoUtil, nIndex );
+            nIndex = setUserSearchLikeValue( auFilter.getFirstName( ), daoUtil, nIndex );
+            nIndex = setUserSearchLikeValue( auFilter.getEmail( ), daoUtil, nIndex );
+
+            if ( auFilter.getStatus( ) != -1 )
+            {
+                daoUtil.setInt( nIndex++, auFilter.getStatus( ) );
+            }
+
+            if ( auFilter.getUserLevel( ) != -1 )
+            {
+                daoUtil.setInt( nIndex++, auFilter.getUserLevel( ) );
+            }
         }
 
-        if ( uFilter.containsLabel( ) )
+        if ( search.getLevelAbove( ) != UnitUserSearch.LEVEL_NONE )
         {
-            daoUtil.setString( nIndex++, uFilter.getLabel( ) );
+            daoUtil.setInt( nIndex++, search.getLevelAbove( ) );
         }
 
-        if ( uFilter.containsDescription( ) )
+        return nIndex;
+    }
+
+    /**
+     * Set the value of a LIKE criterion of a search of users if it is set
+     * 
+     * @param strValue
+     *            the searched value
+     * @param daoUtil
+     *            the query
+     * @param nIndex
+     *            the index of the parameter
+     * @return the index of the next parameter of the query
+     */
+    private static int setUserSearchLikeValue( String strValue, DAOUtil daoUtil, int nIndex )
+    {
+        if ( StringUtils.isBlank( strValue ) )
         {
-            daoUtil.setString( nIndex, uFilter.getDescription( ) );
+            return nIndex;
         }
+
+        daoUtil.setString( nIndex, SQL_LIKE_WILDCARD + strValue + SQL_LIKE_WILDCARD );
+
+        return nIndex + 1;
     }
 
-    @Override
-    public Unit findByCode( String strCode, Plugin plugin )
+    /**
+     * Build a membership index from the rows of a query selecting the id unit then the id user
+     * 
+     * @param daoUtil
+     *            the executed query
+     * @return the membership index
+     */
+    private static UnitMembershipIndex membershipIndexFromData( DAOUtil daoUtil )
     {
+        int [ ] idsUnit = new int [ INITIAL_MEMBERSHIP_CAPACITY];
+        int [ ] idsUser = new int [ INITIAL_MEMBERSHIP_CAPACITY];
+        int nSize = 0;
 
-        Unit unit = null;
-        int nIndex = 1;
-
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_BY_CODE, plugin ) )
+        while ( daoUtil.next( ) )
         {
-            daoUtil.setString( nIndex, strCode );
-            daoUtil.executeQuery( );
-
-            if ( daoUtil.next( ) )
+            if ( nSize == idsUnit.length )
             {
-                nIndex = 1;
-                unit = dataToObject( daoUtil );
+                idsUnit = Arrays.copyOf( idsUnit, nSize * 2 );
+                idsUser = Arrays.copyOf( idsUser, nSize * 2 );
             }
+
+            idsUnit [nSize] = daoUtil.getInt( 1 );
+            idsUser [nSize++] = daoUtil.getInt( 2 );
         }
 
-        return unit;
+        return new UnitMembershipIndex( idsUnit, idsUser, nSize );
     }
 
-    private Unit dataToObject( DAOUtil daoUtil )
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Integer> selectIdsUser( int nIdUnit, Plugin plugin )
+    {
+        List<Integer> listIdUsers = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_IDS_USER, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIdUsers.add( daoUtil.getInt( 1 ) );
+            }
+        }
+
+        return listIdUsers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addUserToUnit( int nIdUnit, int nIdUser, Plugin plugin )
+    {
+        int nIndex = 1;
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_ADD_USER_TO_UNIT, plugin ) )
+        {
+            daoUtil.setInt( nIndex++, nIdUnit );
+            daoUtil.setInt( nIndex, nIdUser );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addUsersToUnits( int [ ] idsUnit, int [ ] idsUser, int nSize, Plugin plugin )
+    {
+        if ( nSize == 0 )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_ADD_USER_TO_UNIT, plugin ) )
+        {
+            for ( int i = 0; i < nSize; i++ )
+            {
+                daoUtil.setInt( 1, idsUnit [i] );
+                daoUtil.setInt( 2, idsUser [i] );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addUsersToUnit( int nIdUnit, int [ ] idsUser, Plugin plugin )
+    {
+        if ( idsUser.length == 0 )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_ADD_USER_TO_UNIT, plugin ) )
+        {
+            for ( int nIdUser : idsUser )
+            {
+                daoUtil.setInt( 1, nIdUnit );
+                daoUtil.setInt( 2, nIdUser );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isUserInUnit( int nIdUser, int nIdUnit, Plugin plugin )
+    {
+        boolean bIsUserInAnUnit = false;
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CHECK_USER, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUser );
+            daoUtil.setInt( 2, nIdUnit );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                bIsUserInAnUnit = true;
+            }
+        }
+        return bIsUserInAnUnit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Unit> getUnitWithNoChildren( Plugin plugin )
+    {
+        List<Unit> listUnits = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_NO_CHILDREN + SQL_ORDER_BY_LABEL_ASC, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                Unit unit = dataToObject( daoUtil );
+                listUnits.add( unit );
+            }
+        }
+        return listUnits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateParent( int nIdUnitToMove, int nIdNewParent, Plugin plugin )
+    {
+        String strOldPath = selectPath( nIdUnitToMove, plugin );
+        String strNewPath = getPath( selectPath( nIdNewParent, plugin ), nIdUnitToMove );
+
+        // Checked before any update, so that a move making the tree too deep leaves it unchanged
+        if ( StringUtils.isNotEmpty( strOldPath ) )
+        {
+            int nMaxLength = 0;
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_MAX_PATH_LENGTH, plugin ) )
+            {
+                daoUtil.setString( 1, strOldPath + SQL_LIKE_WILDCARD );
+                daoUtil.executeQuery( );
+
+                if ( daoUtil.next( ) )
+                {
+                    nMaxLength = daoUtil.getInt( 1 );
+                }
+            }
+
+            checkPathLength( nIdUnitToMove, ( nMaxLength - strOldPath.length( ) ) + strNewPath.length( ) );
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_UNIT_PARENT, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdNewParent );
+            daoUtil.setInt( 2, nIdUnitToMove );
+            daoUtil.executeUpdate( );
+        }
+
+        moveClosure( nIdUnitToMove, nIdNewParent, plugin );
+        movePaths( strOldPath, strNewPath, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Integer> selectAllSubUnitsId( int nIdUnit, Plugin plugin )
+    {
+        return getTreeTraversal( ).selectAllSubUnitsId( nIdUnit, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Unit> selectAllSubUnits( int nIdUnit, Plugin plugin )
+    {
+        return getTreeTraversal( ).selectAllSubUnits( nIdUnit, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Unit> selectParentUnits( int nIdUnit, Plugin plugin )
+    {
+        List<Unit> listUnits = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_PARENT_UNITS, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listUnits.add( dataToObject( daoUtil ) );
+            }
+        }
+
+        return listUnits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isParent( int nIdUnitParent, int nIdUnit, Plugin plugin )
+    {
+        boolean bIsParent = false;
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_IS_PARENT, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnitParent );
+            daoUtil.setInt( 2, nIdUnit );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                bIsParent = true;
+            }
+        }
+
+        return bIsParent;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int completeClosure( Plugin plugin )
+    {
+        // Each unit linked to the root unit has all its links : the closure is built from the root down to the unit
+        if ( countRows( SQL_QUERY_COUNT_UNITS_WITHOUT_ROOT_LINK, Unit.ID_ROOT, plugin ) == 0 )
+        {
+            return 0;
+        }
+
+        int nInsertedRows;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_MISSING_CLOSURE_SELF, plugin ) )
+        {
+            nInsertedRows = daoUtil.executeUpdate( );
+        }
+
+        // The existing links are skipped, so that a partially filled table is completed, and a loop in the parents does not insert rows forever
+        for ( int nDepth = 0; countRows( SQL_QUERY_COUNT_CLOSURE_LEVEL, nDepth, plugin ) > 0; nDepth++ )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_MISSING_CLOSURE_LEVEL, plugin ) )
+            {
+                daoUtil.setInt( 1, nDepth );
+                nInsertedRows += daoUtil.executeUpdate( );
+            }
+        }
+
+        return nInsertedRows;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int completePaths( Plugin plugin )
+    {
+        Map<Integer, String> mapPaths = new HashMap<>( );
+        Map<Integer, Integer> mapParentsWithoutPath = new HashMap<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_PATHS, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                String strPath = daoUtil.getString( 3 );
+
+                if ( StringUtils.isEmpty( strPath ) )
+                {
+                    mapParentsWithoutPath.put( daoUtil.getInt( 1 ), daoUtil.getInt( 2 ) );
+                }
+                else
+                {
+                    mapPaths.put( daoUtil.getInt( 1 ), strPath );
+                }
+            }
+        }
+
+        if ( mapParentsWithoutPath.isEmpty( ) )
+        {
+            return 0;
+        }
+
+        // Level by level : each pass gives a path to the units whose parent has one. The units out of the tree, which only exist with corrupted data,
+        // keep an empty path.
+        Map<Integer, String> mapNewPaths = new HashMap<>( );
+        boolean bCompleted = true;
+
+        while ( bCompleted )
+        {
+            bCompleted = false;
+
+            for ( Iterator<Map.Entry<Integer, Integer>> iterator = mapParentsWithoutPath.entrySet( ).iterator( ); iterator.hasNext( ); )
+            {
+                Map.Entry<Integer, Integer> entry = iterator.next( );
+                int nIdParent = entry.getValue( );
+
+                if ( ( nIdParent == Unit.ID_NULL ) || mapPaths.containsKey( nIdParent ) )
+                {
+                    String strPath = checkPath( entry.getKey( ), getPath( mapPaths.get( nIdParent ), entry.getKey( ) ) );
+                    mapPaths.put( entry.getKey( ), strPath );
+                    mapNewPaths.put( entry.getKey( ), strPath );
+                    iterator.remove( );
+                    bCompleted = true;
+                }
+            }
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_PATH, plugin ) )
+        {
+            for ( Map.Entry<Integer, String> entry : mapNewPaths.entrySet( ) )
+            {
+                daoUtil.setString( 1, entry.getValue( ) );
+                daoUtil.setInt( 2, entry.getKey( ) );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+
+        return mapNewPaths.size( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String selectPath( int nIdUnit, Plugin plugin )
+    {
+        String strPath = null;
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_PATH, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                strPath = daoUtil.getString( 1 );
+            }
+        }
+
+        return strPath;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSubTreeFilter( String strColumn, int nIdUnit, boolean bIncludeUnit, Plugin plugin )
+    {
+        if ( ( strColumn == null ) || !strColumn.matches( PATTERN_COLUMN ) )
+        {
+            throw new IllegalArgumentException( "Invalid column name : " + strColumn );
+        }
+
+        String strPath = selectPath( nIdUnit, plugin );
+
+        if ( ( strPath == null ) || strPath.isEmpty( ) )
+        {
+            return SQL_FILTER_NONE;
+        }
+
+        // The path only contains digits and separators, so it can be inlined in the fragment
+        if ( bIncludeUnit )
+        {
+            return String.format( SQL_FILTER_SUB_TREE, strColumn, strPath );
+        }
+
+        return String.format( SQL_FILTER_SUB_TREE_EXCLUDING_UNIT, strColumn, strPath, strPath );
+    }
+
+    // PRIVATE METHODS
+
+    /**
+     * Get a query ending with an IN list of parameters, of at most {@link #IN_LIST_CHUNK_SIZE} parameters. Also used by the tree traversals.
+     * 
+     * @param strQuery
+     *            the beginning of the query, up to the opening parenthesis of the IN list
+     * @param nSize
+     *            the number of parameters of the IN list
+     * @return the query
+     */
+    static String getInQuery( String strQuery, int nSize )
+    {
+        StringBuilder sbSQL = new StringBuilder( strQuery );
+
+        for ( int i = 0; i < nSize; i++ )
+        {
+            if ( i > 0 )
+            {
+                sbSQL.append( SQL_SEPARATOR );
+            }
+
+            sbSQL.append( SQL_PARAMETER );
+        }
+
+        return sbSQL.append( SQL_END_IN ).toString( );
+    }
+
+    /**
+     * Get a user from the columns {@link #SQL_USER_COLUMNS} of a row, filled as the core fills a user loaded by its id
+     * 
+     * @param daoUtil
+     *            the daoUtil positioned on the row
+     * @return the user
+     */
+    private static AdminUser dataToUser( DAOUtil daoUtil )
+    {
+        int nIndex = 1;
+        AdminUser user = new AdminUser( );
+        user.setUserId( daoUtil.getInt( nIndex++ ) );
+        user.setAccessCode( daoUtil.getString( nIndex++ ) );
+        user.setLastName( daoUtil.getString( nIndex++ ) );
+        user.setFirstName( daoUtil.getString( nIndex++ ) );
+        user.setEmail( daoUtil.getString( nIndex++ ) );
+        user.setStatus( daoUtil.getInt( nIndex++ ) );
+        user.setLocale( new Locale( daoUtil.getString( nIndex++ ) ) );
+        user.setUserLevel( daoUtil.getInt( nIndex++ ) );
+        user.setAccessibilityMode( daoUtil.getBoolean( nIndex++ ) );
+        user.setPasswordReset( daoUtil.getBoolean( nIndex++ ) );
+        user.setPasswordMaxValidDate( daoUtil.getTimestamp( nIndex++ ) );
+
+        long lAccountMaxValidDate = daoUtil.getLong( nIndex++ );
+
+        if ( lAccountMaxValidDate > 0 )
+        {
+            user.setAccountMaxValidDate( lAccountMaxValidDate );
+        }
+
+        user.setLastLogin( daoUtil.getTimestamp( nIndex++ ) );
+        user.setWorkgroupKey( daoUtil.getString( nIndex ) );
+
+        return user;
+    }
+
+    /**
+     * Get the materialized path of a unit
+     * 
+     * @param strParentPath
+     *            the path of the parent unit, or null for the root unit
+     * @param nIdUnit
+     *            the id unit
+     * @return the path of the unit, for instance /0/12/453/
+     */
+    private static String getPath( String strParentPath, int nIdUnit )
+    {
+        return ( ( strParentPath != null ) ? strParentPath : PATH_SEPARATOR ) + nIdUnit + PATH_SEPARATOR;
+    }
+
+    /**
+     * Check that a path fits in the path column
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param strPath
+     *            the path of the unit
+     * @return the path
+     */
+    private static String checkPath( int nIdUnit, String strPath )
+    {
+        checkPathLength( nIdUnit, strPath.length( ) );
+
+        return strPath;
+    }
+
+    /**
+     * Check that a path length fits in the path column
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param nLength
+     *            the length of the path
+     * @throws AppException
+     *             if the path is too long
+     */
+    private static void checkPathLength( int nIdUnit, int nLength )
+    {
+        if ( nLength > PATH_MAX_LENGTH )
+        {
+            throw new AppException( String.format( MESSAGE_PATH_TOO_LONG, nIdUnit, PATH_MAX_LENGTH ) );
+        }
+    }
+
+    /**
+     * Count the rows returned by a query having one int parameter
+     * 
+     * @param strQuery
+     *            the SELECT COUNT(*) query
+     * @param nParameter
+     *            the value of the parameter
+     * @param plugin
+     *            the plugin
+     * @return the number of rows
+     */
+    private static int countRows( String strQuery, int nParameter, Plugin plugin )
+    {
+        int nCount = 0;
+
+        try ( DAOUtil daoUtil = new DAOUtil( strQuery, plugin ) )
+        {
+            daoUtil.setInt( 1, nParameter );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                nCount = daoUtil.getInt( 1 );
+            }
+        }
+
+        return nCount;
+    }
+
+    /**
+     * Update the materialized paths of a sub tree moved under a new parent, with one statement rewriting the prefix of all the paths of the sub tree
+     * 
+     * @param strOldPath
+     *            the path of the root of the moved sub tree before the move
+     * @param strNewPath
+     *            the path of the root of the moved sub tree under its new parent
+     * @param plugin
+     *            the plugin
+     */
+    private void movePaths( String strOldPath, String strNewPath, Plugin plugin )
+    {
+        if ( StringUtils.isEmpty( strOldPath ) )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_MOVE_PATHS, plugin ) )
+        {
+            daoUtil.setString( 1, strNewPath );
+            daoUtil.setInt( 2, strOldPath.length( ) + 1 );
+            daoUtil.setString( 3, strOldPath + SQL_LIKE_WILDCARD );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Get the sub tree traversal strategy defined in the plugin properties
+     * 
+     * @return the sub tree traversal strategy
+     */
+    private IUnitTreeTraversal getTreeTraversal( )
+    {
+        if ( _treeTraversal == null )
+        {
+            _treeTraversal = SpringContextService.getBean( AppPropertiesService.getProperty( PROPERTY_TREE_TRAVERSAL, BEAN_DEFAULT_TREE_TRAVERSAL ) );
+        }
+
+        return _treeTraversal;
+    }
+
+    /**
+     * Get the strategy allocating the ids of the new units
+     * 
+     * @return the id generator
+     */
+    private IUnitIdGenerator getIdGenerator( )
+    {
+        if ( _idGenerator == null )
+        {
+            _idGenerator = SpringContextService.getBean( AppPropertiesService.getProperty( PROPERTY_ID_GENERATOR, BEAN_DEFAULT_ID_GENERATOR ) );
+        }
+
+        return _idGenerator;
+    }
+
+    /**
+     * Insert the closure rows of a new unit : the unit itself at depth 0, then every ancestor of its parent one level deeper
+     * 
+     * @param nIdUnit
+     *            the id of the new unit
+     * @param nIdParent
+     *            the id of its parent
+     * @param plugin
+     *            the plugin
+     */
+    private void insertClosure( int nIdUnit, int nIdParent, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_CLOSURE_SELF, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.setInt( 2, nIdUnit );
+            daoUtil.executeUpdate( );
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_CLOSURE_ANCESTORS, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnit );
+            daoUtil.setInt( 2, nIdParent );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Update the closure rows of a moved sub tree. The links between the sub tree and its former ancestors are removed, the links inside the sub tree are
+     * kept, and the sub tree is then linked to every ancestor of its new parent.
+     * 
+     * @param nIdUnitToMove
+     *            the id of the root of the moved sub tree
+     * @param nIdNewParent
+     *            the id of the new parent
+     * @param plugin
+     *            the plugin
+     */
+    private void moveClosure( int nIdUnitToMove, int nIdNewParent, Plugin plugin )
+    {
+        List<int [ ]> listSubTree = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CLOSURE_SUB_TREE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdUnitToMove );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listSubTree.add( new int [ ] {
+                        daoUtil.getInt( 1 ), daoUtil.getInt( 2 )
+                } );
+            }
+        }
+
+        // A descendant at depth n below the moved unit keeps only its links of depth <= n
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_CLOSURE_OUTER_LINKS, plugin ) )
+        {
+            for ( int [ ] descendant : listSubTree )
+            {
+                daoUtil.setInt( 1, descendant [0] );
+                daoUtil.setInt( 2, descendant [1] );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_CLOSURE_SUB_TREE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdNewParent );
+            daoUtil.setInt( 2, nIdUnitToMove );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Build the SQL query with filter
+     * 
+     * @param uFilter
+     *            the filter
+     * @return a SQL query
+     */
+    private String buildSQLQuery( UnitFilter uFilter )
+    {
+        StringBuilder sbSQL = new StringBuilder( SQL_QUERY_SELECT_ALL );
+        int nIndex = 1;
+
+        if ( uFilter.containsIdParent( ) )
+        {
+            nIndex = addSQLWhereOr( uFilter.isWideSearch( ), sbSQL, nIndex );
+            sbSQL.append( SQL_FILTER_ID_PARENT );
+        }
+
+        if ( uFilter.containsLabel( ) )
+        {
+            nIndex = addSQLWhereOr( uFilter.isWideSearch( ), sbSQL, nIndex );
+            sbSQL.append( SQL_FILTER_LABEL );
+        }
+
+        if ( uFilter.containsDescription( ) )
+        {
+            addSQLWhereOr( uFilter.isWideSearch( ), sbSQL, nIndex );
+            sbSQL.append( SQL_FILTER_DESCRIPTION );
+        }
+
+        sbSQL.append( SQL_ORDER_BY_LABEL_ASC );
+
+        return sbSQL.toString( );
+    }
+
+    /**
+     * Add a <b>WHERE</b> or a <b>OR</b> depending of the index. <br/>
+     * <ul>
+     * <li>if <code>nIndex</code> == 1, then we add a <b>WHERE</b></li>
+     * <li>if <code>nIndex</code> != 1, then we add a <b>OR</b> or a <b>AND</b> depending of the wide search characteristic</li>
+     * </ul>
+     * 
+     * @param bIsWideSearch
+     *            true if it is a wide search, false otherwise
+     * @param sbSQL
+     *            the SQL query
+     * @param nIndex
+     *            the index
+     * @return the new index
+     */
+    private int addSQLWhereOr( boolean bIsWideSearch, StringBuilder sbSQL, int nIndex )
+    {
+        if ( nIndex == 1 )
+        {
+            sbSQL.append( SQL_WHERE );
+        }
+        else
+        {
+            sbSQL.append( bIsWideSearch ? SQL_OR : SQL_AND );
+        }
+
+        return nIndex + 1;
+    }
+
+    /**
+     * Set the filter values on the DAOUtil
+     * 
+     * @param uFilter
+     *            the filter
+     * @param daoUtil
+     *            the DAOUtil
+     */
+    private void setFilterValues( UnitFilter uFilter, DAOUtil daoUtil )
+    {
+        int nIndex = 1;
+
+        if ( uFilter.containsIdParent( ) )
+        {
+            daoUtil.setInt( nIndex++, uFilter.getIdParent( ) );
+        }
+
+        if ( uFilter.containsLabel( ) )
+        {
+            daoUtil.setString( nIndex++, uFilter.getLabel( ) );
+        }
+
+        if ( uFilter.containsDescription( ) )
+        {
+            daoUtil.setString( nIndex, uFilter.getDescription( ) );
+        }
+    }
+
+    @Override
+    public Unit findByCode( String strCode, Plugin plugin )
+    {
+
+        Unit unit = null;
+        int nIndex = 1;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_BY_CODE, plugin ) )
+        {
+            daoUtil.setString( nIndex, strCode );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                nIndex = 1;
+                unit = dataToObject( daoUtil );
+            }
+        }
+
+        return unit;
+    }
+
+    /**
+     * Build a unit from the current row of a query selecting the columns <code>id_unit, id_parent, code, label, description</code>
+     * 
+     * @param daoUtil
+     *            the DAOUtil
+     * @return the unit
+     */
+    static Unit dataToObject( DAOUtil daoUtil )
     {
         int nIndex = 0;
         Unit unit = new Unit( );
@@ -34,13 +34,28 @@
 package fr.paris.lutece.plugins.unittree.business.unit;
 
 import fr.paris.lutece.plugins.unittree.service.UnitTreePlugin;
+import fr.paris.lutece.portal.business.user.AdminUser;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.plugin.PluginService;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  *
@@ -50,8 +65,17 @@ import java.util.Set;
 public final class UnitHome
 {
     private static final String BEAN_UNIT_DAO = "unittree.unitDAO";
+    private static final String PROPERTY_TREE_SNAPSHOT_TIME_TO_LIVE = "unittree.treeSnapshot.timeToLive";
+    private static final int DEFAULT_TREE_SNAPSHOT_TIME_TO_LIVE = 60;
+    private static final String PROPERTY_MEMBERSHIP_INDEX_TIME_TO_LIVE = "unittree.membershipIndex.timeToLive";
+    private static final int DEFAULT_MEMBERSHIP_INDEX_TIME_TO_LIVE = 60;
     private static Plugin _plugin = PluginService.getPlugin( UnitTreePlugin.PLUGIN_NAME );
     private static IUnitDAO _dao = SpringContextService.getBean( BEAN_UNIT_DAO );
+    private static final AtomicReference<UnitTreeSnapshot> _treeSnapshot = new AtomicReference<>( );
+    private static final Object _treeSnapshotLock = new Object( );
+    private static final AtomicLong _treeSnapshotVersion = new AtomicLong( );
+    private static final AtomicReference<UnitMembershipIndex> _membershipIndex = new AtomicReference<>( );
+    private static final Object _membershipIndexLock = new Object( );
 
     /**
      * Private constructor
@@ -72,6 +96,30 @@ public final class UnitHome
         return _dao.load( nIdUnit, _plugin );
     }
 
+    /**
+     * Load the units having the given ids
+     * 
+     * @param listIdUnits
+     *            the ids unit
+     * @return the map of the found units, by id unit
+     */
+    public static Map<Integer, Unit> findByPrimaryKeys( Collection<Integer> listIdUnits )
+    {
+        return _dao.selectByIds( listIdUnits, _plugin );
+    }
+
+    /**
+     * Load the admin users having the given ids
+     * 
+     * @param listIdUsers
+     *            the ids user
+     * @return the map of the found users, by id user
+     */
+    public static Map<Integer, AdminUser> findUsersByPrimaryKeys( Collection<Integer> listIdUsers )
+    {
+        return _dao.selectUsersByIds( listIdUsers, _plugin );
+    }
+
     /**
      * Load the unit
      * 
@@ -93,7 +141,23 @@ public final class UnitHome
      */
     public static List<Unit> findByIdUser( int nIdUser )
     {
-        return _dao.selectByIdUser( nIdUser, _plugin );
+        UnitTreeSnapshot snapshot = getTreeSnapshot( );
+        List<Unit> listUnits = new ArrayList<>( );
+
+        for ( int nIdUnit : getMembershipIndex( ).getIdsUnit( nIdUser ) )
+        {
+            Unit unit = snapshot.getUnit( nIdUnit );
+
+            if ( unit == null )
+            {
+                // A unit created without this class : the snapshot is not up to date
+                return _dao.selectByIdUser( nIdUser, _plugin );
+            }
+
+            listUnits.add( unit );
+        }
+
+        return listUnits;
     }
 
     /**
@@ -125,7 +189,7 @@ public final class UnitHome
      */
     public static List<Integer> findAllIdsUsers( )
     {
-        return _dao.selectAllIdsUser( _plugin );
+        return toList( getMembershipIndex( ).getAllIdsUser( ) );
     }
 
     /**
@@ -137,7 +201,75 @@ public final class UnitHome
      */
     public static List<Integer> findIdsUser( int nIdUnit )
     {
-        return _dao.selectIdsUser( nIdUnit, _plugin );
+        return toList( getMembershipIndex( ).getIdsUser( nIdUnit ) );
+    }
+
+    /**
+     * Find the users assigned to a unit or to one of its sub units, at any depth. The assignments are read from the database with one query.
+     * 
+     * @param nIdUnit
+     *            the id of the root of the sub tree
+     * @return the membership index of the sub tree
+     */
+    public static UnitMembershipIndex findSubTreeMemberships( int nIdUnit )
+    {
+        return _dao.selectSubTreeMembershipIndex( nIdUnit, _plugin );
+    }
+
+    /**
+     * Count the users matching a search
+     * 
+     * @param search
+     *            the search
+     * @return the number of users
+     */
+    public static int countUsersBySearch( UnitUserSearch search )
+    {
+        return _dao.countUsersBySearch( search, _plugin );
+    }
+
+    /**
+     * Find a page of the users matching a search. The filtering, the sort and the pagination are done by the database.
+     * 
+     * @param search
+     *            the search
+     * @param nOffset
+     *            the index of the first user of the page
+     * @param nLimit
+     *            the maximum number of users of the page
+     * @param mapIdUserIdUnit
+     *            the map to fill with the id of the unit shown for each user, by id user : the unit nearest to the searched unit. May be null
+     * @return the users of the page, sorted
+     */
+    public static List<AdminUser> findUsersBySearch( UnitUserSearch search, int nOffset, int nLimit, Map<Integer, Integer> mapIdUserIdUnit )
+    {
+        return _dao.selectUsersBySearch( search, nOffset, nLimit, mapIdUserIdUnit, _plugin );
+    }
+
+    /**
+     * Get a new id unit
+     * 
+     * @return a new id unit
+     */
+    public static int newPrimaryKey( )
+    {
+        return _dao.newPrimaryKey( _plugin );
+    }
+
+    /**
+     * Insert units with one batch of inserts per table. The ids of the units must be set, and the parents must be inserted before their sub units.
+     * <br />
+     * The snapshot of the unit tree is not patched : {@link #refreshTreeSnapshot()} must be called once all the units are inserted.
+     * 
+     * @param listUnits
+     *            the units, the parents first
+     * @param mapPaths
+     *            the materialized paths by id unit, which must contain the paths of the parents which are not in the list. The paths of the inserted units
+     *            are added to the map
+     */
+    public static void createBatch( List<Unit> listUnits, Map<Integer, String> mapPaths )
+    {
+        _dao.insertBatch( listUnits, mapPaths, _plugin );
     }
 
     /**
@@ -149,7 +281,10 @@ public final class UnitHome
      */
     public static int create( Unit unit )
     {
-        return _dao.insert( unit, _plugin );
+        int nIdUnit = _dao.insert( unit, _plugin );
+        patchTreeSnapshot( snapshot -> snapshot.withUnit( unit, nextTreeSnapshotVersion( ) ) );
+
+        return nIdUnit;
     }
 
     /**
@@ -161,6 +296,7 @@ public final class UnitHome
     public static void remove( int nIdUnit )
     {
         _dao.remove( nIdUnit, _plugin );
+        patchTreeSnapshot( snapshot -> snapshot.withoutUnit( nIdUnit, nextTreeSnapshotVersion( ) ) );
     }
 
     /**
@@ -188,7 +324,8 @@ public final class UnitHome
     }
 
     /**
-     * Retrieve Set of all children units id
+     * Retrieve Set of all children units id. The sub units are read from the database with the traversal strategy defined by the property
+     * unittree.unitTreeTraversal, not from the snapshot of the unit tree.
      * 
      * @param nIdUnit
      *            the id unit
@@ -196,14 +333,94 @@ public final class UnitHome
      */
     public static Set<Integer> getAllSubUnitsId( int nIdUnit )
     {
-        Set<Integer> setResult = new HashSet<>( );
-        List<Unit> listUnits = _dao.getSubUnits( nIdUnit, _plugin );
-        for ( Unit unit : listUnits )
-        {
-            setResult.add( unit.getIdUnit( ) );
-            setResult.addAll( getAllSubUnitsId( unit.getIdUnit( ) ) );
-        }
-        return setResult;
+        return new HashSet<>( _dao.selectAllSubUnitsId( nIdUnit, _plugin ) );
+    }
+
+    /**
+     * Retrieve all the sub units of a unit, at any depth. The sub units are read from the database with the traversal strategy defined by the property
+     * unittree.unitTreeTraversal, not from the snapshot of the unit tree.
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return the list of all the sub units, ordered by depth then by label
+     */
+    public static List<Unit> getAllSubUnits( int nIdUnit )
+    {
+        return _dao.selectAllSubUnits( nIdUnit, _plugin );
+    }
+
+    /**
+     * Retrieve a unit and all its parent units
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return the unit followed by its parent units, up to the root unit
+     */
+    public static List<Unit> getParentUnits( int nIdUnit )
+    {
+        return _dao.selectParentUnits( nIdUnit, _plugin );
+    }
+
+    /**
+     * Check if a unit is a parent, at any level, of another unit
+     * 
+     * @param nIdUnitParent
+     *            the id of the parent unit
+     * @param nIdUnit
+     *            the id of the unit to check
+     * @return true if the first unit is a parent of the second unit, false otherwise
+     */
+    public static boolean isParent( int nIdUnitParent, int nIdUnit )
+    {
+        return _dao.isParent( nIdUnitParent, nIdUnit, _plugin );
+    }
+
+    /**
+     * Insert the missing rows of the closure table of the unit tree, whatever the depth of the tree
+     * 
+     * @return the number of inserted rows
+     */
+    public static int completeClosure( )
+    {
+        return _dao.completeClosure( _plugin );
+    }
+
+    /**
+     * Set the missing materialized paths of the units, whatever the depth of the tree
+     * 
+     * @return the number of updated units
+     */
+    public static int completePaths( )
+    {
+        return _dao.completePaths( _plugin );
+    }
+
+    /**
+     * Get the materialized path of a unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return the path, for instance /0/12/453/, or null if the unit does not exist
+     */
+    public static String getPath( int nIdUnit )
+    {
+        return _dao.selectPath( nIdUnit, _plugin );
+    }
+
+    /**
+     * Get a SQL fragment restricting a column holding ids unit to a sub tree, to filter the resources linked to the units of the sub tree in one query
+     * 
+     * @param strColumn
+     *            the name of the column holding the ids unit, optionally prefixed by the table alias
+     * @param nIdUnit
+     *            the id of the root of the sub tree
+     * @param bIncludeUnit
+     *            true if the root of the sub tree must match the filter, false to only match its sub units
+     * @return the SQL fragment
+     */
+    public static String getSubTreeFilter( String strColumn, int nIdUnit, boolean bIncludeUnit )
+    {
+        return _dao.getSubTreeFilter( strColumn, nIdUnit, bIncludeUnit, _plugin );
     }
 
     /**
@@ -217,6 +434,7 @@ public final class UnitHome
     public static void removeUserFromUnit( int nIdUser, int nIdUnit )
     {
         _dao.removeUserFromUnit( nIdUser, nIdUnit, _plugin );
+        patchMembershipIndex( index -> index.withoutUserInUnit( nIdUser, nIdUnit ) );
     }
 
     /**
@@ -228,6 +446,36 @@ public final class UnitHome
     public static void removeUsersFromUnit( int nIdUnit )
     {
         _dao.removeUsersFromUnit( nIdUnit, _plugin );
+        patchMembershipIndex( index -> index.withoutUsersInUnit( nIdUnit ) );
+    }
+
+    /**
+     * Remove users from units with one batch of deletes
+     * 
+     * @param idsUnit
+     *            the ids unit of the assignments
+     * @param idsUser
+     *            the ids user of the assignments, in the same order as the ids unit
+     * @param nSize
+     *            the number of assignments
+     */
+    public static void removeUsersFromUnits( int [ ] idsUnit, int [ ] idsUser, int nSize )
+    {
+        _dao.removeUsersFromUnits( idsUnit, idsUser, nSize, _plugin );
+
+        // The patch may be applied after the commit : it keeps its own copy of the assignments
+        int [ ] idsUnitRemoved = Arrays.copyOf( idsUnit, nSize );
+        int [ ] idsUserRemoved = Arrays.copyOf( idsUser, nSize );
+        patchMembershipIndex( index -> {
+            UnitMembershipIndex indexPatched = index;
+
+            for ( int i = 0; i < idsUnitRemoved.length; i++ )
+            {
+                indexPatched = indexPatched.withoutUserInUnit( idsUserRemoved [i], idsUnitRemoved [i] );
+            }
+
+            return indexPatched;
+        } );
     }
 
     /**
@@ -239,6 +487,25 @@ public final class UnitHome
     public static void update( Unit unit )
     {
         _dao.update( unit, _plugin );
+
+        // The update does not change the parent of the unit
+        Unit unitUpdated = new Unit( );
+        unitUpdated.setIdUnit( unit.getIdUnit( ) );
+        unitUpdated.setCode( unit.getCode( ) );
+        unitUpdated.setLabel( unit.getLabel( ) );
+        unitUpdated.setDescription( unit.getDescription( ) );
+        patchTreeSnapshot( snapshot -> {
+            Unit unitCurrent = snapshot.getUnit( unitUpdated.getIdUnit( ) );
+
+            if ( unitCurrent == null )
+            {
+                return snapshot;
+            }
+
+            unitUpdated.setIdParent( unitCurrent.getIdParent( ) );
+
+            return snapshot.withUnit( unitUpdated, nextTreeSnapshotVersion( ) );
+        } );
     }
 
     /**
@@ -252,6 +519,37 @@ public final class UnitHome
     public static void addUserToUnit( int nIdUnit, int nIdUser )
     {
         _dao.addUserToUnit( nIdUnit, nIdUser, _plugin );
+        patchMembershipIndex( index -> index.withUserInUnit( nIdUnit, nIdUser ) );
+    }
+
+    /**
+     * Add users to the unit with one batch of inserts
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param idsUser
+     *            the ids of the users, which must not be already in the unit
+     */
+    public static void addUsersToUnit( int nIdUnit, int [ ] idsUser )
+    {
+        _dao.addUsersToUnit( nIdUnit, idsUser, _plugin );
+        patchMembershipIndex( index -> index.withUsersInUnit( nIdUnit, idsUser ) );
+    }
+
+    /**
+     * Add users to units with one batch of inserts. <br />
+     * The index of the assignments is not patched : {@link #refreshMembershipIndex()} must be called once all the users are added.
+     * 
+     * @param idsUnit
+     *            the ids unit of the assignments
+     * @param idsUser
+     *            the ids user of the assignments, in the same order as the ids unit
+     * @param nSize
+     *            the number of assignments
+     */
+    public static void addUsersToUnits( int [ ] idsUnit, int [ ] idsUser, int nSize )
+    {
+        _dao.addUsersToUnits( idsUnit, idsUser, nSize, _plugin );
     }
 
     /**
@@ -265,7 +563,7 @@ public final class UnitHome
      */
     public static boolean isUserInUnit( int nIdUser, int nIdUnit )
     {
-        return _dao.isUserInUnit( nIdUser, nIdUnit, _plugin );
+        return getMembershipIndex( ).isUserInUnit( nIdUser, nIdUnit );
     }
 
     /**
@@ -289,5 +587,406 @@ public final class UnitHome
     public static void updateParent( int nIdUnitToMove, int nIdNewParent )
     {
         _dao.updateParent( nIdUnitToMove, nIdNewParent, _plugin );
+        patchTreeSnapshot( snapshot -> snapshot.withParent( nIdUnitToMove, nIdNewParent, nextTreeSnapshotVersion( ) ) );
+    }
+
+    /**
+     * Get the current snapshot of the unit tree. The snapshot is loaded on the first call, then patched in memory by each modification of the units
+     * made through this class, once the modification is committed. Inside a transaction having modified the units, the snapshot of the transaction is
+     * returned, which includes its own modifications. The units modified by another application or another node of a cluster are only seen once the
+     * snapshot is older than the configured time to live, or once {@link #refreshTreeSnapshot()} is called. Reading the current snapshot does not take
+     * any lock.
+     * 
+     * @return the current {@link UnitTreeSnapshot}
+     */
+    public static UnitTreeSnapshot getTreeSnapshot( )
+    {
+        UnitTreeSnapshot snapshot = _treeSnapshot.get( );
+        long lTimeToLive = AppPropertiesService.getPropertyInt( PROPERTY_TREE_SNAPSHOT_TIME_TO_LIVE, DEFAULT_TREE_SNAPSHOT_TIME_TO_LIVE ) * 1000L;
+
+        if ( ( snapshot != null ) && ( System.currentTimeMillis( ) - snapshot.getLoadTime( ) >= lTimeToLive ) )
+        {
+            // Only this expired snapshot is dropped, not a snapshot published meanwhile
+            _treeSnapshot.compareAndSet( snapshot, null );
+        }
+
+        return getPublishedOrTransactionView( _treeSnapshot, _treeSnapshotLock, UnitHome::loadTreeSnapshot );
+    }
+
+    /**
+     * Reload the snapshot of the unit tree from the database and publish it. This is needed when the units are modified without this class, by another
+     * application or another node of a cluster. Inside a transaction, the snapshot is reloaded once the transaction is committed.
+     */
+    public static void refreshTreeSnapshot( )
+    {
+        if ( TransactionSynchronizationManager.isSynchronizationActive( ) )
+        {
+            patchTreeSnapshot( snapshot -> loadTreeSnapshot( ) );
+
+            return;
+        }
+
+        synchronized( _treeSnapshotLock )
+        {
+            _treeSnapshot.set( loadTreeSnapshot( ) );
+        }
+    }
+
+    /**
+     * Apply a modification of the units to the snapshot of the unit tree. Inside a transaction, the modification is only applied to the snapshot of the
+     * transaction, and applied to the published snapshot once the transaction is committed : the other threads never see a modification which may be
+     * rolled back.
+     * 
+     * @param patch
+     *            the function giving the patched snapshot from the current snapshot
+     */
+    private static void patchTreeSnapshot( UnaryOperator<UnitTreeSnapshot> patch )
+    {
+        patch( _treeSnapshot, _treeSnapshotLock, UnitHome::loadTreeSnapshot, patch );
+    }
+
+    /**
+     * Load a new snapshot of the unit tree from the database, without publishing it
+     * 
+     * @return the new snapshot
+     */
+    private static UnitTreeSnapshot loadTreeSnapshot( )
+    {
+        return new UnitTreeSnapshot( _dao.selectAll( _plugin ), nextTreeSnapshotVersion( ) );
+    }
+
+    /**
+     * Get a new version number for a snapshot of the unit tree. The numbers are never reused, so that the caches keyed by version never mix two
+     * snapshots, including the snapshots kept by the transactions.
+     * 
+     * @return the version number
+     */
+    private static long nextTreeSnapshotVersion( )
+    {
+        return _treeSnapshotVersion.incrementAndGet( );
+    }
+
+    /**
+     * Get the current index of the users assigned to the units. The index is loaded on the first call with one query, then patched in memory by each
+     * assignment made through this class, once the assignment is committed. Inside a transaction having modified the assignments, the index of the
+     * transaction is returned. The assignments made by another application or another node of a cluster are only seen once the index is older than
+     * the configured time to live, or once {@link #refreshMembershipIndex()} is called.
+     * 
+     * @return the current {@link UnitMembershipIndex}
+     */
+    public static UnitMembershipIndex getMembershipIndex( )
+    {
+        UnitMembershipIndex index = _membershipIndex.get( );
+        long lTimeToLive = AppPropertiesService.getPropertyInt( PROPERTY_MEMBERSHIP_INDEX_TIME_TO_LIVE, DEFAULT_MEMBERSHIP_INDEX_TIME_TO_LIVE ) * 1000L;
+
+        if ( ( index != null ) && ( System.currentTimeMillis( ) - index.getLoadTime( ) >= lTimeToLive ) )
+        {
+            // Only this expired index is dropped, not an index published meanwhile
+            _membershipIndex.compareAndSet( index, null );
+        }
+
+        return getPublishedOrTransactionView( _membershipIndex, _membershipIndexLock, UnitHome::loadMembershipIndex );
+    }
+
+    /**
+     * Drop the index of the users assigned to the units, so that it is loaded again from the database on the next access. This is needed when the
+     * assignments are modified without this class. Inside a transaction, the index is dropped once the transaction is committed.
+     */
+    public static void refreshMembershipIndex( )
+    {
+        patchMembershipIndex( index -> null );
+    }
+
+    /**
+     * Apply a modification of the assignments to the index of the users assigned to the units. As for the tree snapshot, inside a transaction the
+     * modification is only applied to the index of the transaction, and applied to the published index once the transaction is committed.
+     * 
+     * @param patch
+     *            the function giving the patched index from the current index
+     */
+    private static void patchMembershipIndex( UnaryOperator<UnitMembershipIndex> patch )
+    {
+        patch( _membershipIndex, _membershipIndexLock, UnitHome::loadMembershipIndex, patch );
+    }
+
+    /**
+     * Load the index of the users assigned to the units from the database, without publishing it
+     * 
+     * @return the index
+     */
+    private static UnitMembershipIndex loadMembershipIndex( )
+    {
+        return _dao.selectMembershipIndex( _plugin );
+    }
+
+    /**
+     * Get the view of a value published in memory for the current thread : the view of the current transaction if it has modified the value, the
+     * published value otherwise. A value loaded inside a transaction may include its uncommitted modifications, so it is kept by the transaction
+     * instead of being published.
+     * 
+     * @param <T>
+     *            the type of the value
+     * @param reference
+     *            the published value
+     * @param lock
+     *            the lock of the published value
+     * @param loader
+     *            the function loading the value from the database
+     * @return the value
+     */
+    private static <T> T getPublishedOrTransactionView( AtomicReference<T> reference, Object lock, Supplier<T> loader )
+    {
+        PendingPatches<T> pending = getPendingPatches( reference );
+
+        if ( pending != null )
+        {
+            return pending.getView( );
+        }
+
+        T value = reference.get( );
+
+        if ( value == null )
+        {
+            if ( TransactionSynchronizationManager.isSynchronizationActive( ) )
+            {
+                return registerPendingPatches( reference, lock, loader ).getView( );
+            }
+
+            synchronized( lock )
+            {
+                value = reference.get( );
+
+                if ( value == null )
+                {
+                    value = loader.get( );
+                    reference.set( value );
+                }
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Apply a patch to a value published in memory : at once outside of a transaction, once the transaction is committed otherwise
+     * 
+     * @param <T>
+     *            the type of the value
+     * @param reference
+     *            the published value
+     * @param lock
+     *            the lock of the published value
+     * @param loader
+     *            the function loading the value from the database
+     * @param patch
+     *            the patch, which must give the same result if it is applied to a value already including the modification
+     */
+    private static <T> void patch( AtomicReference<T> reference, Object lock, Supplier<T> loader, UnaryOperator<T> patch )
+    {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive( ) )
+        {
+            applyPatches( reference, lock, Collections.singletonList( patch ) );
+
+            return;
+        }
+
+        PendingPatches<T> pending = getPendingPatches( reference );
+
+        if ( pending == null )
+        {
+            pending = registerPendingPatches( reference, lock, loader );
+        }
+
+        pending.add( patch );
+    }
+
+    /**
+     * Apply patches to a value published in memory, if the value is loaded
+     * 
+     * @param <T>
+     *            the type of the value
+     * @param reference
+     *            the published value
+     * @param lock
+     *            the lock of the published value
+     * @param listPatches
+     *            the patches, in the order of the modifications
+     */
+    private static <T> void applyPatches( AtomicReference<T> reference, Object lock, List<UnaryOperator<T>> listPatches )
+    {
+        synchronized( lock )
+        {
+            T value = reference.get( );
+
+            for ( UnaryOperator<T> patch : listPatches )
+            {
+                if ( value == null )
+                {
+                    break;
+                }
+
+                value = patch.apply( value );
+            }
+
+            reference.set( value );
+        }
+    }
+
+    /**
+     * Get the patches of a published value registered by the current transaction
+     * 
+     * @param <T>
+     *            the type of the value
+     * @param reference
+     *            the published value
+     * @return the patches, or null if the current transaction has not registered any patch of the value
+     */
+    @SuppressWarnings( "unchecked" )
+    private static <T> PendingPatches<T> getPendingPatches( AtomicReference<T> reference )
+    {
+        if ( TransactionSynchronizationManager.isSynchronizationActive( ) )
+        {
+            // The synchronizations of a suspended transaction are not listed : a nested transaction has its own patches
+            for ( TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations( ) )
+            {
+                if ( ( synchronization instanceof PendingPatches ) && ( (PendingPatches<?>) synchronization ).isPatchOf( reference ) )
+                {
+                    return (PendingPatches<T>) synchronization;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Register the patches of a published value for the current transaction
+     * 
+     * @param <T>
+     *            the type of the value
+     * @param reference
+     *            the published value
+     * @param lock
+     *            the lock of the published value
+     * @param loader
+     *            the function loading the value from the database
+     * @return the patches
+     */
+    private static <T> PendingPatches<T> registerPendingPatches( AtomicReference<T> reference, Object lock, Supplier<T> loader )
+    {
+        PendingPatches<T> pending = new PendingPatches<>( reference, lock, loader );
+        TransactionSynchronizationManager.registerSynchronization( pending );
+
+        return pending;
+    }
+
+    /**
+     * Convert an array of ids to a list
+     * 
+     * @param ids
+     *            the ids
+     * @return the list of ids
+     */
+    private static List<Integer> toList( int [ ] ids )
+    {
+        List<Integer> listIds = new ArrayList<>( ids.length );
+
+        for ( int nId : ids )
+        {
+            listIds.add( nId );
+        }
+
+        return listIds;
+    }
+
+    /**
+     * The modifications of a published value made by a transaction. They are applied to a view of the value kept by the transaction, so that the
+     * transaction reads its own modifications, then applied to the published value once the transaction is committed. Nothing is published if the
+     * transaction is rolled back.
+     * 
+     * @param <T>
+     *            the type of the value
+     */
+    private static final class PendingPatches<T> extends TransactionSynchronizationAdapter
+    {
+        private final AtomicReference<T> _reference;
+        private final Object _lock;
+        private final Supplier<T> _loader;
+        private final List<UnaryOperator<T>> _listPatches = new ArrayList<>( );
+        private T _view;
+
+        /**
+         * Constructor
+         * 
+         * @param reference
+         *            the published value
+         * @param lock
+         *            the lock of the published value
+         * @param loader
+         *            the function loading the value from the database
+         */
+        PendingPatches( AtomicReference<T> reference, Object lock, Supplier<T> loader )
+        {
+            _reference = reference;
+            _lock = lock;
+            _loader = loader;
+            _view = reference.get( );
+        }
+
+        /**
+         * Check if these patches modify a published value
+         * 
+         * @param reference
+         *            the published value
+         * @return true if these patches modify the value, false otherwise
+         */
+        boolean isPatchOf( AtomicReference<?> reference )
+        {
+            return _reference == reference;
+        }
+
+        /**
+         * Get the view of the transaction. If the value was not loaded, it is loaded from the database with the connection of the transaction, so it
+         * already includes the modifications of the transaction.
+         * 
+         * @return the view of the transaction
+         */
+        T getView( )
+        {
+            if ( _view == null )
+            {
+                _view = _loader.get( );
+            }
+
+            return _view;
+        }
+
+        /**
+         * Add a patch
+         * 
+         * @param patch
+         *            the patch
+         */
+        void add( UnaryOperator<T> patch )
+        {
+            if ( _view != null )
+            {
+                _view = patch.apply( _view );
+            }
+
+            _listPatches.add( patch );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void afterCompletion( int nStatus )
+        {
+            if ( nStatus == TransactionSynchronization.STATUS_COMMITTED )
+            {
+                applyPatches( _reference, _lock, _listPatches );
+            }
+        }
     }
 }
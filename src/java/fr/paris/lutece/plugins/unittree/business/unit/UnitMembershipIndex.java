@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Immutable in memory index of the users assigned to the units, in both directions : the sorted ids of the users of each unit, and the sorted ids of
+ * the units of each user. The membership checks are binary searches which do not allocate any object. A modification gives a new index sharing the
+ * arrays which are not modified.
+ *
+ */
+public final class UnitMembershipIndex
+{
+    private static final int [ ] EMPTY = new int [ 0];
+    private final SortedIntMultimap _usersByUnit;
+    private final SortedIntMultimap _unitsByUser;
+    private final long _lLoadTime;
+
+    /**
+     * Constructor
+     * 
+     * @param idsUnit
+     *            the ids unit of the assignments
+     * @param idsUser
+     *            the ids user of the assignments, in the same order as the ids unit
+     * @param nSize
+     *            the number of assignments
+     */
+    public UnitMembershipIndex( int [ ] idsUnit, int [ ] idsUser, int nSize )
+    {
+        this( SortedIntMultimap.of( idsUnit, idsUser, nSize ), SortedIntMultimap.of( idsUser, idsUnit, nSize ), System.currentTimeMillis( ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param usersByUnit
+     *            the users of each unit
+     * @param unitsByUser
+     *            the units of each user
+     * @param lLoadTime
+     *            the time the assignments were loaded from the database
+     */
+    private UnitMembershipIndex( SortedIntMultimap usersByUnit, SortedIntMultimap unitsByUser, long lLoadTime )
+    {
+        _usersByUnit = usersByUnit;
+        _unitsByUser = unitsByUser;
+        _lLoadTime = lLoadTime;
+    }
+
+    /**
+     * Get the time the assignments were loaded from the database. A modified index keeps the load time of the index it comes from.
+     * 
+     * @return the load time, in milliseconds
+     */
+    public long getLoadTime( )
+    {
+        return _lLoadTime;
+    }
+
+    /**
+     * Check if a user is assigned to a unit
+     * 
+     * @param nIdUser
+     *            the id user
+     * @param nIdUnit
+     *            the id unit
+     * @return true if the user is assigned to the unit, false otherwise
+     */
+    public boolean isUserInUnit( int nIdUser, int nIdUnit )
+    {
+        return _usersByUnit.contains( nIdUnit, nIdUser );
+    }
+
+    /**
+     * Check if a user is assigned to at least one unit
+     * 
+     * @param nIdUser
+     *            the id user
+     * @return true if the user is assigned to a unit, false otherwise
+     */
+    public boolean hasUnit( int nIdUser )
+    {
+        return _unitsByUser.get( nIdUser ).length > 0;
+    }
+
+    /**
+     * Get the ids of the users assigned to a unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return the sorted ids user
+     */
+    public int [ ] getIdsUser( int nIdUnit )
+    {
+        return _usersByUnit.get( nIdUnit ).clone( );
+    }
+
+    /**
+     * Get the ids of the units a user is assigned to
+     * 
+     * @param nIdUser
+     *            the id user
+     * @return the sorted ids unit
+     */
+    public int [ ] getIdsUnit( int nIdUser )
+    {
+        return _unitsByUser.get( nIdUser ).clone( );
+    }
+
+    /**
+     * Get the ids of the users assigned to at least one unit
+     * 
+     * @return the sorted ids user
+     */
+    public int [ ] getAllIdsUser( )
+    {
+        return _unitsByUser.keys( );
+    }
+
+    /**
+     * Get the index with a new assignment
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param nIdUser
+     *            the id user
+     * @return the new index, or this index if the user is already assigned to the unit
+     */
+    public UnitMembershipIndex withUserInUnit( int nIdUnit, int nIdUser )
+    {
+        if ( isUserInUnit( nIdUser, nIdUnit ) )
+        {
+            return this;
+        }
+
+        return new UnitMembershipIndex( _usersByUnit.with( nIdUnit, nIdUser ), _unitsByUser.with( nIdUser, nIdUnit ), _lLoadTime );
+    }
+
+    /**
+     * Get the index with new assignments of users to a unit. The index is rebuilt once, whatever the number of users.
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param idsUser
+     *            the ids of the users to assign to the unit. The users already assigned to the unit are ignored
+     * @return the new index
+     */
+    public UnitMembershipIndex withUsersInUnit( int nIdUnit, int [ ] idsUser )
+    {
+        int [ ] idsUnit = new int [ idsUser.length];
+        Arrays.fill( idsUnit, nIdUnit );
+
+        return new UnitMembershipIndex( _usersByUnit.union( SortedIntMultimap.of( idsUnit, idsUser, idsUser.length ) ),
+                _unitsByUser.union( SortedIntMultimap.of( idsUser, idsUnit, idsUser.length ) ), _lLoadTime );
+    }
+
+    /**
+     * Get the index without an assignment
+     * 
+     * @param nIdUser
+     *            the id user
+     * @param nIdUnit
+     *            the id unit
+     * @return the new index, or this index if the user is not assigned to the unit
+     */
+    public UnitMembershipIndex withoutUserInUnit( int nIdUser, int nIdUnit )
+    {
+        if ( !isUserInUnit( nIdUser, nIdUnit ) )
+        {
+            return this;
+        }
+
+        return new UnitMembershipIndex( _usersByUnit.without( nIdUnit, nIdUser ), _unitsByUser.without( nIdUser, nIdUnit ), _lLoadTime );
+    }
+
+    /**
+     * Get the index without the assignments of a unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return the new index
+     */
+    public UnitMembershipIndex withoutUsersInUnit( int nIdUnit )
+    {
+        SortedIntMultimap unitsByUser = _unitsByUser;
+
+        for ( int nIdUser : _usersByUnit.get( nIdUnit ) )
+        {
+            unitsByUser = unitsByUser.without( nIdUser, nIdUnit );
+        }
+
+        return new UnitMembershipIndex( _usersByUnit.withoutKey( nIdUnit ), unitsByUser, _lLoadTime );
+    }
+
+    /**
+     * Multimap from int to sorted distinct ints, stored as a sorted array of keys and the array of the values of each key. The arrays of values are never
+     * modified once built, so that they can be shared between the instances.
+     */
+    private static final class SortedIntMultimap
+    {
+        private final int [ ] _keys;
+        private final int [ ] [ ] _values;
+
+        /**
+         * Constructor
+         * 
+         * @param keys
+         *            the sorted keys
+         * @param values
+         *            the sorted values of each key
+         */
+        private SortedIntMultimap( int [ ] keys, int [ ] [ ] values )
+        {
+            _keys = keys;
+            _values = values;
+        }
+
+        /**
+         * Build a multimap from pairs of keys and values
+         * 
+         * @param keys
+         *            the keys of the pairs
+         * @param values
+         *            the values of the pairs
+         * @param nSize
+         *            the number of pairs
+         * @return the multimap
+         */
+        static SortedIntMultimap of( int [ ] keys, int [ ] values, int nSize )
+        {
+            // Sorting the pairs encoded as longs orders them by key, then by value. The sign bit of the value is flipped to keep negative values first.
+            long [ ] pairs = new long [ nSize];
+
+            for ( int i = 0; i < nSize; i++ )
+            {
+                pairs [i] = ( (long) keys [i] << Integer.SIZE ) | ( ( values [i] ^ Integer.MIN_VALUE ) & 0xFFFFFFFFL );
+            }
+
+            Arrays.sort( pairs );
+
+            int [ ] sortedKeys = new int [ nSize];
+            int [ ] [ ] sortedValues = new int [ nSize] [ ];
+            int nKeys = 0;
+            int nStart = 0;
+
+            while ( nStart < nSize )
+            {
+                int nKey = (int) ( pairs [nStart] >> Integer.SIZE );
+                int nEnd = nStart + 1;
+
+                while ( ( nEnd < nSize ) && ( (int) ( pairs [nEnd] >> Integer.SIZE ) == nKey ) )
+                {
+                    nEnd++;
+                }
+
+                int [ ] keyValues = new int [ nEnd - nStart];
+                int nValues = 0;
+
+                for ( int i = nStart; i < nEnd; i++ )
+                {
+                    int nValue = (int) pairs [i] ^ Integer.MIN_VALUE;
+
+                    // Duplicated pairs are stored once
+                    if ( ( nValues == 0 ) || ( keyValues [nValues - 1] != nValue ) )
+                    {
+                        keyValues [nValues++] = nValue;
+                    }
+                }
+
+                sortedKeys [nKeys] = nKey;
+                sortedValues [nKeys++] = Arrays.copyOf( keyValues, nValues );
+                nStart = nEnd;
+            }
+
+            return new SortedIntMultimap( Arrays.copyOf( sortedKeys, nKeys ), Arrays.copyOf( sortedValues, nKeys ) );
+        }
+
+        /**
+         * Get the values of a key
+         * 
+         * @param nKey
+         *            the key
+         * @return the sorted values, which must not be modified
+         */
+        int [ ] get( int nKey )
+        {
+            int nIndex = Arrays.binarySearch( _keys, nKey );
+
+            return ( nIndex >= 0 ) ? _values [nIndex] : EMPTY;
+        }
+
+        /**
+         * Check if a key has a value
+         * 
+         * @param nKey
+         *            the key
+         * @param nValue
+         *            the value
+         * @return true if the key has the value, false otherwise
+         */
+        boolean contains( int nKey, int nValue )
+        {
+            return Arrays.binarySearch( get( nKey ), nValue ) >= 0;
+        }
+
+        /**
+         * Get a copy of the keys
+         * 
+         * @return the sorted keys
+         */
+        int [ ] keys( )
+        {
+            return _keys.clone( );
+        }
+
+        /**
+         * Get the multimap with a new value
+         * 
+         * @param nKey
+         *            the key
+         * @param nValue
+         *            the value, which the key must not already have
+         * @return the new multimap
+         */
+        SortedIntMultimap with( int nKey, int nValue )
+        {
+            int nIndex = Arrays.binarySearch( _keys, nKey );
+
+            if ( nIndex < 0 )
+            {
+                int nInsert = -nIndex - 1;
+                int [ ] keys = new int [ _keys.length + 1];
+                int [ ] [ ] values = new int [ _keys.length + 1] [ ];
+                System.arraycopy( _keys, 0, keys, 0, nInsert );
+                System.arraycopy( _values, 0, values, 0, nInsert );
+                keys [nInsert] = nKey;
+                values [nInsert] = new int [ ] {
+                    nValue
+                };
+                System.arraycopy( _keys, nInsert, keys, nInsert + 1, _keys.length - nInsert );
+                System.arraycopy( _values, nInsert, values, nInsert + 1, _keys.length - nInsert );
+
+                return new SortedIntMultimap( keys, values );
+            }
+
+            int [ ] keyValues = _values [nIndex];
+            int nInsert = -Arrays.binarySearch( keyValues, nValue ) - 1;
+            int [ ] newKeyValues = new int [ keyValues.length + 1];
+            System.arraycopy( keyValues, 0, newKeyValues, 0, nInsert );
+            newKeyValues [nInsert] = nValue;
+            System.arraycopy( keyValues, nInsert, newKeyValues, nInsert + 1, keyValues.length - nInsert );
+
+            int [ ] [ ] values = _values.clone( );
+            values [nIndex] = newKeyValues;
+
+            return new SortedIntMultimap( _keys, values );
+        }
+
+        /**
+         * Get the union of this multimap and another one, in one pass over the keys of both multimaps
+         * 
+         * @param other
+         *            the other multimap
+         * @return the new multimap
+         */
+        SortedIntMultimap union( SortedIntMultimap other )
+        {
+            int [ ] keys = new int [ _keys.length + other._keys.length];
+            int [ ] [ ] values = new int [ keys.length] [ ];
+            int nKeys = 0;
+            int i = 0;
+            int j = 0;
+
+            while ( ( i < _keys.length ) || ( j < other._keys.length ) )
+            {
+                if ( ( j == other._keys.length ) || ( ( i < _keys.length ) && ( _keys [i] < other._keys [j] ) ) )
+                {
+                    keys [nKeys] = _keys [i];
+                    values [nKeys++] = _values [i++];
+                }
+                else
+                    if ( ( i == _keys.length ) || ( other._keys [j] < _keys [i] ) )
+                    {
+                        keys [nKeys] = other._keys [j];
+                        values [nKeys++] = other._values [j++];
+                    }
+                    else
+                    {
+                        keys [nKeys] = _keys [i];
+                        values [nKeys++] = union( _values [i++], other._values [j++] );
+                    }
+            }
+
+            return new SortedIntMultimap( Arrays.copyOf( keys, nKeys ), Arrays.copyOf( values, nKeys ) );
+        }
+
+        /**
+         * Get the union of two sorted arrays of distinct values
+         * 
+         * @param values
+         *            the first array
+         * @param otherValues
+         *            the second array
+         * @return the sorted distinct values of both arrays, or the first array if it already has all the values of the second one
+         */
+        private static int [ ] union( int [ ] values, int [ ] otherValues )
+        {
+            int [ ] merged = new int [ values.length + otherValues.length];
+            int nSize = 0;
+            int i = 0;
+            int j = 0;
+
+            while ( ( i < values.length ) || ( j < otherValues.length ) )
+            {
+                if ( ( j == otherValues.length ) || ( ( i < values.length ) && ( values [i] <= otherValues [j] ) ) )
+                {
+                    if ( ( j < otherValues.length ) && ( values [i] == otherValues [j] ) )
+                    {
+                        j++;
+                    }
+
+                    merged [nSize++] = values [i++];
+                }
+                else
+                {
+                    merged [nSize++] = otherValues [j++];
+                }
+            }
+
+            return ( nSize == values.length ) ? values : Arrays.copyOf( merged, nSize );
+        }
+
+        /**
+         * Get the multimap without a value
+         * 
+         * @param nKey
+         *            the key
+         * @param nValue
+         *            the value
+         * @return the new multimap, or this multimap if the key does not have the value
+         */
+        SortedIntMultimap without( int nKey, int nValue )
+        {
+            int nIndex = Arrays.binarySearch( _keys, nKey );
+
+            if ( nIndex < 0 )
+            {
+                return this;
+            }
+
+            int [ ] keyValues = _values [nIndex];
+            int nRemove = Arrays.binarySearch( keyValues, nValue );
+
+            if ( nRemove < 0 )
+            {
+                return this;
+            }
+
+            if ( keyValues.length == 1 )
+            {
+                return withoutKey( nKey );
+            }
+
+            int [ ] newKeyValues = new int [ keyValues.length - 1];
+            System.arraycopy( keyValues, 0, newKeyValues, 0, nRemove );
+            System.arraycopy( keyValues, nRemove + 1, newKeyValues, nRemove, keyValues.length - nRemove - 1 );
+
+            int [ ] [ ] values = _values.clone( );
+            values [nIndex] = newKeyValues;
+
+            return new SortedIntMultimap( _keys, values );
+        }
+
+        /**
+         * Get the multimap without a key and its values
+         * 
+         * @param nKey
+         *            the key
+         * @return the new multimap, or this multimap if it does not have the key
+         */
+        SortedIntMultimap withoutKey( int nKey )
+        {
+            int nIndex = Arrays.binarySearch( _keys, nKey );
+
+            if ( nIndex < 0 )
+            {
+                return this;
+            }
+
+            int [ ] keys = new int [ _keys.length - 1];
+            int [ ] [ ] values = new int [ _keys.length - 1] [ ];
+            System.arraycopy( _keys, 0, keys, 0, nIndex );
+            System.arraycopy( _values, 0, values, 0, nIndex );
+            System.arraycopy( _keys, nIndex + 1, keys, nIndex, _keys.length - nIndex - 1 );
+            System.arraycopy( _values, nIndex + 1, values, nIndex, _keys.length - nIndex - 1 );
+
+            return new SortedIntMultimap( keys, values );
+        }
+    }
+}
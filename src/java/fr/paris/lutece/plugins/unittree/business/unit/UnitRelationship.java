@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.plugins.unittree.business.assignment.UnitAssignmentType;
+
+/**
+ *
+ * Relationship of a unit with a reference unit in the unit tree
+ *
+ */
+public class UnitRelationship
+{
+    private final UnitRelationshipType _type;
+    private final Unit _lowestCommonAncestor;
+    private final int _nDistance;
+
+    /**
+     * Constructor
+     * 
+     * @param type
+     *            the type of the relationship
+     * @param lowestCommonAncestor
+     *            the lowest common ancestor of the units, or null if the units are not in the same tree
+     * @param nDistance
+     *            the number of links between the units, or -1 if the units are not in the same tree
+     */
+    public UnitRelationship( UnitRelationshipType type, Unit lowestCommonAncestor, int nDistance )
+    {
+        _type = type;
+        _lowestCommonAncestor = lowestCommonAncestor;
+        _nDistance = nDistance;
+    }
+
+    /**
+     * Get the type of the relationship
+     * 
+     * @return the type
+     */
+    public UnitRelationshipType getType( )
+    {
+        return _type;
+    }
+
+    /**
+     * Get the lowest common ancestor of the units, which is the deepest unit being one of the units or an ancestor of both units
+     * 
+     * @return the lowest common ancestor, or null if the units are not in the same tree
+     */
+    public Unit getLowestCommonAncestor( )
+    {
+        return _lowestCommonAncestor;
+    }
+
+    /**
+     * Get the distance between the units in the tree
+     * 
+     * @return the number of links between the units, or -1 if the units are not in the same tree
+     */
+    public int getDistance( )
+    {
+        return _nDistance;
+    }
+
+    /**
+     * Get the type of the assignment of a resource from the reference unit to the unit
+     * 
+     * @return {@link UnitAssignmentType#ASSIGN_UP} if the unit is an ancestor of the reference unit, {@link UnitAssignmentType#ASSIGN_DOWN} if it is a
+     *         descendant, {@link UnitAssignmentType#TRANSFER} otherwise
+     */
+    public UnitAssignmentType getAssignmentType( )
+    {
+        switch( _type )
+        {
+            case ANCESTOR:
+                return UnitAssignmentType.ASSIGN_UP;
+            case DESCENDANT:
+                return UnitAssignmentType.ASSIGN_DOWN;
+            default:
+                return UnitAssignmentType.TRANSFER;
+        }
+    }
+}
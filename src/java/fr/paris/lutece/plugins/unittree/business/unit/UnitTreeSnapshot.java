@@ -0,0 +1,670 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ *
+ * Immutable snapshot of the whole unit tree : the units, and a {@link CompactUnitTree} indexing their hierarchy. A snapshot is never modified once
+ * built, so it can be read by any number of threads without locking. The units it holds are never given to the callers : every getter returns copies.
+ * A modified snapshot copies the list of units, and derives its index from the index of this snapshot, with only the intervals of the moved units
+ * renumbered. The index is only built again from the whole list when a root unit, a unit with sub units or a unit out of the tree is involved, which
+ * only happens with corrupted data.
+ *
+ */
+public final class UnitTreeSnapshot
+{
+    private final long _lVersion;
+    private final long _lLoadTime;
+    private final List<Unit> _listUnits;
+    private final CompactUnitTree _tree;
+    private final Unit [ ] _units;
+
+    /**
+     * Constructor
+     * 
+     * @param listUnits
+     *            all the units of the tree, ordered by label
+     * @param lVersion
+     *            the version of the snapshot
+     */
+    public UnitTreeSnapshot( List<Unit> listUnits, long lVersion )
+    {
+        this( listUnits, lVersion, System.currentTimeMillis( ) );
+    }
+
+    /**
+     * Constructor of a snapshot built again from the whole list of units
+     * 
+     * @param listUnits
+     *            all the units of the tree, ordered by label
+     * @param lVersion
+     *            the version of the snapshot
+     * @param lLoadTime
+     *            the time the units were loaded from the database
+     */
+    private UnitTreeSnapshot( List<Unit> listUnits, long lVersion, long lLoadTime )
+    {
+        _lVersion = lVersion;
+        _lLoadTime = lLoadTime;
+        _listUnits = new ArrayList<>( listUnits );
+        _tree = new CompactUnitTree( _listUnits );
+        _units = new Unit [ _tree.size( )];
+
+        for ( Unit unit : _listUnits )
+        {
+            _units [_tree.indexOf( unit.getIdUnit( ) )] = unit;
+        }
+    }
+
+    /**
+     * Constructor of a derived snapshot
+     * 
+     * @param listUnits
+     *            all the units of the tree, ordered by label
+     * @param tree
+     *            the index of the units
+     * @param units
+     *            the units by index
+     * @param lVersion
+     *            the version of the snapshot
+     * @param lLoadTime
+     *            the time the units were loaded from the database
+     */
+    private UnitTreeSnapshot( List<Unit> listUnits, CompactUnitTree tree, Unit [ ] units, long lVersion, long lLoadTime )
+    {
+        _lVersion = lVersion;
+        _lLoadTime = lLoadTime;
+        _listUnits = listUnits;
+        _tree = tree;
+        _units = units;
+    }
+
+    /**
+     * Get the version of the snapshot. Each new snapshot gets a greater version than the previous one.
+     * 
+     * @return the version
+     */
+    public long getVersion( )
+    {
+        return _lVersion;
+    }
+
+    /**
+     * Get the time the units of the snapshot were loaded from the database. A modified snapshot keeps the load time of the snapshot it comes from.
+     * 
+     * @return the load time, in milliseconds
+     */
+    public long getLoadTime( )
+    {
+        return _lLoadTime;
+    }
+
+    /**
+     * Get the structural index of the tree
+     * 
+     * @return the {@link CompactUnitTree}
+     */
+    public CompactUnitTree getTree( )
+    {
+        return _tree;
+    }
+
+    /**
+     * Get the number of units in the tree
+     * 
+     * @return the number of units
+     */
+    public int size( )
+    {
+        return _tree.size( );
+    }
+
+    /**
+     * Check if the tree contains a unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return true if the unit is in the tree, false otherwise
+     */
+    public boolean contains( int nIdUnit )
+    {
+        return _tree.indexOf( nIdUnit ) != CompactUnitTree.NONE;
+    }
+
+    /**
+     * Get a copy of a unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return a copy of the unit, or null if the unit is not in the tree
+     */
+    public Unit getUnit( int nIdUnit )
+    {
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        return ( nIndex != CompactUnitTree.NONE ) ? copy( _units [nIndex] ) : null;
+    }
+
+    /**
+     * Get a copy of the unit at a given index of the tree index
+     * 
+     * @param nIndex
+     *            the index of the unit in {@link #getTree()}
+     * @return a copy of the unit
+     */
+    public Unit getUnitAt( int nIndex )
+    {
+        return copy( _units [nIndex] );
+    }
+
+    /**
+     * Get a copy of all the units, ordered by label
+     * 
+     * @return a list of {@link Unit}
+     */
+    public List<Unit> getUnits( )
+    {
+        return copy( _listUnits );
+    }
+
+    /**
+     * Get a copy of the direct sub units of a unit, ordered by label
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return a list of {@link Unit}
+     */
+    public List<Unit> getSubUnits( int nIdUnit )
+    {
+        List<Unit> listSubUnits = new ArrayList<>( );
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        if ( nIndex != CompactUnitTree.NONE )
+        {
+            for ( int nChild = _tree.getFirstChild( nIndex ); nChild != CompactUnitTree.NONE; nChild = _tree.getNextSibling( nChild ) )
+            {
+                listSubUnits.add( copy( _units [nChild] ) );
+            }
+        }
+
+        return listSubUnits;
+    }
+
+    /**
+     * Get a copy of all the sub units of a unit, at any depth, in depth first pre-order
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return a list of {@link Unit}
+     */
+    public List<Unit> getAllSubUnits( int nIdUnit )
+    {
+        List<Unit> listSubUnits = new ArrayList<>( );
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        if ( ( nIndex != CompactUnitTree.NONE ) && ( _tree.getLeft( nIndex ) != CompactUnitTree.NONE ) )
+        {
+            for ( int nLeft = _tree.getLeft( nIndex ) + 1; nLeft <= _tree.getRight( nIndex ); nLeft++ )
+            {
+                listSubUnits.add( copy( _units [_tree.getIndexAt( nLeft )] ) );
+            }
+        }
+
+        return listSubUnits;
+    }
+
+    /**
+     * Check if a unit has sub units
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return true if the unit has sub units, false otherwise
+     */
+    public boolean hasSubUnits( int nIdUnit )
+    {
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        return ( nIndex != CompactUnitTree.NONE ) && ( _tree.getFirstChild( nIndex ) != CompactUnitTree.NONE );
+    }
+
+    /**
+     * Get a copy of a unit and of all its parent units, from the unit itself up to the root unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return a list of {@link Unit}, empty if the unit is not in the tree
+     */
+    public List<Unit> getParentUnits( int nIdUnit )
+    {
+        List<Unit> listParentUnits = new ArrayList<>( );
+
+        // The size guard protects against corrupted data with cycles
+        for ( int nIndex = _tree.indexOf( nIdUnit ); ( nIndex != CompactUnitTree.NONE ) && ( listParentUnits.size( ) < _tree.size( ) ); nIndex = _tree
+                .getParent( nIndex ) )
+        {
+            listParentUnits.add( copy( _units [nIndex] ) );
+        }
+
+        return listParentUnits;
+    }
+
+    /**
+     * Check if a unit is a parent, at any level, of another unit
+     * 
+     * @param nIdUnitParent
+     *            the id of the parent unit
+     * @param nIdUnit
+     *            the id of the unit to check
+     * @return true if the first unit is a parent of the second unit, false otherwise
+     */
+    public boolean isParent( int nIdUnitParent, int nIdUnit )
+    {
+        int nIndexParent = _tree.indexOf( nIdUnitParent );
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        return ( nIndexParent != CompactUnitTree.NONE ) && ( nIndex != CompactUnitTree.NONE ) && _tree.isAncestor( nIndexParent, nIndex );
+    }
+
+    /**
+     * Get the relationship of a unit with a reference unit
+     * 
+     * @param nIdUnitRef
+     *            the id of the reference unit
+     * @param nIdUnit
+     *            the id unit
+     * @return the relationship, or null if one of the units is not in the tree
+     */
+    public UnitRelationship getRelationship( int nIdUnitRef, int nIdUnit )
+    {
+        int nIndexRef = _tree.indexOf( nIdUnitRef );
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        if ( ( nIndexRef == CompactUnitTree.NONE ) || ( nIndex == CompactUnitTree.NONE ) )
+        {
+            return null;
+        }
+
+        int nLowestCommonAncestor = _tree.getLowestCommonAncestor( nIndexRef, nIndex );
+
+        if ( nLowestCommonAncestor == CompactUnitTree.NONE )
+        {
+            return new UnitRelationship( UnitRelationshipType.UNRELATED, null, -1 );
+        }
+
+        UnitRelationshipType type;
+
+        if ( nIndexRef == nIndex )
+        {
+            type = UnitRelationshipType.SAME;
+        }
+        else
+            if ( nLowestCommonAncestor == nIndex )
+            {
+                type = UnitRelationshipType.ANCESTOR;
+            }
+            else
+                if ( nLowestCommonAncestor == nIndexRef )
+                {
+                    type = UnitRelationshipType.DESCENDANT;
+                }
+                else
+                    if ( _tree.getParent( nIndexRef ) == _tree.getParent( nIndex ) )
+                    {
+                        type = UnitRelationshipType.SIBLING;
+                    }
+                    else
+                    {
+                        type = UnitRelationshipType.UNRELATED;
+                    }
+
+        int nDistance = ( _tree.getDepth( nIndexRef ) + _tree.getDepth( nIndex ) ) - ( 2 * _tree.getDepth( nLowestCommonAncestor ) );
+
+        return new UnitRelationship( type, copy( _units [nLowestCommonAncestor] ), nDistance );
+    }
+
+    /**
+     * Get a new snapshot with a unit added. If the tree already contains a unit with the same id, this unit is replaced.
+     * 
+     * @param unit
+     *            the unit
+     * @param lVersion
+     *            the version of the new snapshot
+     * @return the new snapshot, or this snapshot if it already contains the same unit
+     */
+    public UnitTreeSnapshot withUnit( Unit unit, long lVersion )
+    {
+        int nIndex = _tree.indexOf( unit.getIdUnit( ) );
+
+        if ( ( nIndex != CompactUnitTree.NONE ) && isSame( _units [nIndex], unit ) )
+        {
+            return this;
+        }
+
+        Unit unitCopy = copy( unit );
+
+        if ( ( nIndex != CompactUnitTree.NONE ) && ( _units [nIndex].getIdParent( ) == unit.getIdParent( ) )
+                && Objects.equals( _units [nIndex].getLabel( ), unit.getLabel( ) ) )
+        {
+            // Same place in the list and in the tree
+            return new UnitTreeSnapshot( replace( _listUnits, unitCopy ), _tree, replace( nIndex, unitCopy ), lVersion, _lLoadTime );
+        }
+
+        List<Unit> listUnits = new ArrayList<>( _listUnits.size( ) + 1 );
+        boolean bAdded = false;
+
+        for ( Unit unitCurrent : _listUnits )
+        {
+            if ( unitCurrent.getIdUnit( ) != unit.getIdUnit( ) )
+            {
+                if ( !bAdded && ( compareLabels( unitCopy, unitCurrent ) < 0 ) )
+                {
+                    listUnits.add( unitCopy );
+                    bAdded = true;
+                }
+
+                listUnits.add( unitCurrent );
+            }
+        }
+
+        if ( !bAdded )
+        {
+            listUnits.add( unitCopy );
+        }
+
+        int nParent = _tree.indexOf( unit.getIdParent( ) );
+
+        if ( nIndex == CompactUnitTree.NONE )
+        {
+            if ( isReachable( nParent ) )
+            {
+                CompactUnitTree tree = _tree.withLeaf( unit.getIdUnit( ), nParent, getPreviousSibling( nParent, unitCopy, CompactUnitTree.NONE ) );
+                Unit [ ] units = new Unit [ _units.length + 1];
+                int nNewIndex = tree.indexOf( unit.getIdUnit( ) );
+                System.arraycopy( _units, 0, units, 0, nNewIndex );
+                units [nNewIndex] = unitCopy;
+                System.arraycopy( _units, nNewIndex, units, nNewIndex + 1, _units.length - nNewIndex );
+
+                return new UnitTreeSnapshot( listUnits, tree, units, lVersion, _lLoadTime );
+            }
+        }
+        else
+            if ( isMovable( nIndex, nParent ) )
+            {
+                CompactUnitTree tree = _tree.withMovedSubTree( nIndex, nParent, getPreviousSibling( nParent, unitCopy, nIndex ) );
+
+                return new UnitTreeSnapshot( listUnits, tree, replace( nIndex, unitCopy ), lVersion, _lLoadTime );
+            }
+
+        return new UnitTreeSnapshot( listUnits, lVersion, _lLoadTime );
+    }
+
+    /**
+     * Get a new snapshot with a unit removed
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param lVersion
+     *            the version of the new snapshot
+     * @return the new snapshot, or this snapshot if it does not contain the unit
+     */
+    public UnitTreeSnapshot withoutUnit( int nIdUnit, long lVersion )
+    {
+        if ( !contains( nIdUnit ) )
+        {
+            return this;
+        }
+
+        List<Unit> listUnits = new ArrayList<>( _listUnits );
+        listUnits.removeIf( unit -> unit.getIdUnit( ) == nIdUnit );
+
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        if ( isReachable( nIndex ) && ( _tree.getParent( nIndex ) != CompactUnitTree.NONE ) && ( _tree.getFirstChild( nIndex ) == CompactUnitTree.NONE ) )
+        {
+            Unit [ ] units = new Unit [ _units.length - 1];
+            System.arraycopy( _units, 0, units, 0, nIndex );
+            System.arraycopy( _units, nIndex + 1, units, nIndex, _units.length - nIndex - 1 );
+
+            return new UnitTreeSnapshot( listUnits, _tree.withoutLeaf( nIndex ), units, lVersion, _lLoadTime );
+        }
+
+        return new UnitTreeSnapshot( listUnits, lVersion, _lLoadTime );
+    }
+
+    /**
+     * Get a new snapshot with a unit moved, with its sub tree, under a new parent
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param nIdParent
+     *            the id of the new parent unit
+     * @param lVersion
+     *            the version of the new snapshot
+     * @return the new snapshot, or this snapshot if it does not contain the unit or if the unit already has this parent
+     */
+    public UnitTreeSnapshot withParent( int nIdUnit, int nIdParent, long lVersion )
+    {
+        int nIndex = _tree.indexOf( nIdUnit );
+
+        if ( ( nIndex == CompactUnitTree.NONE ) || ( _units [nIndex].getIdParent( ) == nIdParent ) )
+        {
+            return this;
+        }
+
+        Unit unitMoved = copy( _units [nIndex] );
+        unitMoved.setIdParent( nIdParent );
+
+        List<Unit> listUnits = replace( _listUnits, unitMoved );
+        int nParent = _tree.indexOf( nIdParent );
+
+        if ( isMovable( nIndex, nParent ) )
+        {
+            CompactUnitTree tree = _tree.withMovedSubTree( nIndex, nParent, getPreviousSibling( nParent, unitMoved, nIndex ) );
+
+            return new UnitTreeSnapshot( listUnits, tree, replace( nIndex, unitMoved ), lVersion, _lLoadTime );
+        }
+
+        return new UnitTreeSnapshot( listUnits, lVersion, _lLoadTime );
+    }
+
+    /**
+     * Check if a unit is reachable from a root unit
+     * 
+     * @param nIndex
+     *            the index of the unit, or {@link CompactUnitTree#NONE}
+     * @return true if the unit is in the tree and reachable from a root unit, false otherwise
+     */
+    private boolean isReachable( int nIndex )
+    {
+        return ( nIndex != CompactUnitTree.NONE ) && ( _tree.getLeft( nIndex ) != CompactUnitTree.NONE );
+    }
+
+    /**
+     * Check if a unit can be moved in the index under a parent, without building the index again
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @param nParent
+     *            the index of the new parent, or {@link CompactUnitTree#NONE}
+     * @return true if both units are reachable, the unit is not a root unit and the parent is not in its sub tree, false otherwise
+     */
+    private boolean isMovable( int nIndex, int nParent )
+    {
+        return isReachable( nIndex ) && isReachable( nParent ) && ( _tree.getParent( nIndex ) != CompactUnitTree.NONE ) && ( nParent != nIndex )
+                && !_tree.isAncestor( nIndex, nParent );
+    }
+
+    /**
+     * Get the sub unit of a parent after which a unit is linked, so that the sub units stay ordered by label
+     * 
+     * @param nParent
+     *            the index of the parent
+     * @param unit
+     *            the linked unit
+     * @param nIndexSkipped
+     *            the index of the linked unit if it is already a sub unit of the parent, or {@link CompactUnitTree#NONE}
+     * @return the index of the previous sibling, or {@link CompactUnitTree#NONE} if the unit is the first sub unit
+     */
+    private int getPreviousSibling( int nParent, Unit unit, int nIndexSkipped )
+    {
+        int nPrevious = CompactUnitTree.NONE;
+
+        for ( int nChild = _tree.getFirstChild( nParent ); nChild != CompactUnitTree.NONE; nChild = _tree.getNextSibling( nChild ) )
+        {
+            if ( nChild != nIndexSkipped )
+            {
+                if ( compareLabels( unit, _units [nChild] ) < 0 )
+                {
+                    break;
+                }
+
+                nPrevious = nChild;
+            }
+        }
+
+        return nPrevious;
+    }
+
+    /**
+     * Copy the units by index with one unit replaced
+     * 
+     * @param nIndex
+     *            the index of the replaced unit
+     * @param unit
+     *            the new unit
+     * @return the new array
+     */
+    private Unit [ ] replace( int nIndex, Unit unit )
+    {
+        Unit [ ] units = _units.clone( );
+        units [nIndex] = unit;
+
+        return units;
+    }
+
+    /**
+     * Copy a list of units with the unit of the same id replaced, at the same position
+     * 
+     * @param listUnits
+     *            the units
+     * @param unit
+     *            the new unit
+     * @return the new list
+     */
+    private static List<Unit> replace( List<Unit> listUnits, Unit unit )
+    {
+        List<Unit> listReplaced = new ArrayList<>( listUnits.size( ) );
+
+        for ( Unit unitCurrent : listUnits )
+        {
+            listReplaced.add( ( unitCurrent.getIdUnit( ) == unit.getIdUnit( ) ) ? unit : unitCurrent );
+        }
+
+        return listReplaced;
+    }
+
+    /**
+     * Check if two units have the same data
+     * 
+     * @param unit1
+     *            the first unit
+     * @param unit2
+     *            the second unit
+     * @return true if the units have the same data, false otherwise
+     */
+    private static boolean isSame( Unit unit1, Unit unit2 )
+    {
+        return ( unit1.getIdUnit( ) == unit2.getIdUnit( ) ) && ( unit1.getIdParent( ) == unit2.getIdParent( ) )
+                && Objects.equals( unit1.getCode( ), unit2.getCode( ) ) && Objects.equals( unit1.getLabel( ), unit2.getLabel( ) )
+                && Objects.equals( unit1.getDescription( ), unit2.getDescription( ) );
+    }
+
+    /**
+     * Compare the labels of two units the way the database sorts them, ignoring the case
+     * 
+     * @param unit1
+     *            the first unit
+     * @param unit2
+     *            the second unit
+     * @return the result of the comparison
+     */
+    private static int compareLabels( Unit unit1, Unit unit2 )
+    {
+        return StringUtils.compareIgnoreCase( unit1.getLabel( ), unit2.getLabel( ) );
+    }
+
+    /**
+     * Copy a list of units
+     * 
+     * @param listUnits
+     *            the units to copy
+     * @return the copies
+     */
+    private static List<Unit> copy( List<Unit> listUnits )
+    {
+        List<Unit> listCopies = new ArrayList<>( listUnits.size( ) );
+
+        for ( Unit unit : listUnits )
+        {
+            listCopies.add( copy( unit ) );
+        }
+
+        return listCopies;
+    }
+
+    /**
+     * Copy a unit, without its additional attributes
+     * 
+     * @param unit
+     *            the unit to copy
+     * @return the copy
+     */
+    private static Unit copy( Unit unit )
+    {
+        Unit copy = new Unit( );
+        copy.setIdUnit( unit.getIdUnit( ) );
+        copy.setIdParent( unit.getIdParent( ) );
+        copy.setCode( unit.getCode( ) );
+        copy.setLabel( unit.getLabel( ) );
+        copy.setDescription( unit.getDescription( ) );
+
+        return copy;
+    }
+}
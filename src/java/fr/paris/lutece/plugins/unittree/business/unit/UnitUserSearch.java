@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.portal.business.user.AdminUserFilter;
+
+/**
+ *
+ * UnitUserSearch : the criteria of a search of the users assigned to a unit
+ *
+ */
+public class UnitUserSearch
+{
+    /** No restriction on the level of the users */
+    public static final int LEVEL_NONE = -1;
+    private int _nIdUnit;
+    private boolean _bInDepthSearch;
+    private AdminUserFilter _adminUserFilter;
+    private int _nLevelAbove = LEVEL_NONE;
+    private String _strSortedAttributeName;
+    private boolean _bAscSort = true;
+
+    /**
+     * Get the id unit
+     * 
+     * @return the id unit
+     */
+    public int getIdUnit( )
+    {
+        return _nIdUnit;
+    }
+
+    /**
+     * Set the id unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     */
+    public void setIdUnit( int nIdUnit )
+    {
+        _nIdUnit = nIdUnit;
+    }
+
+    /**
+     * Check if the users of the sub units are searched too
+     * 
+     * @return true if the users of the sub units are searched too, false otherwise
+     */
+    public boolean isInDepthSearch( )
+    {
+        return _bInDepthSearch;
+    }
+
+    /**
+     * Set if the users of the sub units are searched too
+     * 
+     * @param bInDepthSearch
+     *            true if the users of the sub units are searched too, false otherwise
+     */
+    public void setInDepthSearch( boolean bInDepthSearch )
+    {
+        _bInDepthSearch = bInDepthSearch;
+    }
+
+    /**
+     * Get the filter on the users
+     * 
+     * @return the filter on the users, or null if there is none
+     */
+    public AdminUserFilter getAdminUserFilter( )
+    {
+        return _adminUserFilter;
+    }
+
+    /**
+     * Set the filter on the users
+     * 
+     * @param adminUserFilter
+     *            the filter on the users
+     */
+    public void setAdminUserFilter( AdminUserFilter adminUserFilter )
+    {
+        _adminUserFilter = adminUserFilter;
+    }
+
+    /**
+     * Get the level the users must be strictly above, that is the level of the user searching for the users he is parent of
+     * 
+     * @return the level, or {@link #LEVEL_NONE}
+     */
+    public int getLevelAbove( )
+    {
+        return _nLevelAbove;
+    }
+
+    /**
+     * Set the level the users must be strictly above
+     * 
+     * @param nLevelAbove
+     *            the level, or {@link #LEVEL_NONE}
+     */
+    public void setLevelAbove( int nLevelAbove )
+    {
+        _nLevelAbove = nLevelAbove;
+    }
+
+    /**
+     * Get the name of the attribute of the users to sort them on
+     * 
+     * @return the name of the attribute (firstName, lastName, accessCode or email), or null for the default order
+     */
+    public String getSortedAttributeName( )
+    {
+        return _strSortedAttributeName;
+    }
+
+    /**
+     * Set the name of the attribute of the users to sort them on
+     * 
+     * @param strSortedAttributeName
+     *            the name of the attribute
+     */
+    public void setSortedAttributeName( String strSortedAttributeName )
+    {
+        _strSortedAttributeName = strSortedAttributeName;
+    }
+
+    /**
+     * Check if it is an asc sort
+     * 
+     * @return true if it is an asc sort, false otherwise
+     */
+    public boolean isAscSort( )
+    {
+        return _bAscSort;
+    }
+
+    /**
+     * Set if it is an asc sort
+     * 
+     * @param bAscSort
+     *            true if it is an asc sort, false otherwise
+     */
+    public void setAscSort( boolean bAscSort )
+    {
+        _bAscSort = bAscSort;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.workgroup;
+
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * WorkgroupMembershipDAO : reads the workgroups of the admin users from the core tables
+ *
+ */
+public class WorkgroupMembershipDAO implements IWorkgroupMembershipDAO
+{
+    public static final String BEAN_NAME = "unittree.workgroupMembershipDAO";
+    private static final String SQL_QUERY_SELECT_ALL = " SELECT workgroup_key, id_user FROM core_admin_workgroup_user ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WorkgroupMembershipSnapshot selectSnapshot( )
+    {
+        Map<String, Integer> mapWorkgroupIndexes = new HashMap<>( );
+        Map<Integer, BitSet> mapUserWorkgroups = new HashMap<>( );
+
+        // The table belongs to the core : the query runs on the connection pool of the core
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ALL ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                Integer nIndex = mapWorkgroupIndexes.computeIfAbsent( daoUtil.getString( 1 ), strKey -> mapWorkgroupIndexes.size( ) );
+                mapUserWorkgroups.computeIfAbsent( daoUtil.getInt( 2 ), nIdUser -> new BitSet( ) ).set( nIndex );
+            }
+        }
+
+        return new WorkgroupMembershipSnapshot( mapWorkgroupIndexes, mapUserWorkgroups, System.currentTimeMillis( ) );
+    }
+}
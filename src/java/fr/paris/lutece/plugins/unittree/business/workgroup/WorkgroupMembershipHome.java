@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.workgroup;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * This class provides the snapshot of the workgroups of the admin users. The workgroups are managed by the core, which does not notify their
+ * modifications : the snapshot is loaded again once it is older than the configured time to live, or when {@link #refresh()} is called.
+ */
+public final class WorkgroupMembershipHome
+{
+    private static final String PROPERTY_TIME_TO_LIVE = "unittree.workgroupMembership.timeToLive";
+    private static final int DEFAULT_TIME_TO_LIVE = 60;
+
+    // Static variable pointed at the DAO instance
+    private static IWorkgroupMembershipDAO _dao = SpringContextService.getBean( WorkgroupMembershipDAO.BEAN_NAME );
+    private static volatile WorkgroupMembershipSnapshot _snapshot;
+
+    /**
+     * Private constructor
+     */
+    private WorkgroupMembershipHome( )
+    {
+    }
+
+    /**
+     * Get the current snapshot of the workgroups of the admin users
+     * 
+     * @return the snapshot
+     */
+    public static WorkgroupMembershipSnapshot getSnapshot( )
+    {
+        WorkgroupMembershipSnapshot snapshot = _snapshot;
+        long lTimeToLive = AppPropertiesService.getPropertyInt( PROPERTY_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE ) * 1000L;
+
+        if ( ( snapshot == null ) || ( System.currentTimeMillis( ) - snapshot.getLoadTime( ) >= lTimeToLive ) )
+        {
+            // Concurrent loads are harmless : the last one wins
+            snapshot = _dao.selectSnapshot( );
+            _snapshot = snapshot;
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Drop the current snapshot, so that it is loaded again on the next access
+     */
+    public static void refresh( )
+    {
+        _snapshot = null;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.workgroup;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ *
+ * Immutable snapshot of the workgroups of the admin users. Each workgroup has a dense index, and each user has the set of the indexes of its
+ * workgroups, so that checking if two users share a workgroup is a bitset intersection.
+ *
+ */
+public final class WorkgroupMembershipSnapshot
+{
+    private static final BitSet EMPTY = new BitSet( );
+    private final Map<String, Integer> _mapWorkgroupIndexes;
+    private final Map<Integer, BitSet> _mapUserWorkgroups;
+    private final long _lLoadTime;
+
+    /**
+     * Constructor
+     * 
+     * @param mapWorkgroupIndexes
+     *            the index of each workgroup, by workgroup key
+     * @param mapUserWorkgroups
+     *            the indexes of the workgroups of each user, by id user. The sets must not be modified afterwards.
+     * @param lLoadTime
+     *            the time the snapshot has been loaded, in milliseconds
+     */
+    public WorkgroupMembershipSnapshot( Map<String, Integer> mapWorkgroupIndexes, Map<Integer, BitSet> mapUserWorkgroups, long lLoadTime )
+    {
+        _mapWorkgroupIndexes = Collections.unmodifiableMap( mapWorkgroupIndexes );
+        _mapUserWorkgroups = Collections.unmodifiableMap( mapUserWorkgroups );
+        _lLoadTime = lLoadTime;
+    }
+
+    /**
+     * Get the time the snapshot has been loaded
+     * 
+     * @return the time, in milliseconds
+     */
+    public long getLoadTime( )
+    {
+        return _lLoadTime;
+    }
+
+    /**
+     * Get the number of workgroups having at least one user
+     * 
+     * @return the number of workgroups
+     */
+    public int getWorkgroupsCount( )
+    {
+        return _mapWorkgroupIndexes.size( );
+    }
+
+    /**
+     * Check if a user belongs to at least one workgroup
+     * 
+     * @param nIdUser
+     *            the id user
+     * @return true if the user belongs to a workgroup, false otherwise
+     */
+    public boolean hasWorkgroup( int nIdUser )
+    {
+        return !getUserWorkgroups( nIdUser ).isEmpty( );
+    }
+
+    /**
+     * Check if a user belongs to a workgroup
+     * 
+     * @param nIdUser
+     *            the id user
+     * @param strWorkgroupKey
+     *            the workgroup key
+     * @return true if the user belongs to the workgroup, false otherwise
+     */
+    public boolean isUserInWorkgroup( int nIdUser, String strWorkgroupKey )
+    {
+        Integer nIndex = _mapWorkgroupIndexes.get( strWorkgroupKey );
+
+        return ( nIndex != null ) && getUserWorkgroups( nIdUser ).get( nIndex );
+    }
+
+    /**
+     * Check if two users belong to a common workgroup
+     * 
+     * @param nIdUser1
+     *            the id of the first user
+     * @param nIdUser2
+     *            the id of the second user
+     * @return true if the users have a workgroup in common, false otherwise
+     */
+    public boolean haveCommonWorkgroups( int nIdUser1, int nIdUser2 )
+    {
+        return getUserWorkgroups( nIdUser1 ).intersects( getUserWorkgroups( nIdUser2 ) );
+    }
+
+    /**
+     * Get the workgroups of a user
+     * 
+     * @param nIdUser
+     *            the id user
+     * @return the indexes of the workgroups, which must not be modified
+     */
+    private BitSet getUserWorkgroups( int nIdUser )
+    {
+        BitSet workgroups = _mapUserWorkgroups.get( nIdUser );
+
+        return ( workgroups != null ) ? workgroups : EMPTY;
+    }
+}
@@ -33,7 +33,9 @@
  */
 package fr.paris.lutece.plugins.unittree.service;
 
+import fr.paris.lutece.plugins.unittree.business.unit.UnitHome;
 import fr.paris.lutece.portal.service.plugin.PluginDefaultImplementation;
+import fr.paris.lutece.portal.service.util.AppLogService;
 
 /**
  *
@@ -43,4 +45,25 @@ import fr.paris.lutece.portal.service.plugin.PluginDefaultImplementation;
 public class UnitTreePlugin extends PluginDefaultImplementation
 {
     public static final String PLUGIN_NAME = "unittree";
+
+    /**
+     * {@inheritDoc} The closure table and the materialized paths of the unit tree are completed, in case the upgrade script only created them.
+     */
+    @Override
+    public void init( )
+    {
+        int nInsertedRows = UnitHome.completeClosure( );
+
+        if ( nInsertedRows > 0 )
+        {
+            AppLogService.info( "Unit tree closure table completed with " + nInsertedRows + " rows" );
+        }
+
+        int nUpdatedUnits = UnitHome.completePaths( );
+
+        if ( nUpdatedUnits > 0 )
+        {
+            AppLogService.info( "Unit tree paths completed for " + nUpdatedUnits + " units" );
+        }
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Reader of an import file in CSV, encoded in UTF-8. The first line is a header, then each line is a unit with the columns :
+ * <code>code;parent_code;label;description;users</code>, the users being the access codes of the users of the unit separated by commas. The fields
+ * containing a separator or a line break are enclosed in double quotes, a double quote inside such a field being doubled.
+ *
+ */
+public class CsvUnitImportReader implements IUnitImportReader
+{
+    private static final char SEPARATOR = ';';
+    private static final char QUOTE = '"';
+    private static final char LINE_FEED = '\n';
+    private static final char CARRIAGE_RETURN = '\r';
+    private static final String USERS_SEPARATOR = ",";
+    private static final int COLUMN_CODE = 0;
+    private static final int COLUMN_PARENT_CODE = 1;
+    private static final int COLUMN_LABEL = 2;
+    private static final int COLUMN_DESCRIPTION = 3;
+    private static final int COLUMN_USERS = 4;
+    private static final String MESSAGE_UNTERMINATED_QUOTE = "Unterminated quoted field after the record ";
+
+    private final BufferedReader _reader;
+    private int _nRecordNumber;
+    private boolean _bHeaderRead;
+    private boolean _bEnd;
+
+    /**
+     * Constructor
+     * 
+     * @param inputStream
+     *            the CSV file
+     */
+    public CsvUnitImportReader( InputStream inputStream )
+    {
+        _reader = new BufferedReader( new InputStreamReader( inputStream, StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnitImportRecord read( ) throws IOException
+    {
+        if ( !_bHeaderRead )
+        {
+            _bHeaderRead = true;
+            readFields( );
+        }
+
+        List<String> listFields = readFields( );
+
+        // Blank lines are ignored
+        while ( ( listFields != null ) && ( listFields.size( ) == 1 ) && StringUtils.isBlank( listFields.get( 0 ) ) )
+        {
+            listFields = readFields( );
+        }
+
+        if ( listFields == null )
+        {
+            return null;
+        }
+
+        UnitImportRecord record = new UnitImportRecord( );
+        record.setRecordNumber( ++_nRecordNumber );
+        record.setCode( getField( listFields, COLUMN_CODE ) );
+        record.setParentCode( getField( listFields, COLUMN_PARENT_CODE ) );
+        record.setLabel( getField( listFields, COLUMN_LABEL ) );
+        record.setDescription( getField( listFields, COLUMN_DESCRIPTION ) );
+
+        for ( String strAccessCode : StringUtils.split( StringUtils.defaultString( getField( listFields, COLUMN_USERS ) ), USERS_SEPARATOR ) )
+        {
+            if ( StringUtils.isNotBlank( strAccessCode ) )
+            {
+                record.getUserAccessCodes( ).add( strAccessCode.trim( ) );
+            }
+        }
+
+        return record;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( ) throws IOException
+    {
+        _reader.close( );
+    }
+
+    /**
+     * Get a field of a line
+     * 
+     * @param listFields
+     *            the fields of the line
+     * @param nColumn
+     *            the index of the column
+     * @return the trimmed field, or null if the line does not have the column
+     */
+    private static String getField( List<String> listFields, int nColumn )
+    {
+        return ( nColumn < listFields.size( ) ) ? StringUtils.trim( listFields.get( nColumn ) ) : null;
+    }
+
+    /**
+     * Read the fields of the next line
+     * 
+     * @return the fields, or null at the end of the file
+     * @throws IOException
+     *             if the file cannot be read or if a quoted field is not terminated
+     */
+    private List<String> readFields( ) throws IOException
+    {
+        if ( _bEnd )
+        {
+            return null;
+        }
+
+        List<String> listFields = new ArrayList<>( );
+        StringBuilder sbField = new StringBuilder( );
+        boolean bQuoted = false;
+        boolean bRead = false;
+
+        while ( true )
+        {
+            int c = _reader.read( );
+
+            if ( bQuoted )
+            {
+                if ( c == -1 )
+                {
+                    throw new IOException( MESSAGE_UNTERMINATED_QUOTE + _nRecordNumber );
+                }
+
+                if ( c == QUOTE )
+                {
+                    _reader.mark( 1 );
+
+                    if ( _reader.read( ) == QUOTE )
+                    {
+                        sbField.append( QUOTE );
+                    }
+                    else
+                    {
+                        _reader.reset( );
+                        bQuoted = false;
+                    }
+                }
+                else
+                {
+                    sbField.append( (char) c );
+                }
+            }
+            else
+                if ( c == -1 )
+                {
+                    _bEnd = true;
+
+                    if ( !bRead )
+                    {
+                        return null;
+                    }
+
+                    listFields.add( sbField.toString( ) );
+
+                    return listFields;
+                }
+                else
+                {
+                    bRead = true;
+
+                    if ( c == LINE_FEED )
+                    {
+                        listFields.add( sbField.toString( ) );
+
+                        return listFields;
+                    }
+
+                    if ( c == SEPARATOR )
+                    {
+                        listFields.add( sbField.toString( ) );
+                        sbField.setLength( 0 );
+                    }
+                    else
+                        if ( ( c == QUOTE ) && ( sbField.length( ) == 0 ) )
+                        {
+                            bQuoted = true;
+                        }
+                        else
+                            if ( c != CARRIAGE_RETURN )
+                            {
+                                sbField.append( (char) c );
+                            }
+                }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Units and users read and written by an import. The units and the users described are those existing before the import : the written units and users
+ * are not added to them.
+ *
+ */
+interface IUnitImportStore
+{
+    /**
+     * Get the units existing before the import
+     * 
+     * @return the units
+     */
+    Collection<Unit> getUnits( );
+
+    /**
+     * Check if a unit existed before the import
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return true if the unit existed before the import, false otherwise
+     */
+    boolean containsUnit( int nIdUnit );
+
+    /**
+     * Get the path of a unit existing before the import
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return the path of the unit
+     */
+    String getPath( int nIdUnit );
+
+    /**
+     * Check if a user belonged to a unit before the import
+     * 
+     * @param nIdUser
+     *            the id user
+     * @return true if the user belonged to a unit, false otherwise
+     */
+    boolean hasUnit( int nIdUser );
+
+    /**
+     * Get the ids of the admin users by access code
+     * 
+     * @return the ids user by access code
+     */
+    Map<String, Integer> getIdsUserByAccessCode( );
+
+    /**
+     * Get a new id unit
+     * 
+     * @return the new id unit
+     */
+    int newPrimaryKey( );
+
+    /**
+     * Write a chunk of units and of users, in one transaction
+     * 
+     * @param listUnits
+     *            the units to create, each parent before its children
+     * @param mapPaths
+     *            the paths of the units by id unit, completed with the paths of the created units
+     * @param idsUnit
+     *            the ids unit of the users to add
+     * @param idsUser
+     *            the ids user of the users to add, in the same order as the ids unit
+     * @param nAssignments
+     *            the number of users to add
+     */
+    void write( List<Unit> listUnits, Map<Integer, String> mapPaths, int [ ] idsUnit, int [ ] idsUser, int nAssignments );
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ *
+ * Reader of an import file in JSON : an array of units, for instance
+ * <code>[ { "code" : "DSI", "parentCode" : "", "label" : "IT department", "description" : "", "users" : [ "jdoe", "asmith" ] } ]</code>. The units are
+ * parsed one by one from the stream.
+ *
+ */
+public class JsonUnitImportReader implements IUnitImportReader
+{
+    private static final String FIELD_CODE = "code";
+    private static final String FIELD_PARENT_CODE = "parentCode";
+    private static final String FIELD_LABEL = "label";
+    private static final String FIELD_DESCRIPTION = "description";
+    private static final String FIELD_USERS = "users";
+    private static final String MESSAGE_ARRAY_EXPECTED = "An array of units is expected";
+    private static final String MESSAGE_OBJECT_EXPECTED = "A unit object is expected";
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+
+    private final JsonParser _parser;
+    private int _nRecordNumber;
+
+    /**
+     * Constructor
+     * 
+     * @param inputStream
+     *            the JSON file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public JsonUnitImportReader( InputStream inputStream ) throws IOException
+    {
+        _parser = MAPPER.getFactory( ).createParser( inputStream );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnitImportRecord read( ) throws IOException
+    {
+        if ( ( _nRecordNumber == 0 ) && ( _parser.getCurrentToken( ) == null ) && ( _parser.nextToken( ) != JsonToken.START_ARRAY ) )
+        {
+            throw new JsonParseException( _parser, MESSAGE_ARRAY_EXPECTED );
+        }
+
+        JsonToken token = _parser.nextToken( );
+
+        if ( ( token == null ) || ( token == JsonToken.END_ARRAY ) )
+        {
+            return null;
+        }
+
+        if ( token != JsonToken.START_OBJECT )
+        {
+            throw new JsonParseException( _parser, MESSAGE_OBJECT_EXPECTED );
+        }
+
+        JsonNode node = MAPPER.readTree( _parser );
+
+        UnitImportRecord record = new UnitImportRecord( );
+        record.setRecordNumber( ++_nRecordNumber );
+        record.setCode( getText( node, FIELD_CODE ) );
+        record.setParentCode( getText( node, FIELD_PARENT_CODE ) );
+        record.setLabel( getText( node, FIELD_LABEL ) );
+        record.setDescription( getText( node, FIELD_DESCRIPTION ) );
+
+        JsonNode users = node.get( FIELD_USERS );
+
+        if ( ( users != null ) && users.isArray( ) )
+        {
+            for ( JsonNode user : users )
+            {
+                record.getUserAccessCodes( ).add( user.asText( ).trim( ) );
+            }
+        }
+
+        return record;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( ) throws IOException
+    {
+        _parser.close( );
+    }
+
+    /**
+     * Get the text of a field of a unit
+     * 
+     * @param node
+     *            the unit
+     * @param strField
+     *            the name of the field
+     * @return the trimmed text, or null if the field is missing
+     */
+    private static String getText( JsonNode node, String strField )
+    {
+        JsonNode field = node.get( strField );
+
+        return ( ( field != null ) && !field.isNull( ) ) ? field.asText( ).trim( ) : null;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * State of one import. A record is created as soon as its parent is known, the records whose parent comes later wait for it. The created units and users
+ * are written by chunks of units through the store.
+ *
+ */
+class UnitImport
+{
+    // MESSAGES
+    private static final String MESSAGE_ERROR_MISSING_FIELDS = "unittree.import.error.missingFields";
+    private static final String MESSAGE_ERROR_DUPLICATE_CODE = "unittree.import.error.duplicateCode";
+    private static final String MESSAGE_ERROR_PARENT_NOT_FOUND = "unittree.import.error.parentNotFound";
+    private static final String MESSAGE_ERROR_USER_NOT_FOUND = "unittree.import.error.userNotFound";
+    private static final String MESSAGE_ERROR_USER_ALREADY_IN_UNIT = "unittree.import.error.userAlreadyInUnit";
+
+    private static final int INITIAL_ASSIGNMENTS_CAPACITY = 256;
+
+    private final UnitImportResult _result;
+    private final boolean _bMultiAffectationEnabled;
+    private final int _nChunkSize;
+    private final IUnitImportStore _store;
+    private final Map<String, Integer> _mapIdsUnitByCode = new HashMap<>( );
+    private final Map<Integer, String> _mapPaths = new HashMap<>( );
+    private final Map<String, List<UnitImportRecord>> _mapPendingRecordsByParentCode = new HashMap<>( );
+    private final Set<Integer> _setAddedUsers = new HashSet<>( );
+    private Map<String, Integer> _mapIdsUserByAccessCode;
+    private final List<Unit> _listUnits = new ArrayList<>( );
+    private int [ ] _idsUnit = new int [ INITIAL_ASSIGNMENTS_CAPACITY];
+    private int [ ] _idsUser = new int [ INITIAL_ASSIGNMENTS_CAPACITY];
+    private int _nAssignments;
+    private int _nLastRecordNumber;
+
+    /**
+     * Constructor
+     * 
+     * @param result
+     *            the result to fill
+     * @param bMultiAffectationEnabled
+     *            true if a user can belong to several units, false otherwise
+     * @param nChunkSize
+     *            the number of units written in one transaction
+     * @param store
+     *            the store of the units and of the users
+     */
+    UnitImport( UnitImportResult result, boolean bMultiAffectationEnabled, int nChunkSize, IUnitImportStore store )
+    {
+        _result = result;
+        _bMultiAffectationEnabled = bMultiAffectationEnabled;
+        _nChunkSize = Math.max( 1, nChunkSize );
+        _store = store;
+
+        for ( Unit unit : _store.getUnits( ) )
+        {
+            _mapIdsUnitByCode.putIfAbsent( unit.getCode( ), unit.getIdUnit( ) );
+        }
+    }
+
+    /**
+     * Get the number of the last read record
+     * 
+     * @return the number of the last read record
+     */
+    int getLastRecordNumber( )
+    {
+        return _nLastRecordNumber;
+    }
+
+    /**
+     * Accept a record : the unit is created if its parent is known, then the records waiting for it are created in turn
+     * 
+     * @param record
+     *            the record
+     */
+    void accept( UnitImportRecord record )
+    {
+        _nLastRecordNumber = record.getRecordNumber( );
+
+        if ( StringUtils.isBlank( record.getCode( ) ) || StringUtils.isBlank( record.getLabel( ) ) )
+        {
+            _result.addError( new UnitImportError( record.getRecordNumber( ), MESSAGE_ERROR_MISSING_FIELDS ) );
+
+            return;
+        }
+
+        if ( getIdParent( record ) == null )
+        {
+            _mapPendingRecordsByParentCode.computeIfAbsent( record.getParentCode( ), strParentCode -> new ArrayList<>( ) ).add( record );
+
+            return;
+        }
+
+        Deque<UnitImportRecord> deque = new ArrayDeque<>( );
+        deque.push( record );
+
+        while ( !deque.isEmpty( ) )
+        {
+            UnitImportRecord current = deque.pop( );
+
+            if ( create( current ) )
+            {
+                List<UnitImportRecord> listWaitingRecords = _mapPendingRecordsByParentCode.remove( current.getCode( ) );
+
+                if ( listWaitingRecords != null )
+                {
+                    listWaitingRecords.forEach( deque::push );
+                }
+            }
+        }
+    }
+
+    /**
+     * Report the records whose parent has not been found
+     */
+    void reportPendingRecords( )
+    {
+        List<UnitImportRecord> listPendingRecords = new ArrayList<>( );
+        _mapPendingRecordsByParentCode.values( ).forEach( listPendingRecords::addAll );
+        listPendingRecords.sort( Comparator.comparingInt( UnitImportRecord::getRecordNumber ) );
+
+        for ( UnitImportRecord record : listPendingRecords )
+        {
+            _result.addError( new UnitImportError( record.getRecordNumber( ), MESSAGE_ERROR_PARENT_NOT_FOUND, record.getParentCode( ), record.getCode( ) ) );
+        }
+
+        _mapPendingRecordsByParentCode.clear( );
+    }
+
+    /**
+     * Write the units and the users of the current chunk
+     */
+    void flush( )
+    {
+        if ( _listUnits.isEmpty( ) && ( _nAssignments == 0 ) )
+        {
+            return;
+        }
+
+        _store.write( _listUnits, _mapPaths, _idsUnit, _idsUser, _nAssignments );
+
+        _result.addCreatedUnits( _listUnits.size( ) );
+        _result.addAddedUsers( _nAssignments );
+        _listUnits.clear( );
+        _nAssignments = 0;
+    }
+
+    /**
+     * Get the id of the parent of the unit of a record
+     * 
+     * @param record
+     *            the record
+     * @return the id of the parent, or null if the parent is not known yet
+     */
+    private Integer getIdParent( UnitImportRecord record )
+    {
+        return StringUtils.isBlank( record.getParentCode( ) ) ? Integer.valueOf( Unit.ID_ROOT ) : _mapIdsUnitByCode.get( record.getParentCode( ) );
+    }
+
+    /**
+     * Create the unit of a record, whose parent is known, and add its users
+     * 
+     * @param record
+     *            the record
+     * @return true if the unit has been created, false otherwise
+     */
+    private boolean create( UnitImportRecord record )
+    {
+        if ( _mapIdsUnitByCode.containsKey( record.getCode( ) ) )
+        {
+            _result.addError( new UnitImportError( record.getRecordNumber( ), MESSAGE_ERROR_DUPLICATE_CODE, record.getCode( ) ) );
+
+            return false;
+        }
+
+        int nIdParent = getIdParent( record );
+
+        // The paths of the existing parents are read once, those of the created units are kept by the writes
+        if ( _store.containsUnit( nIdParent ) && !_mapPaths.containsKey( nIdParent ) )
+        {
+            _mapPaths.put( nIdParent, _store.getPath( nIdParent ) );
+        }
+
+        Unit unit = new Unit( );
+        unit.setIdUnit( _store.newPrimaryKey( ) );
+        unit.setIdParent( nIdParent );
+        unit.setCode( record.getCode( ) );
+        unit.setLabel( record.getLabel( ) );
+        unit.setDescription( StringUtils.defaultString( record.getDescription( ) ) );
+        _mapIdsUnitByCode.put( unit.getCode( ), unit.getIdUnit( ) );
+        _listUnits.add( unit );
+
+        for ( String strAccessCode : new LinkedHashSet<>( record.getUserAccessCodes( ) ) )
+        {
+            addUser( record, unit.getIdUnit( ), strAccessCode );
+        }
+
+        if ( _listUnits.size( ) >= _nChunkSize )
+        {
+            flush( );
+        }
+
+        return true;
+    }
+
+    /**
+     * Add a user to the unit of a record
+     * 
+     * @param record
+     *            the record
+     * @param nIdUnit
+     *            the id of the created unit
+     * @param strAccessCode
+     *            the access code of the user
+     */
+    private void addUser( UnitImportRecord record, int nIdUnit, String strAccessCode )
+    {
+        Integer nIdUser = getIdsUserByAccessCode( ).get( strAccessCode );
+
+        if ( nIdUser == null )
+        {
+            _result.addError( new UnitImportError( record.getRecordNumber( ), MESSAGE_ERROR_USER_NOT_FOUND, strAccessCode, record.getCode( ) ) );
+
+            return;
+        }
+
+        if ( !_bMultiAffectationEnabled && ( _store.hasUnit( nIdUser ) || !_setAddedUsers.add( nIdUser ) ) )
+        {
+            _result.addError( new UnitImportError( record.getRecordNumber( ), MESSAGE_ERROR_USER_ALREADY_IN_UNIT, strAccessCode, record.getCode( ) ) );
+
+            return;
+        }
+
+        if ( _nAssignments == _idsUnit.length )
+        {
+            _idsUnit = Arrays.copyOf( _idsUnit, _nAssignments * 2 );
+            _idsUser = Arrays.copyOf( _idsUser, _nAssignments * 2 );
+        }
+
+        _idsUnit [_nAssignments] = nIdUnit;
+        _idsUser [_nAssignments++] = nIdUser;
+    }
+
+    /**
+     * Get the ids of the admin users by access code, loaded on the first call
+     * 
+     * @return the ids user by access code
+     */
+    private Map<String, Integer> getIdsUserByAccessCode( )
+    {
+        if ( _mapIdsUserByAccessCode == null )
+        {
+            _mapIdsUserByAccessCode = _store.getIdsUserByAccessCode( );
+        }
+
+        return _mapIdsUserByAccessCode;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+/**
+ *
+ * UnitImportError : an error on a record of an import file
+ *
+ */
+public class UnitImportError
+{
+    private final int _nRecordNumber;
+    private final String _strMessageKey;
+    private final Object [ ] _arguments;
+
+    /**
+     * Constructor
+     * 
+     * @param nRecordNumber
+     *            the number of the record, or 0 if the error is not related to a record
+     * @param strMessageKey
+     *            the i18n key of the message
+     * @param arguments
+     *            the arguments of the message
+     */
+    public UnitImportError( int nRecordNumber, String strMessageKey, Object... arguments )
+    {
+        _nRecordNumber = nRecordNumber;
+        _strMessageKey = strMessageKey;
+        _arguments = arguments;
+    }
+
+    /**
+     * Get the number of the record
+     * 
+     * @return the number of the record, or 0 if the error is not related to a record
+     */
+    public int getRecordNumber( )
+    {
+        return _nRecordNumber;
+    }
+
+    /**
+     * Get the i18n key of the message
+     * 
+     * @return the i18n key of the message
+     */
+    public String getMessageKey( )
+    {
+        return _strMessageKey;
+    }
+
+    /**
+     * Get the arguments of the message
+     * 
+     * @return the arguments of the message
+     */
+    public Object [ ] getArguments( )
+    {
+        return _arguments.clone( );
+    }
+}
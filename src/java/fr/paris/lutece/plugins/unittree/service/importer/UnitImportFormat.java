@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This enum represents the formats of the import files
+ *
+ */
+public enum UnitImportFormat
+{
+    /** CSV, read by {@link CsvUnitImportReader} */
+    CSV( "csv" )
+    {
+        @Override
+        public IUnitImportReader createReader( InputStream inputStream )
+        {
+            return new CsvUnitImportReader( inputStream );
+        }
+    },
+    /** JSON, read by {@link JsonUnitImportReader} */
+    JSON( "json" )
+    {
+        @Override
+        public IUnitImportReader createReader( InputStream inputStream ) throws IOException
+        {
+            return new JsonUnitImportReader( inputStream );
+        }
+    };
+
+    private static final String EXTENSION_SEPARATOR = ".";
+    private final String _strExtension;
+
+    /**
+     * Constructor
+     * 
+     * @param strExtension
+     *            the extension of the files of the format
+     */
+    UnitImportFormat( String strExtension )
+    {
+        _strExtension = strExtension;
+    }
+
+    /**
+     * Get the extension of the files of the format
+     * 
+     * @return the extension
+     */
+    public String getExtension( )
+    {
+        return _strExtension;
+    }
+
+    /**
+     * Create a reader of a file of the format
+     * 
+     * @param inputStream
+     *            the file
+     * @return the reader
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public abstract IUnitImportReader createReader( InputStream inputStream ) throws IOException;
+
+    /**
+     * Get the format of a file from its extension
+     * 
+     * @param strFileName
+     *            the name of the file
+     * @return the format, or null if the extension is not known
+     */
+    public static UnitImportFormat fromFileName( String strFileName )
+    {
+        String strExtension = StringUtils.substringAfterLast( strFileName, EXTENSION_SEPARATOR );
+
+        for ( UnitImportFormat format : values( ) )
+        {
+            if ( format.getExtension( ).equalsIgnoreCase( strExtension ) )
+            {
+                return format;
+            }
+        }
+
+        return null;
+    }
+}
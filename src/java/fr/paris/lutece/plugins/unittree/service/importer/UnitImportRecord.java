@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * UnitImportRecord : a unit read from an import file, with the access codes of its users
+ *
+ */
+public class UnitImportRecord
+{
+    private int _nRecordNumber;
+    private String _strCode;
+    private String _strParentCode;
+    private String _strLabel;
+    private String _strDescription;
+    private List<String> _listUserAccessCodes = new ArrayList<>( );
+
+    /**
+     * Get the number of the record in the file, starting from 1
+     * 
+     * @return the record number
+     */
+    public int getRecordNumber( )
+    {
+        return _nRecordNumber;
+    }
+
+    /**
+     * Set the number of the record in the file
+     * 
+     * @param nRecordNumber
+     *            the record number
+     */
+    public void setRecordNumber( int nRecordNumber )
+    {
+        _nRecordNumber = nRecordNumber;
+    }
+
+    /**
+     * Get the code of the unit
+     * 
+     * @return the code
+     */
+    public String getCode( )
+    {
+        return _strCode;
+    }
+
+    /**
+     * Set the code of the unit
+     * 
+     * @param strCode
+     *            the code
+     */
+    public void setCode( String strCode )
+    {
+        _strCode = strCode;
+    }
+
+    /**
+     * Get the code of the parent unit
+     * 
+     * @return the code of the parent unit, or a blank string for a unit of the first level
+     */
+    public String getParentCode( )
+    {
+        return _strParentCode;
+    }
+
+    /**
+     * Set the code of the parent unit
+     * 
+     * @param strParentCode
+     *            the code of the parent unit
+     */
+    public void setParentCode( String strParentCode )
+    {
+        _strParentCode = strParentCode;
+    }
+
+    /**
+     * Get the label of the unit
+     * 
+     * @return the label
+     */
+    public String getLabel( )
+    {
+        return _strLabel;
+    }
+
+    /**
+     * Set the label of the unit
+     * 
+     * @param strLabel
+     *            the label
+     */
+    public void setLabel( String strLabel )
+    {
+        _strLabel = strLabel;
+    }
+
+    /**
+     * Get the description of the unit
+     * 
+     * @return the description
+     */
+    public String getDescription( )
+    {
+        return _strDescription;
+    }
+
+    /**
+     * Set the description of the unit
+     * 
+     * @param strDescription
+     *            the description
+     */
+    public void setDescription( String strDescription )
+    {
+        _strDescription = strDescription;
+    }
+
+    /**
+     * Get the access codes of the users of the unit
+     * 
+     * @return the access codes
+     */
+    public List<String> getUserAccessCodes( )
+    {
+        return _listUserAccessCodes;
+    }
+
+    /**
+     * Set the access codes of the users of the unit
+     * 
+     * @param listUserAccessCodes
+     *            the access codes
+     */
+    public void setUserAccessCodes( List<String> listUserAccessCodes )
+    {
+        _listUserAccessCodes = listUserAccessCodes;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * UnitImportResult : the counters and the errors of an import
+ *
+ */
+public class UnitImportResult
+{
+    /** Maximum number of errors kept in the result : the following errors are only counted */
+    public static final int MAX_ERRORS = 100;
+    private int _nCreatedUnitsCount;
+    private int _nAddedUsersCount;
+    private int _nErrorsCount;
+    private boolean _bAborted;
+    private final List<UnitImportError> _listErrors = new ArrayList<>( );
+
+    /**
+     * Get the number of created units
+     * 
+     * @return the number of created units
+     */
+    public int getCreatedUnitsCount( )
+    {
+        return _nCreatedUnitsCount;
+    }
+
+    /**
+     * Add created units
+     * 
+     * @param nCount
+     *            the number of created units
+     */
+    public void addCreatedUnits( int nCount )
+    {
+        _nCreatedUnitsCount += nCount;
+    }
+
+    /**
+     * Get the number of users added to the units
+     * 
+     * @return the number of users added to the units
+     */
+    public int getAddedUsersCount( )
+    {
+        return _nAddedUsersCount;
+    }
+
+    /**
+     * Add users added to the units
+     * 
+     * @param nCount
+     *            the number of users added to the units
+     */
+    public void addAddedUsers( int nCount )
+    {
+        _nAddedUsersCount += nCount;
+    }
+
+    /**
+     * Check if the import has been stopped before the end of the file
+     * 
+     * @return true if the import has been stopped, false otherwise
+     */
+    public boolean isAborted( )
+    {
+        return _bAborted;
+    }
+
+    /**
+     * Set if the import has been stopped before the end of the file
+     * 
+     * @param bAborted
+     *            true if the import has been stopped, false otherwise
+     */
+    public void setAborted( boolean bAborted )
+    {
+        _bAborted = bAborted;
+    }
+
+    /**
+     * Get the number of errors, including the errors which are not kept
+     * 
+     * @return the number of errors
+     */
+    public int getErrorsCount( )
+    {
+        return _nErrorsCount;
+    }
+
+    /**
+     * Get the first {@link #MAX_ERRORS} errors
+     * 
+     * @return the errors
+     */
+    public List<UnitImportError> getErrors( )
+    {
+        return Collections.unmodifiableList( _listErrors );
+    }
+
+    /**
+     * Add an error
+     * 
+     * @param error
+     *            the error
+     */
+    public void addError( UnitImportError error )
+    {
+        if ( _nErrorsCount++ < MAX_ERRORS )
+        {
+            _listErrors.add( error );
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitHome;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitMembershipIndex;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitTreeSnapshot;
+import fr.paris.lutece.plugins.unittree.service.unit.IUnitUserService;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.business.user.AdminUserHome;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+/**
+ *
+ * Import of a tree of units. The records are read one by one and a record is written as soon as its parent is known, so that a file listing the parents
+ * first is imported without keeping its records in memory. The records whose parent comes later in the file wait for it. The units and the users are
+ * inserted with JDBC batches, one transaction per chunk of units, and the caches of the unit tree are refreshed once at the end.
+ *
+ */
+public class UnitImportService implements IUnitImportService
+{
+    public static final String BEAN_NAME = "unittree.unitImportService";
+
+    // PROPERTIES
+    private static final String PROPERTY_CHUNK_SIZE = "unittree.import.chunkSize";
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
+    // MESSAGES
+    private static final String MESSAGE_ERROR_ABORTED = "unittree.import.error.aborted";
+
+    private static final String BEAN_TRANSACTION_MANAGER = "unittree.transactionManager";
+
+    @Inject
+    private IUnitUserService _unitUserService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnitImportResult importUnits( InputStream inputStream, UnitImportFormat format )
+    {
+        IUnitImportReader reader;
+
+        try
+        {
+            reader = format.createReader( inputStream );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to read the units to import : " + e.getMessage( ), e );
+
+            UnitImportResult result = new UnitImportResult( );
+            result.setAborted( true );
+            result.addError( new UnitImportError( 0, MESSAGE_ERROR_ABORTED, e.getMessage( ) ) );
+
+            return result;
+        }
+
+        try
+        {
+            return importUnits( reader );
+        }
+        finally
+        {
+            try
+            {
+                reader.close( );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Unable to close the file of the units to import : " + e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnitImportResult importUnits( IUnitImportReader reader )
+    {
+        UnitImportResult result = new UnitImportResult( );
+        int nChunkSize = AppPropertiesService.getPropertyInt( PROPERTY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE );
+        UnitImport unitImport = new UnitImport( result, _unitUserService.isMultiAffectationEnabled( ), nChunkSize, new UnitHomeImportStore( ) );
+
+        try
+        {
+            UnitImportRecord record = reader.read( );
+
+            while ( record != null )
+            {
+                unitImport.accept( record );
+                record = reader.read( );
+            }
+
+            unitImport.flush( );
+            unitImport.reportPendingRecords( );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            AppLogService.error( "Import of the units stopped after the record " + unitImport.getLastRecordNumber( ) + " : " + e.getMessage( ), e );
+            result.setAborted( true );
+            result.addError( new UnitImportError( unitImport.getLastRecordNumber( ), MESSAGE_ERROR_ABORTED, e.getMessage( ) ) );
+        }
+        finally
+        {
+            // The batches do not patch the caches : they are reloaded once for the whole import
+            UnitHome.refreshTreeSnapshot( );
+            UnitHome.refreshMembershipIndex( );
+        }
+
+        return result;
+    }
+
+    /**
+     * Store of an import writing through the unit home, one transaction per chunk. The snapshot and the index are not patched by the batches : they keep
+     * describing the units and the users existing before the import
+     */
+    private static final class UnitHomeImportStore implements IUnitImportStore
+    {
+        private final TransactionTemplate _transactionTemplate;
+        private final UnitTreeSnapshot _snapshot;
+        private final UnitMembershipIndex _membershipIndex;
+
+        /**
+         * Constructor
+         */
+        UnitHomeImportStore( )
+        {
+            PlatformTransactionManager transactionManager = SpringContextService.getBean( BEAN_TRANSACTION_MANAGER );
+            _transactionTemplate = new TransactionTemplate( transactionManager );
+            _snapshot = UnitHome.getTreeSnapshot( );
+            _membershipIndex = UnitHome.getMembershipIndex( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Collection<Unit> getUnits( )
+        {
+            return _snapshot.getUnits( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsUnit( int nIdUnit )
+        {
+            return _snapshot.contains( nIdUnit );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getPath( int nIdUnit )
+        {
+            return UnitHome.getPath( nIdUnit );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasUnit( int nIdUser )
+        {
+            return _membershipIndex.hasUnit( nIdUser );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Map<String, Integer> getIdsUserByAccessCode( )
+        {
+            Map<String, Integer> mapIdsUserByAccessCode = new HashMap<>( );
+
+            for ( AdminUser user : AdminUserHome.findUserList( ) )
+            {
+                mapIdsUserByAccessCode.put( user.getAccessCode( ), user.getUserId( ) );
+            }
+
+            return mapIdsUserByAccessCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int newPrimaryKey( )
+        {
+            return UnitHome.newPrimaryKey( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write( List<Unit> listUnits, Map<Integer, String> mapPaths, int [ ] idsUnit, int [ ] idsUser, int nAssignments )
+        {
+            _transactionTemplate.execute( status -> {
+                UnitHome.createBatch( listUnits, mapPaths );
+                UnitHome.addUsersToUnits( idsUnit, idsUser, nAssignments );
+
+                return null;
+            } );
+        }
+    }
+}
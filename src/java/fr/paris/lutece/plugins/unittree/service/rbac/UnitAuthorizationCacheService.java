@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.rbac;
+
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.TreeSet;
+
+/**
+ *
+ * Cache of the authorization decisions on the units. A decision only depends on the roles of the user, so the key is made of the sorted roles of the
+ * user, the unit, the permission, the recursive type and the version of the unit tree : a modification of the tree makes all the previous decisions
+ * unreachable. Since the RBAC service does not notify the changes of the role permissions, the key also holds a time slot, so that a decision is never
+ * used after the configured time to live. The size of the cache and its eviction are those of the Lutece cache configuration.
+ *
+ */
+public final class UnitAuthorizationCacheService extends AbstractCacheableService
+{
+    private static final String SERVICE_NAME = "Unittree Authorization Cache Service";
+    private static final String PROPERTY_TIME_TO_LIVE = "unittree.authorizationCache.timeToLive";
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+    private static final String KEY_SEPARATOR = ":";
+    private static final String ROLE_SEPARATOR = ",";
+    private static UnitAuthorizationCacheService _singleton = new UnitAuthorizationCacheService( );
+    private final long _lTimeToLive;
+
+    /**
+     * Private constructor
+     */
+    private UnitAuthorizationCacheService( )
+    {
+        _lTimeToLive = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE ) ) * 1000L;
+        initCache( );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance of the service
+     */
+    public static UnitAuthorizationCacheService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    /**
+     * Get a cached authorization decision
+     * 
+     * @param user
+     *            the user
+     * @param nIdUnit
+     *            the id unit
+     * @param strPermission
+     *            the permission
+     * @param recursiveType
+     *            the recursive type
+     * @param lTreeVersion
+     *            the version of the unit tree
+     * @return the decision, or null if it is not in the cache
+     */
+    public Boolean getDecision( AdminUser user, int nIdUnit, String strPermission, UnittreeRBACRecursiveType recursiveType, long lTreeVersion )
+    {
+        if ( !isCacheEnable( ) )
+        {
+            return null;
+        }
+
+        return (Boolean) getFromCache( getKey( user, nIdUnit, strPermission, recursiveType, lTreeVersion ) );
+    }
+
+    /**
+     * Put an authorization decision in the cache
+     * 
+     * @param user
+     *            the user
+     * @param nIdUnit
+     *            the id unit
+     * @param strPermission
+     *            the permission
+     * @param recursiveType
+     *            the recursive type
+     * @param lTreeVersion
+     *            the version of the unit tree
+     * @param bAuthorized
+     *            the decision
+     */
+    public void putDecision( AdminUser user, int nIdUnit, String strPermission, UnittreeRBACRecursiveType recursiveType, long lTreeVersion,
+            boolean bAuthorized )
+    {
+        if ( isCacheEnable( ) )
+        {
+            putInCache( getKey( user, nIdUnit, strPermission, recursiveType, lTreeVersion ), bAuthorized );
+        }
+    }
+
+    /**
+     * Build the key of a decision
+     * 
+     * @param user
+     *            the user
+     * @param nIdUnit
+     *            the id unit
+     * @param strPermission
+     *            the permission
+     * @param recursiveType
+     *            the recursive type
+     * @param lTreeVersion
+     *            the version of the unit tree
+     * @return the key
+     */
+    private String getKey( AdminUser user, int nIdUnit, String strPermission, UnittreeRBACRecursiveType recursiveType, long lTreeVersion )
+    {
+        StringBuilder sbKey = new StringBuilder( getRolesFingerprint( user ) );
+        sbKey.append( KEY_SEPARATOR ).append( nIdUnit );
+        sbKey.append( KEY_SEPARATOR ).append( strPermission );
+        sbKey.append( KEY_SEPARATOR ).append( recursiveType.name( ) );
+        sbKey.append( KEY_SEPARATOR ).append( lTreeVersion );
+        sbKey.append( KEY_SEPARATOR ).append( System.currentTimeMillis( ) / _lTimeToLive );
+
+        return sbKey.toString( );
+    }
+
+    /**
+     * Get a fingerprint of the roles of a user : two users have the same fingerprint if and only if they have the same roles
+     * 
+     * @param user
+     *            the user
+     * @return the fingerprint of the roles of the user
+     */
+    static String getRolesFingerprint( AdminUser user )
+    {
+        StringBuilder sbFingerprint = new StringBuilder( );
+
+        for ( String strRole : new TreeSet<>( user.getRoles( ).keySet( ) ) )
+        {
+            sbFingerprint.append( strRole ).append( ROLE_SEPARATOR );
+        }
+
+        return sbFingerprint.toString( );
+    }
+}
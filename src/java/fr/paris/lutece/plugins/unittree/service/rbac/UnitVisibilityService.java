@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.rbac;
+
+import fr.paris.lutece.api.user.User;
+import fr.paris.lutece.plugins.unittree.business.unit.CompactUnitTree;
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitTreeSnapshot;
+import fr.paris.lutece.plugins.unittree.service.unit.UnitResourceIdService;
+import fr.paris.lutece.plugins.unittree.service.unit.UnitVisibility;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.rbac.RBACService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.BitSet;
+
+/**
+ *
+ * Service computing the units the users may see. The visibility only depends on the roles of the user, so it is computed once per set of roles and per
+ * version of the unit tree, then shared by all the users having the same roles. As for the authorization decisions, the key holds a time slot so that
+ * a modification of the role permissions is taken into account after the configured time to live.
+ *
+ */
+public final class UnitVisibilityService extends AbstractCacheableService
+{
+    private static final String SERVICE_NAME = "Unittree Visibility Cache Service";
+    private static final String PROPERTY_TIME_TO_LIVE = "unittree.visibilityCache.timeToLive";
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+    private static final String KEY_SEPARATOR = ":";
+    private static UnitVisibilityService _singleton = new UnitVisibilityService( );
+    private final long _lTimeToLive;
+
+    /**
+     * Private constructor
+     */
+    private UnitVisibilityService( )
+    {
+        _lTimeToLive = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE ) ) * 1000L;
+        initCache( );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance of the service
+     */
+    public static UnitVisibilityService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    /**
+     * Get the units a user may see
+     * 
+     * @param user
+     *            the user
+     * @param snapshot
+     *            the snapshot of the unit tree
+     * @return the visibility of the units for the user
+     */
+    public UnitVisibility getVisibility( AdminUser user, UnitTreeSnapshot snapshot )
+    {
+        CompactUnitTree tree = snapshot.getTree( );
+
+        if ( user.isAdmin( ) )
+        {
+            // Admins see everything : no need to check each unit
+            BitSet visibleUnits = new BitSet( tree.size( ) );
+            visibleUnits.set( 0, tree.size( ) );
+
+            return new UnitVisibility( tree, snapshot.getVersion( ), visibleUnits );
+        }
+
+        String strKey = null;
+
+        if ( isCacheEnable( ) )
+        {
+            strKey = getKey( user, snapshot.getVersion( ) );
+
+            UnitVisibility visibility = (UnitVisibility) getFromCache( strKey );
+
+            if ( visibility != null )
+            {
+                return visibility;
+            }
+        }
+
+        UnitVisibility visibility = computeVisibility( user, snapshot );
+
+        if ( strKey != null )
+        {
+            putInCache( strKey, visibility );
+        }
+
+        return visibility;
+    }
+
+    /**
+     * Compute the units a user may see
+     * 
+     * @param user
+     *            the user
+     * @param snapshot
+     *            the snapshot of the unit tree
+     * @return the visibility of the units for the user
+     */
+    private UnitVisibility computeVisibility( AdminUser user, UnitTreeSnapshot snapshot )
+    {
+        CompactUnitTree tree = snapshot.getTree( );
+        BitSet visibleUnits = new BitSet( tree.size( ) );
+
+        for ( int nIndex = 0; nIndex < tree.size( ); nIndex++ )
+        {
+            if ( RBACService.isAuthorized( Unit.RESOURCE_TYPE, String.valueOf( tree.getIdUnit( nIndex ) ), UnitResourceIdService.PERMISSION_SEE_UNIT,
+                    (User) user ) )
+            {
+                visibleUnits.set( nIndex );
+            }
+        }
+
+        return new UnitVisibility( tree, snapshot.getVersion( ), visibleUnits );
+    }
+
+    /**
+     * Build the key of a visibility
+     * 
+     * @param user
+     *            the user
+     * @param lTreeVersion
+     *            the version of the unit tree
+     * @return the key
+     */
+    private String getKey( AdminUser user, long lTreeVersion )
+    {
+        StringBuilder sbKey = new StringBuilder( UnitAuthorizationCacheService.getRolesFingerprint( user ) );
+        sbKey.append( KEY_SEPARATOR ).append( lTreeVersion );
+        sbKey.append( KEY_SEPARATOR ).append( System.currentTimeMillis( ) / _lTimeToLive );
+
+        return sbKey.toString( );
+    }
+}
@@ -36,6 +36,8 @@ package fr.paris.lutece.plugins.unittree.service.unit;
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
 import fr.paris.lutece.plugins.unittree.service.UnitErrorException;
 
+import java.util.Collection;
+
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -83,6 +85,21 @@ public interface IUnitAttributeService
      */
     void populate( Unit unit );
 
+    /**
+     * Populate the additionnal attributes of several units with the data of the <strong>database</strong>. The default implementation populates the
+     * units one by one : implementations should override it to load the attributes of all the units with one query.
+     * 
+     * @param listUnits
+     *            the units to populate
+     */
+    default void populate( Collection<Unit> listUnits )
+    {
+        for ( Unit unit : listUnits )
+        {
+            populate( unit );
+        }
+    }
+
     /**
      * Populate an unit additionnal attributes with the data of the <strong>request</strong>
      * 
@@ -36,20 +36,26 @@ package fr.paris.lutece.plugins.unittree.service.unit;
 import fr.paris.lutece.plugins.unittree.business.action.IAction;
 import fr.paris.lutece.plugins.unittree.business.unit.TreeUnit;
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitRelationship;
 import fr.paris.lutece.plugins.unittree.service.UnitErrorException;
 import fr.paris.lutece.plugins.unittree.service.rbac.UnittreeRBACRecursiveType;
 import fr.paris.lutece.portal.business.user.AdminUser;
 import fr.paris.lutece.util.ReferenceList;
+import java.io.OutputStream;
+
 import java.util.Collection;
 
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
+import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 
 /**
  *
@@ -71,6 +77,17 @@ public interface IUnitService
      */
     Unit getUnit( int nIdUnit, boolean bGetAdditionalInfos );
 
+    /**
+     * Get the units having the given ids
+     * 
+     * @param listIdUnits
+     *            the ids unit
+     * @param bGetAdditionalInfos
+     *            true if it must get the additional infos
+     * @return the map of the found units, by id unit
+     */
+    Map<Integer, Unit> getUnits( Collection<Integer> listIdUnits, boolean bGetAdditionalInfos );
+
     /**
      * Get the unit by code
      * 
@@ -188,6 +205,26 @@ public interface IUnitService
      */
     String getXMLUnits( AdminUser user );
 
+    /**
+     * Write the XML units to a stream, encoded in UTF-8, without building the XML in memory
+     * 
+     * @param user
+     *            the admin user
+     * @param out
+     *            the output stream. It is not closed.
+     */
+    void writeXMLUnits( AdminUser user, OutputStream out );
+
+    /**
+     * Write the XML units to a result, without building the XML in memory
+     * 
+     * @param user
+     *            the admin user
+     * @param result
+     *            the result
+     */
+    void writeXMLUnits( AdminUser user, Result result );
+
     /**
      * Get the XSL of the tree
      * 
@@ -195,6 +232,13 @@ public interface IUnitService
      */
     Source getTreeXsl( );
 
+    /**
+     * Get the compiled XSL of the tree. The XSL is compiled once, then again only when its file is modified.
+     * 
+     * @return the compiled XSL
+     */
+    Templates getTreeTemplates( );
+
     /**
      * Return all the Unit with no children (level 0)
      * 
@@ -224,6 +268,18 @@ public interface IUnitService
      */
     boolean isParent( Unit unitParent, Unit unitRef );
 
+    /**
+     * Get the relationship of a unit with a reference unit : its type, the lowest common ancestor of the units and their distance in the tree. For
+     * instance, the relationship of the target unit of an assignment with its source unit gives the type of the assignment.
+     * 
+     * @param unitRef
+     *            the reference unit
+     * @param unit
+     *            the unit
+     * @return the relationship, or null if one of the units does not exist
+     */
+    UnitRelationship getUnitRelationship( Unit unitRef, Unit unit );
+
     /**
      * Check if the given id unit, we can create sub unit. <br />
      * Return false if the unit can not be created
@@ -348,4 +404,22 @@ public interface IUnitService
      *            if true, populate the tree units with additionnal infos
      */
     public void populateTreeUnit( TreeUnit treeUnit, AdminUser user, boolean bGetAdditionnalInfos );
+
+    /**
+     * Get the units a user may see, that is the units for which the user has the SEE_UNIT permission. The result is shared by all the users having the
+     * same roles and can be used to filter units.
+     * 
+     * @param user
+     *            the admin user (for RBAC)
+     * @return the visibility of the units for the user
+     */
+    UnitVisibility getUnitVisibility( AdminUser user );
+
+    /**
+     * Get the version of the unit tree. The version changes each time a unit is created, modified, moved or removed, so that the views built on the
+     * tree know when they must be refreshed.
+     * 
+     * @return the version of the unit tree
+     */
+    long getTreeVersion( );
 }
@@ -34,10 +34,12 @@
 package fr.paris.lutece.plugins.unittree.service.unit;
 
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitUserSearch;
 import fr.paris.lutece.portal.business.user.AdminUser;
 
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -61,6 +63,16 @@ public interface IUnitUserService
      */
     AdminUser getUser( int nIdUser );
 
+    /**
+     * Load the {@link AdminUser} having the given ids, with the same fields as {@link fr.paris.lutece.portal.business.user.AdminUserHome#findByPrimaryKey(int)}.
+     * The users are loaded with one query per chunk of ids.
+     * 
+     * @param listIdUsers
+     *            the ids user
+     * @return the map of the found users, by id user
+     */
+    Map<Integer, AdminUser> getUsers( Collection<Integer> listIdUsers );
+
     /**
      * Get the list of {@link AdminUser} from a given id unit
      * 
@@ -74,6 +86,30 @@ public interface IUnitUserService
      */
     List<AdminUser> getUsers( int nIdUnit, Map<String, Unit> mapIdUserUnit, boolean isInDepthSearch );
 
+    /**
+     * Count the users of a unit matching a search
+     * 
+     * @param search
+     *            the search
+     * @return the number of users
+     */
+    int countUsers( UnitUserSearch search );
+
+    /**
+     * Get a page of the users of a unit matching a search. Only the users of the page are loaded.
+     * 
+     * @param search
+     *            the search
+     * @param nOffset
+     *            the index of the first user of the page
+     * @param nLimit
+     *            the maximum number of users of the page
+     * @param mapIdUserUnit
+     *            the map of <idUser, Unit> to fill for the users of the page
+     * @return the users of the page, sorted
+     */
+    List<AdminUser> getUsers( UnitUserSearch search, int nOffset, int nLimit, Map<String, Unit> mapIdUserUnit );
+
     /**
      * Get the list of available users for a given unit. current user can administer.
      * 
@@ -165,6 +201,19 @@ public interface IUnitUserService
     @Transactional( "unittree.transactionManager" )
     boolean addUserToUnit( int nIdUnit, int nIdUser );
 
+    /**
+     * Add several users to an unit. The users are checked against the assignments in memory, then removed from the sub units of the unit with one batch
+     * of deletes and inserted with one batch of inserts, in one transaction. Each user follows the rules of {@link #addUserToUnit(int, int)}.
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param idsUser
+     *            the ids of the users
+     * @return the outcome of each user, by id user, in the order of the given ids : true if the user has been added, false otherwise
+     */
+    @Transactional( "unittree.transactionManager" )
+    Map<Integer, Boolean> addUsersToUnit( int nIdUnit, int [ ] idsUser );
+
     /**
      * Remove the user from a unit
      * 
@@ -37,10 +37,12 @@ import fr.paris.lutece.plugins.unittree.business.unit.Unit;
 import fr.paris.lutece.plugins.unittree.service.UnitErrorException;
 import fr.paris.lutece.plugins.unittree.web.unit.IUnitAttributeComponent;
 import fr.paris.lutece.portal.business.user.AdminUser;
-import fr.paris.lutece.portal.service.spring.SpringContextService;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -65,7 +67,7 @@ public final class UnitAttributeManager
      */
     public static List<IUnitAttributeComponent> getListUnitAttributeComponents( )
     {
-        return SpringContextService.getBeansOfType( IUnitAttributeComponent.class );
+        return UnitExtensionRegistry.getInstance( ).getUnitAttributeComponents( );
     }
 
     /**
@@ -82,12 +84,14 @@ public final class UnitAttributeManager
      */
     public static void fillModel( HttpServletRequest request, AdminUser adminUser, Map<String, Object> model, String strMark )
     {
-        for ( IUnitAttributeComponent component : getListUnitAttributeComponents( ) )
+        List<IUnitAttributeComponent> listComponents = getListUnitAttributeComponents( );
+
+        for ( IUnitAttributeComponent component : listComponents )
         {
             component.fillModel( request, adminUser, model );
         }
 
-        model.put( strMark, getListUnitAttributeComponents( ) );
+        model.put( strMark, listComponents );
     }
 
     /**
@@ -97,7 +101,7 @@ public final class UnitAttributeManager
      */
     public static List<IUnitAttributeService> getListUnitAttributeService( )
     {
-        return SpringContextService.getBeansOfType( IUnitAttributeService.class );
+        return UnitExtensionRegistry.getInstance( ).getUnitAttributeServices( );
     }
 
     /**
@@ -112,10 +116,7 @@ public final class UnitAttributeManager
      */
     public static void populate( Unit unit, HttpServletRequest request ) throws UnitErrorException
     {
-        for ( IUnitAttributeService service : UnitAttributeManager.getListUnitAttributeService( ) )
-        {
-            service.populate( unit, request );
-        }
+        UnitExtensionRegistry.getInstance( ).populate( unit, request );
     }
 
     /**
@@ -126,10 +127,25 @@ public final class UnitAttributeManager
      */
     public static void populate( Unit unit )
     {
-        for ( IUnitAttributeService service : UnitAttributeManager.getListUnitAttributeService( ) )
+        UnitExtensionRegistry.getInstance( ).populate( unit );
+    }
+
+    /**
+     * Populate the additionnal attributes of several units with the data of the <strong>database</strong>, with one call per attribute service
+     * 
+     * @param listUnits
+     *            the units to populate
+     */
+    public static void populate( Collection<Unit> listUnits )
+    {
+        List<Unit> listNonNullUnits = listUnits.stream( ).filter( Objects::nonNull ).collect( Collectors.toList( ) );
+
+        if ( listNonNullUnits.isEmpty( ) )
         {
-            service.populate( unit );
+            return;
         }
+
+        UnitExtensionRegistry.getInstance( ).populate( listNonNullUnits );
     }
 
     /**
@@ -142,10 +158,7 @@ public final class UnitAttributeManager
      */
     public static void doCreateUnit( Unit unit, HttpServletRequest request )
     {
-        for ( IUnitAttributeService service : UnitAttributeManager.getListUnitAttributeService( ) )
-        {
-            service.doCreateUnit( unit, request );
-        }
+        UnitExtensionRegistry.getInstance( ).doCreateUnit( unit, request );
     }
 
     /**
@@ -158,10 +171,7 @@ public final class UnitAttributeManager
      */
     public static void doModifyUnit( Unit unit, HttpServletRequest request )
     {
-        for ( IUnitAttributeService service : UnitAttributeManager.getListUnitAttributeService( ) )
-        {
-            service.doModifyUnit( unit, request );
-        }
+        UnitExtensionRegistry.getInstance( ).doModifyUnit( unit, request );
     }
 
     /**
@@ -174,10 +184,7 @@ public final class UnitAttributeManager
      */
     public static void doRemoveUnit( int nIdUnit, HttpServletRequest request )
     {
-        for ( IUnitAttributeService service : UnitAttributeManager.getListUnitAttributeService( ) )
-        {
-            service.doRemoveUnit( nIdUnit, request );
-        }
+        UnitExtensionRegistry.getInstance( ).doRemoveUnit( nIdUnit, request );
     }
 
     /**
@@ -189,15 +196,7 @@ public final class UnitAttributeManager
      */
     public static boolean canCreateSubUnit( int nIdUnit )
     {
-        for ( IUnitAttributeService service : UnitAttributeManager.getListUnitAttributeService( ) )
-        {
-            if ( !service.canCreateSubUnit( nIdUnit ) )
-            {
-                return false;
-            }
-        }
-
-        return true;
+        return UnitExtensionRegistry.getInstance( ).canCreateSubUnit( nIdUnit );
     }
 
     /**
@@ -210,9 +209,6 @@ public final class UnitAttributeManager
      */
     public static void moveSubTree( Unit unitToMove, Unit newUnitParent )
     {
-        for ( IUnitAttributeService service : UnitAttributeManager.getListUnitAttributeService( ) )
-        {
-            service.moveSubTree( unitToMove, newUnitParent );
-        }
+        UnitExtensionRegistry.getInstance( ).moveSubTree( unitToMove, newUnitParent );
     }
 }
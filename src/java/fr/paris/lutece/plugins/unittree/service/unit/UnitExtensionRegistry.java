@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.unit;
+
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.service.UnitErrorException;
+import fr.paris.lutece.plugins.unittree.web.unit.IUnitAttributeComponent;
+import fr.paris.lutece.plugins.unittree.web.unit.IUnitUserAttributeComponent;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.plugin.PluginEvent;
+import fr.paris.lutece.portal.service.plugin.PluginEventListener;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ *
+ * Registry of the extensions of the unit tree : attribute services and components, user attribute services and components, and removal listeners. The
+ * extension beans are looked up once, ordered with their Spring order (@Order or Ordered), and kept in arrays until the Spring context is refreshed or a
+ * plugin is installed or uninstalled.
+ *
+ */
+public final class UnitExtensionRegistry implements ApplicationListener<ContextRefreshedEvent>, PluginEventListener
+{
+    public static final String BEAN_NAME = "unittree.unitExtensionRegistry";
+    private static UnitExtensionRegistry _instance;
+    private volatile Extensions _extensions;
+
+    /**
+     * Constructor
+     */
+    public UnitExtensionRegistry( )
+    {
+        PluginService.registerPluginEventListener( this );
+    }
+
+    /**
+     * Get the instance of the registry
+     * 
+     * @return the instance of the registry
+     */
+    public static UnitExtensionRegistry getInstance( )
+    {
+        if ( _instance == null )
+        {
+            _instance = SpringContextService.getBean( BEAN_NAME );
+        }
+
+        return _instance;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onApplicationEvent( ContextRefreshedEvent event )
+    {
+        _extensions = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPluginEvent( PluginEvent event )
+    {
+        _extensions = null;
+    }
+
+    // LISTS
+
+    /**
+     * Get the ordered list of unit attribute services
+     * 
+     * @return an unmodifiable list of {@link IUnitAttributeService}
+     */
+    public List<IUnitAttributeService> getUnitAttributeServices( )
+    {
+        return getExtensions( )._listAttributeServices;
+    }
+
+    /**
+     * Get the ordered list of unit attribute components
+     * 
+     * @return an unmodifiable list of {@link IUnitAttributeComponent}
+     */
+    public List<IUnitAttributeComponent> getUnitAttributeComponents( )
+    {
+        return getExtensions( )._listAttributeComponents;
+    }
+
+    /**
+     * Get the ordered list of unit user attribute services
+     * 
+     * @return an unmodifiable list of {@link IUnitUserAttributeService}
+     */
+    public List<IUnitUserAttributeService> getUnitUserAttributeServices( )
+    {
+        return getExtensions( )._listUserAttributeServices;
+    }
+
+    /**
+     * Get the ordered list of unit user attribute components
+     * 
+     * @return an unmodifiable list of {@link IUnitUserAttributeComponent}
+     */
+    public List<IUnitUserAttributeComponent> getUnitUserAttributeComponents( )
+    {
+        return getExtensions( )._listUserAttributeComponents;
+    }
+
+    /**
+     * Get the ordered list of unit removal listeners
+     * 
+     * @return an unmodifiable list of {@link IUnitRemovalListener}
+     */
+    public List<IUnitRemovalListener> getUnitRemovalListeners( )
+    {
+        return getExtensions( )._listRemovalListeners;
+    }
+
+    // UNIT ATTRIBUTES DISPATCH
+
+    /**
+     * Populate an unit additionnal attributes with the data of the <strong>database</strong>
+     * 
+     * @param unit
+     *            the unit to populate
+     */
+    public void populate( Unit unit )
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            service.populate( unit );
+        }
+    }
+
+    /**
+     * Populate the additionnal attributes of several units with the data of the <strong>database</strong>
+     * 
+     * @param listUnits
+     *            the units to populate
+     */
+    public void populate( Collection<Unit> listUnits )
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            service.populate( listUnits );
+        }
+    }
+
+    /**
+     * Populate an unit with the data of the <strong>request</strong>
+     * 
+     * @param unit
+     *            the unit to populate
+     * @param request
+     *            the HTTP request
+     * @throws UnitErrorException
+     *             exception if there is an error (ex: mandatory field)
+     */
+    public void populate( Unit unit, HttpServletRequest request ) throws UnitErrorException
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            service.populate( unit, request );
+        }
+    }
+
+    /**
+     * Do create the additional attributes of the given unit
+     * 
+     * @param unit
+     *            the unit
+     * @param request
+     *            the HTTP request
+     */
+    public void doCreateUnit( Unit unit, HttpServletRequest request )
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            service.doCreateUnit( unit, request );
+        }
+    }
+
+    /**
+     * Do modify the additional attributes of the given unit
+     * 
+     * @param unit
+     *            the unit
+     * @param request
+     *            the HTTP request
+     */
+    public void doModifyUnit( Unit unit, HttpServletRequest request )
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            service.doModifyUnit( unit, request );
+        }
+    }
+
+    /**
+     * Do remove the additional attributes
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param request
+     *            the HTTP request
+     */
+    public void doRemoveUnit( int nIdUnit, HttpServletRequest request )
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            service.doRemoveUnit( nIdUnit, request );
+        }
+    }
+
+    /**
+     * Check if the given id unit can create sub units
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return true if every attribute service allows it
+     */
+    public boolean canCreateSubUnit( int nIdUnit )
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            if ( !service.canCreateSubUnit( nIdUnit ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Update attributes to change the parent of a unit.
+     * 
+     * @param unitToMove
+     *            The unit to change the parent of.
+     * @param newUnitParent
+     *            The new parent of the unit
+     */
+    public void moveSubTree( Unit unitToMove, Unit newUnitParent )
+    {
+        for ( IUnitAttributeService service : getExtensions( )._attributeServices )
+        {
+            service.moveSubTree( unitToMove, newUnitParent );
+        }
+    }
+
+    /**
+     * Notify the removal listeners that a unit is going to be removed. The first listener refusing the removal stops the notification.
+     * 
+     * @param nIdUnit
+     *            the id of the removed unit
+     * @throws UnitErrorException
+     *             if a listener refuses the removal
+     */
+    public void notifyRemoval( int nIdUnit ) throws UnitErrorException
+    {
+        for ( IUnitRemovalListener listener : getExtensions( )._removalListeners )
+        {
+            listener.notify( nIdUnit );
+        }
+    }
+
+    // UNIT USER ATTRIBUTES DISPATCH
+
+    /**
+     * Do add the user to the unit
+     * 
+     * @param nIdUser
+     *            the id user
+     * @param currentUser
+     *            the current user
+     * @param request
+     *            the HTTP request
+     */
+    public void doAddUser( int nIdUser, AdminUser currentUser, HttpServletRequest request )
+    {
+        for ( IUnitUserAttributeService service : getExtensions( )._userAttributeServices )
+        {
+            service.doAddUser( nIdUser, currentUser, request );
+        }
+    }
+
+    /**
+     * Do modify the user
+     * 
+     * @param nIdUser
+     *            the id user
+     * @param currentUser
+     *            the current user
+     * @param request
+     *            the HTTP request
+     */
+    public void doModifyUser( int nIdUser, AdminUser currentUser, HttpServletRequest request )
+    {
+        for ( IUnitUserAttributeService service : getExtensions( )._userAttributeServices )
+        {
+            service.doModifyUser( nIdUser, currentUser, request );
+        }
+    }
+
+    /**
+     * Do remove the user from the unit
+     * 
+     * @param nIdUser
+     *            the id user
+     * @param currentUser
+     *            the current user
+     * @param request
+     *            the HTTP request
+     */
+    public void doRemoveUser( int nIdUser, AdminUser currentUser, HttpServletRequest request )
+    {
+        for ( IUnitUserAttributeService service : getExtensions( )._userAttributeServices )
+        {
+            service.doRemoveUser( nIdUser, currentUser, request );
+        }
+    }
+
+    // PRIVATE METHODS
+
+    /**
+     * Get the extensions, looking them up if needed
+     * 
+     * @return the extensions
+     */
+    private Extensions getExtensions( )
+    {
+        Extensions extensions = _extensions;
+
+        if ( extensions == null )
+        {
+            extensions = new Extensions( );
+            _extensions = extensions;
+        }
+
+        return extensions;
+    }
+
+    /**
+     * Look up the beans of a given type and order them
+     * 
+     * @param <T>
+     *            the type of the beans
+     * @param classBean
+     *            the class of the beans
+     * @param arrayType
+     *            an empty array of the type of the beans
+     * @return the ordered beans
+     */
+    private static <T> T [ ] lookup( Class<T> classBean, T [ ] arrayType )
+    {
+        List<T> listBeans = new ArrayList<>( SpringContextService.getBeansOfType( classBean ) );
+        AnnotationAwareOrderComparator.sort( listBeans );
+
+        return listBeans.toArray( arrayType );
+    }
+
+    /**
+     * Immutable set of the extension beans
+     */
+    private static final class Extensions
+    {
+        private final IUnitAttributeService [ ] _attributeServices = lookup( IUnitAttributeService.class, new IUnitAttributeService [ 0] );
+        private final IUnitAttributeComponent [ ] _attributeComponents = lookup( IUnitAttributeComponent.class, new IUnitAttributeComponent [ 0] );
+        private final IUnitUserAttributeService [ ] _userAttributeServices = lookup( IUnitUserAttributeService.class,
+                new IUnitUserAttributeService [ 0] );
+        private final IUnitUserAttributeComponent [ ] _userAttributeComponents = lookup( IUnitUserAttributeComponent.class,
+                new IUnitUserAttributeComponent [ 0] );
+        private final IUnitRemovalListener [ ] _removalListeners = lookup( IUnitRemovalListener.class, new IUnitRemovalListener [ 0] );
+        private final List<IUnitAttributeService> _listAttributeServices = Collections.unmodifiableList( Arrays.asList( _attributeServices ) );
+        private final List<IUnitAttributeComponent> _listAttributeComponents = Collections.unmodifiableList( Arrays.asList( _attributeComponents ) );
+        private final List<IUnitUserAttributeService> _listUserAttributeServices = Collections
+                .unmodifiableList( Arrays.asList( _userAttributeServices ) );
+        private final List<IUnitUserAttributeComponent> _listUserAttributeComponents = Collections
+                .unmodifiableList( Arrays.asList( _userAttributeComponents ) );
+        private final List<IUnitRemovalListener> _listRemovalListeners = Collections.unmodifiableList( Arrays.asList( _removalListeners ) );
+    }
+}
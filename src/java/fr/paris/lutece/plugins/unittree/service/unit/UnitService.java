@@ -35,40 +35,53 @@ package fr.paris.lutece.plugins.unittree.service.unit;
 
 import fr.paris.lutece.api.user.User;
 import fr.paris.lutece.plugins.unittree.business.action.IAction;
+import fr.paris.lutece.plugins.unittree.business.unit.CompactUnitTree;
 import fr.paris.lutece.plugins.unittree.business.unit.TreeUnit;
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
-import fr.paris.lutece.plugins.unittree.business.unit.UnitFilter;
 import fr.paris.lutece.plugins.unittree.business.unit.UnitHome;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitRelationship;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitTreeSnapshot;
 import fr.paris.lutece.plugins.unittree.service.UnitErrorException;
 import fr.paris.lutece.plugins.unittree.service.action.IActionService;
+import fr.paris.lutece.plugins.unittree.service.rbac.UnitAuthorizationCacheService;
+import fr.paris.lutece.plugins.unittree.service.rbac.UnitVisibilityService;
 import fr.paris.lutece.plugins.unittree.service.rbac.UnittreeRBACRecursiveType;
 import fr.paris.lutece.portal.business.user.AdminUser;
 import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.service.rbac.RBACService;
+import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.portal.service.util.AppPathService;
 import fr.paris.lutece.util.ReferenceList;
-import fr.paris.lutece.util.xml.XmlUtil;
 
 import org.apache.commons.lang3.StringUtils;
 
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.FileInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import java.nio.charset.StandardCharsets;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 
 import javax.inject.Inject;
 
 import javax.servlet.http.HttpServletRequest;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamSource;
 
 /**
@@ -87,8 +100,7 @@ public class UnitService implements IUnitService
     private static final String TAG_LABEL = "label";
     private static final String TAG_DESCRIPTION = "description";
     private static final String TAG_UNIT_CHILDREN = "unit-children";
-    private static final String CDATA_START = "<![CDATA[";
-    private static final String CDATA_END = "]]>";
+    private static final String XML_VERSION = "1.0";
 
     // PROPERTIES
     private static final String PROPERTY_LABEL_PARENT_UNIT = "unittree.moveUser.labelParentUnit";
@@ -104,6 +116,7 @@ public class UnitService implements IUnitService
     private IUnitUserService _unitUserService;
     @Inject
     private IActionService _actionService;
+    private volatile CompiledXsl _treeXsl;
 
     // GET
 
@@ -113,7 +126,13 @@ public class UnitService implements IUnitService
     @Override
     public Unit getUnit( int nIdUnit, boolean bGetAdditionalInfos )
     {
-        Unit unit = UnitHome.findByPrimaryKey( nIdUnit );
+        Unit unit = UnitHome.getTreeSnapshot( ).getUnit( nIdUnit );
+
+        if ( unit == null )
+        {
+            // Unit created since the snapshot was loaded, by another node for instance
+            unit = UnitHome.findByPrimaryKey( nIdUnit );
+        }
 
         if ( ( unit != null ) && bGetAdditionalInfos )
         {
@@ -123,6 +142,47 @@ public class UnitService implements IUnitService
         return unit;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Integer, Unit> getUnits( Collection<Integer> listIdUnits, boolean bGetAdditionalInfos )
+    {
+        Map<Integer, Unit> mapUnits = new HashMap<>( );
+        List<Integer> listMissingIdUnits = new ArrayList<>( );
+        UnitTreeSnapshot snapshot = UnitHome.getTreeSnapshot( );
+
+        for ( Integer nIdUnit : listIdUnits )
+        {
+            if ( nIdUnit != null )
+            {
+                Unit unit = snapshot.getUnit( nIdUnit );
+
+                if ( unit != null )
+                {
+                    mapUnits.put( nIdUnit, unit );
+                }
+                else
+                {
+                    listMissingIdUnits.add( nIdUnit );
+                }
+            }
+        }
+
+        // Units created since the snapshot was loaded, by another node for instance
+        if ( !listMissingIdUnits.isEmpty( ) )
+        {
+            mapUnits.putAll( UnitHome.findByPrimaryKeys( listMissingIdUnits ) );
+        }
+
+        if ( bGetAdditionalInfos )
+        {
+            UnitAttributeManager.populate( mapUnits.values( ) );
+        }
+
+        return mapUnits;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -140,12 +200,9 @@ public class UnitService implements IUnitService
     {
         List<Unit> listUnit = UnitHome.findByIdUser( nIdUser );
 
-        for ( Unit unit : listUnit )
+        if ( bGetAdditionalInfos )
         {
-            if ( bGetAdditionalInfos && ( unit != null ) )
-            {
-                UnitAttributeManager.populate( unit );
-            }
+            UnitAttributeManager.populate( listUnit );
         }
 
         return listUnit;
@@ -157,17 +214,11 @@ public class UnitService implements IUnitService
     @Override
     public List<Unit> getAllUnits( boolean bGetAdditionalInfos )
     {
-        List<Unit> listUnits = UnitHome.findAll( );
+        List<Unit> listUnits = UnitHome.getTreeSnapshot( ).getUnits( );
 
         if ( bGetAdditionalInfos )
         {
-            for ( Unit unit : listUnits )
-            {
-                if ( unit != null )
-                {
-                    UnitAttributeManager.populate( unit );
-                }
-            }
+            UnitAttributeManager.populate( listUnits );
         }
 
         return listUnits;
@@ -197,20 +248,11 @@ public class UnitService implements IUnitService
             return listUnits;
         }
 
-        UnitFilter uFilter = new UnitFilter( );
-        uFilter.setIdParent( nIdUnit );
-
-        List<Unit> listUnits = UnitHome.findByFilter( uFilter );
+        List<Unit> listUnits = UnitHome.getTreeSnapshot( ).getSubUnits( nIdUnit );
 
         if ( bGetAdditionalInfos )
         {
-            for ( Unit unit : listUnits )
-            {
-                if ( unit != null )
-                {
-                    UnitAttributeManager.populate( unit );
-                }
-            }
+            UnitAttributeManager.populate( listUnits );
         }
 
         return listUnits;
@@ -222,31 +264,14 @@ public class UnitService implements IUnitService
     @Override
     public List<Unit> getAllSubUnits( Unit unit, boolean bGetAdditionalInfos )
     {
-        List<Unit> listSubUnits = getSubUnits( unit.getIdUnit( ), bGetAdditionalInfos );
-
-        return getAllSubUnitsRecursive( listSubUnits, bGetAdditionalInfos );
-    }
+        List<Unit> listSubUnits = UnitHome.getTreeSnapshot( ).getAllSubUnits( unit.getIdUnit( ) );
 
-    /**
-     * Recursive method to get all the sub units from a list of units
-     * 
-     * @param listUnits
-     *            the list of units the method has to search the sub units
-     * @param bGetAdditionalInfos
-     *            {@code true} if it must get the additionnal infos, {@code false} otherwise
-     * @return all the sub units
-     */
-    private List<Unit> getAllSubUnitsRecursive( List<Unit> listUnits, boolean bGetAdditionalInfos )
-    {
-        List<Unit> listCurrentUnitsAndSubUnits = new ArrayList<>( listUnits );
-
-        for ( Unit unit : listUnits )
+        if ( bGetAdditionalInfos )
         {
-            List<Unit> listSubUnits = getSubUnits( unit.getIdUnit( ), bGetAdditionalInfos );
-            listCurrentUnitsAndSubUnits.addAll( getAllSubUnitsRecursive( listSubUnits, bGetAdditionalInfos ) );
+            UnitAttributeManager.populate( listSubUnits );
         }
 
-        return listCurrentUnitsAndSubUnits;
+        return listSubUnits;
     }
 
     /**
@@ -348,82 +373,135 @@ public class UnitService implements IUnitService
             return;
         }
 
+        populateTreeUnit( treeUnit, getUnitVisibility( user ), bGetAdditionnalInfos );
+    }
+
+    /**
+     * populate a TreeUnit with all the visible sub units (recursive)
+     * 
+     * @param treeUnit
+     *            the treeUnit
+     * @param visibility
+     *            the units the user may see
+     * @param bGetAdditionnalInfos
+     *            if true, populate the tree units with additionnal infos
+     */
+    private void populateTreeUnit( TreeUnit treeUnit, UnitVisibility visibility, boolean bGetAdditionnalInfos )
+    {
         List<Unit> subUnits = getSubUnits( treeUnit.getUnitNode( ).getIdUnit( ), bGetAdditionnalInfos );
 
         // set sub units
-        for ( Unit subUnit : subUnits )
+        for ( Unit subUnit : visibility.filter( subUnits ) )
         {
-            if ( isAuthorized( subUnit, UnitResourceIdService.PERMISSION_SEE_UNIT, user, UnittreeRBACRecursiveType.NOT_RECURSIVE ) )
-            {
-                treeUnit.addSubUnit( subUnit );
-            }
+            treeUnit.addSubUnit( subUnit );
         }
 
         // recursive search to get the complete tree
         for ( TreeUnit subTreeUnit : treeUnit.getSubUnits( ) )
         {
-            populateTreeUnit( subTreeUnit, user, bGetAdditionnalInfos );
+            populateTreeUnit( subTreeUnit, visibility, bGetAdditionnalInfos );
         }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnitVisibility getUnitVisibility( AdminUser user )
+    {
+        return UnitVisibilityService.getInstance( ).getVisibility( user, UnitHome.getTreeSnapshot( ) );
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getXMLUnits( AdminUser user )
+    public long getTreeVersion( )
     {
-        List<Unit> listAuthorizedUnit = getTreeableAuthorizedUnits( user );
+        return UnitHome.getTreeSnapshot( ).getVersion( );
+    }
 
-        StringBuffer sbXML = new StringBuffer( );
-        XmlUtil.beginElement( sbXML, TAG_UNITS );
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getXMLUnits( AdminUser user )
+    {
+        StringWriter writer = new StringWriter( );
 
-        Unit rootUnit = getRootUnit( false );
+        try
+        {
+            XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance( ).createXMLStreamWriter( writer );
 
-        if ( isUnitInList( rootUnit, listAuthorizedUnit ) )
+            try
+            {
+                writeXMLUnits( xmlWriter, user );
+            }
+            finally
+            {
+                xmlWriter.close( );
+            }
+        }
+        catch( XMLStreamException e )
         {
-            getXMLUnit( sbXML, listAuthorizedUnit, rootUnit, user );
+            throw new AppException( e.getMessage( ), e );
         }
 
-        XmlUtil.endElement( sbXML, TAG_UNITS );
-
-        return sbXML.toString( );
+        return writer.toString( );
     }
 
     /**
-     * Get the authorized unit lists for the given user. The list is computed to be represented as a tree
-     * 
-     * @param user
-     *            the lutece AdminUser
-     * @return the list of authorized units, which can be represented as a tree.
+     * {@inheritDoc}
      */
-    private List<Unit> getTreeableAuthorizedUnits( AdminUser user )
+    @Override
+    public void writeXMLUnits( AdminUser user, OutputStream out )
     {
-        List<Unit> listAllUnits = UnitHome.findAll( );
-        Set<Unit> setAuthorizedUnits = new HashSet<>( );
-
-        for ( Unit unit : listAllUnits )
+        try
         {
-            if ( !isUnitInList( unit, setAuthorizedUnits )
-                    && isAuthorized( unit, UnitResourceIdService.PERMISSION_SEE_UNIT, user, UnittreeRBACRecursiveType.NOT_RECURSIVE ) )
-            {
-                List<Unit> listAllSubUnits = getAllSubUnits( unit, false );
+            XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance( ).createXMLStreamWriter( out, StandardCharsets.UTF_8.name( ) );
 
-                for ( Unit childUnit : listAllSubUnits )
-                {
-                    setAuthorizedUnits.add( childUnit );
-                }
+            try
+            {
+                xmlWriter.writeStartDocument( StandardCharsets.UTF_8.name( ), XML_VERSION );
+                writeXMLUnits( xmlWriter, user );
+                xmlWriter.writeEndDocument( );
+            }
+            finally
+            {
+                xmlWriter.close( );
+            }
+        }
+        catch( XMLStreamException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
 
-                List<Unit> parentUnits = getListParentUnits( unit );
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeXMLUnits( AdminUser user, Result result )
+    {
+        try
+        {
+            XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance( ).createXMLStreamWriter( result );
 
-                for ( Unit parentUnit : parentUnits )
-                {
-                    setAuthorizedUnits.add( parentUnit );
-                }
+            try
+            {
+                xmlWriter.writeStartDocument( );
+                writeXMLUnits( xmlWriter, user );
+                xmlWriter.writeEndDocument( );
+            }
+            finally
+            {
+                xmlWriter.close( );
             }
         }
-
-        return new ArrayList<>( setAuthorizedUnits );
+        catch( XMLStreamException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
     }
 
     /**
@@ -432,9 +510,36 @@ public class UnitService implements IUnitService
     @Override
     public Source getTreeXsl( )
     {
-        FileInputStream fis = AppPathService.getResourceAsStream( PATH_XSL, FILE_TREE_XSL );
+        // The source is read by the caller : opening a stream here would leave it to the caller to close it
+        return new StreamSource( getTreeXslFile( ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Templates getTreeTemplates( )
+    {
+        File fileXsl = getTreeXslFile( );
+        long lLastModified = fileXsl.lastModified( );
+        CompiledXsl treeXsl = _treeXsl;
 
-        return new StreamSource( fis );
+        if ( ( treeXsl == null ) || ( treeXsl._lLastModified != lLastModified ) )
+        {
+            try
+            {
+                treeXsl = new CompiledXsl( TransformerFactory.newInstance( ).newTemplates( new StreamSource( fileXsl ) ), lLastModified );
+            }
+            catch( TransformerConfigurationException e )
+            {
+                throw new AppException( e.getMessage( ), e );
+            }
+
+            // Concurrent compilations are harmless : the last one wins
+            _treeXsl = treeXsl;
+        }
+
+        return treeXsl._templates;
     }
 
     /**
@@ -455,7 +560,7 @@ public class UnitService implements IUnitService
     @Override
     public boolean hasSubUnits( int nIdUnit )
     {
-        return UnitHome.hasSubUnits( nIdUnit );
+        return UnitHome.getTreeSnapshot( ).hasSubUnits( nIdUnit );
     }
 
     /**
@@ -466,25 +571,25 @@ public class UnitService implements IUnitService
     {
         if ( ( unitParent != null ) && ( unitRef != null ) )
         {
-            if ( unitParent.getIdUnit( ) == unitRef.getIdParent( ) )
-            {
-                return true;
-            }
-
-            Unit nextUnitParent = getUnit( unitRef.getIdParent( ), false );
+            return ( unitParent.getIdUnit( ) == unitRef.getIdParent( ) )
+                    || UnitHome.getTreeSnapshot( ).isParent( unitParent.getIdUnit( ), unitRef.getIdParent( ) );
+        }
 
-            while ( ( nextUnitParent != null ) && ( nextUnitParent.getIdUnit( ) != Unit.ID_NULL ) )
-            {
-                if ( unitParent.getIdUnit( ) == nextUnitParent.getIdUnit( ) )
-                {
-                    return true;
-                }
+        return false;
+    }
 
-                nextUnitParent = getUnit( nextUnitParent.getIdParent( ), false );
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnitRelationship getUnitRelationship( Unit unitRef, Unit unit )
+    {
+        if ( ( unitRef != null ) && ( unit != null ) )
+        {
+            return UnitHome.getTreeSnapshot( ).getRelationship( unitRef.getIdUnit( ), unit.getIdUnit( ) );
         }
 
-        return false;
+        return null;
     }
 
     /**
@@ -507,48 +612,89 @@ public class UnitService implements IUnitService
             return true;
         }
 
-        List<Unit> listUnits = new ArrayList<>( );
+        if ( unit == null )
+        {
+            return false;
+        }
+
+        UnitTreeSnapshot snapshot = UnitHome.getTreeSnapshot( );
+        UnitAuthorizationCacheService cacheService = UnitAuthorizationCacheService.getInstance( );
+        Boolean bCachedDecision = cacheService.getDecision( user, unit.getIdUnit( ), strPermission, recursiveType, snapshot.getVersion( ) );
+
+        if ( bCachedDecision != null )
+        {
+            return bCachedDecision;
+        }
+
+        boolean bAuthorized;
 
         switch( recursiveType )
         {
             case PARENT_RECURSIVE:
-                listUnits = getListParentUnits( unit );
+                bAuthorized = isAuthorizedForUnitOrParents( snapshot.getTree( ), unit, strPermission, user );
                 break;
             case NOT_RECURSIVE:
-                listUnits.add( unit );
+                bAuthorized = isAuthorizedForUnit( unit.getIdUnit( ), strPermission, user );
                 break;
             default:
-                // Nothing to do
+                bAuthorized = false;
         }
 
-        return isAuthorizedForAtLeastOneUnit( listUnits, strPermission, user );
+        cacheService.putDecision( user, unit.getIdUnit( ), strPermission, recursiveType, snapshot.getVersion( ), bAuthorized );
+
+        return bAuthorized;
     }
 
     /**
-     * Check that a given user has the given permission for at least one unit of the given list.
+     * Check that a given user has the given permission for a unit or for at least one of its parent units. The parent units are read from the tree
+     * index, from the closest one to the root unit.
      * 
-     * @param listUnits
-     *            the unit list
+     * @param tree
+     *            the tree index
+     * @param unit
+     *            the unit
      * @param strPermission
      *            the permission needed
      * @param user
      *            the user trying to access the resource
-     * @return {code true} if the given user has the given permission for at least one unit, {@code false} otherwise
+     * @return {code true} if the given user has the given permission for the unit or one of its parent units, {@code false} otherwise
      */
-    private boolean isAuthorizedForAtLeastOneUnit( List<Unit> listUnits, String strPermission, AdminUser user )
+    private boolean isAuthorizedForUnitOrParents( CompactUnitTree tree, Unit unit, String strPermission, AdminUser user )
     {
-        boolean bIsAuthorized = false;
+        if ( isAuthorizedForUnit( unit.getIdUnit( ), strPermission, user ) )
+        {
+            return true;
+        }
+
+        // The depth guard protects against corrupted data with cycles
+        int nDepth = 0;
 
-        for ( Unit unitToCheck : listUnits )
+        for ( int nIndex = tree.indexOf( unit.getIdParent( ) ); ( nIndex != CompactUnitTree.NONE ) && ( nDepth++ < tree.size( ) ); nIndex = tree
+                .getParent( nIndex ) )
         {
-            if ( RBACService.isAuthorized( Unit.RESOURCE_TYPE, String.valueOf( unitToCheck.getIdUnit( ) ), strPermission, (User) user ) )
+            if ( isAuthorizedForUnit( tree.getIdUnit( nIndex ), strPermission, user ) )
             {
-                bIsAuthorized = true;
-                break;
+                return true;
             }
         }
 
-        return bIsAuthorized;
+        return false;
+    }
+
+    /**
+     * Check that a given user has the given permission for a unit
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @param strPermission
+     *            the permission needed
+     * @param user
+     *            the user trying to access the resource
+     * @return {code true} if the given user has the given permission for the unit, {@code false} otherwise
+     */
+    private boolean isAuthorizedForUnit( int nIdUnit, String strPermission, AdminUser user )
+    {
+        return RBACService.isAuthorized( Unit.RESOURCE_TYPE, String.valueOf( nIdUnit ), strPermission, (User) user );
     }
 
     /**
@@ -645,42 +791,112 @@ public class UnitService implements IUnitService
     // PRIVATE METHODS
 
     /**
-     * Get the XML for an unit
+     * Write the XML of the units the user may see
      * 
-     * @param sbXML
-     *            the XML
-     * @param listAuthorizedUnits
-     *            the list of authorized units
-     * @param unit
-     *            the unit
+     * @param xmlWriter
+     *            the XML writer
      * @param user
-     *            the user for which the XML is built
+     *            the admin user
+     * @throws XMLStreamException
+     *             if an error occurs while writing the XML
      */
-    private void getXMLUnit( StringBuffer sbXML, List<Unit> listAuthorizedUnits, Unit unit, AdminUser user )
+    private void writeXMLUnits( XMLStreamWriter xmlWriter, AdminUser user ) throws XMLStreamException
     {
-        XmlUtil.beginElement( sbXML, TAG_UNIT );
-        XmlUtil.addElement( sbXML, TAG_ID_UNIT, unit.getIdUnit( ) );
-        XmlUtil.addElement( sbXML, TAG_LABEL, CDATA_START + unit.getLabel( ) + CDATA_END );
-        XmlUtil.addElement( sbXML, TAG_DESCRIPTION, CDATA_START + unit.getDescription( ) + CDATA_END );
+        UnitTreeSnapshot snapshot = UnitHome.getTreeSnapshot( );
+        UnitVisibility visibility = UnitVisibilityService.getInstance( ).getVisibility( user, snapshot );
 
-        List<Unit> listChildren = getSubUnits( unit.getIdUnit( ), false );
+        xmlWriter.writeStartElement( TAG_UNITS );
 
-        if ( ( listChildren != null ) && !listChildren.isEmpty( ) )
+        int nRoot = snapshot.getTree( ).indexOf( Unit.ID_ROOT );
+
+        if ( visibility.isTreeableAt( nRoot ) )
         {
-            XmlUtil.beginElement( sbXML, TAG_UNIT_CHILDREN );
+            writeXMLUnit( xmlWriter, snapshot, visibility, nRoot );
+        }
 
-            for ( Unit child : listChildren )
+        xmlWriter.writeEndElement( );
+    }
+
+    /**
+     * Write the XML of an unit
+     * 
+     * @param xmlWriter
+     *            the XML writer
+     * @param snapshot
+     *            the snapshot of the unit tree
+     * @param visibility
+     *            the units the user may see
+     * @param nIndex
+     *            the index of the unit in the tree
+     * @throws XMLStreamException
+     *             if an error occurs while writing the XML
+     */
+    private void writeXMLUnit( XMLStreamWriter xmlWriter, UnitTreeSnapshot snapshot, UnitVisibility visibility, int nIndex ) throws XMLStreamException
+    {
+        CompactUnitTree tree = snapshot.getTree( );
+        Unit unit = snapshot.getUnitAt( nIndex );
+
+        xmlWriter.writeStartElement( TAG_UNIT );
+        writeXMLElement( xmlWriter, TAG_ID_UNIT, Integer.toString( unit.getIdUnit( ) ), false );
+        writeXMLElement( xmlWriter, TAG_LABEL, unit.getLabel( ), true );
+        writeXMLElement( xmlWriter, TAG_DESCRIPTION, unit.getDescription( ), true );
+
+        if ( tree.getFirstChild( nIndex ) != CompactUnitTree.NONE )
+        {
+            xmlWriter.writeStartElement( TAG_UNIT_CHILDREN );
+
+            for ( int nChild = tree.getFirstChild( nIndex ); nChild != CompactUnitTree.NONE; nChild = tree.getNextSibling( nChild ) )
             {
-                if ( isUnitInList( child, listAuthorizedUnits ) )
+                if ( visibility.isTreeableAt( nChild ) )
                 {
-                    getXMLUnit( sbXML, listAuthorizedUnits, child, user );
+                    writeXMLUnit( xmlWriter, snapshot, visibility, nChild );
                 }
             }
 
-            XmlUtil.endElement( sbXML, TAG_UNIT_CHILDREN );
+            xmlWriter.writeEndElement( );
+        }
+
+        xmlWriter.writeEndElement( );
+    }
+
+    /**
+     * Write a simple XML element
+     * 
+     * @param xmlWriter
+     *            the XML writer
+     * @param strTag
+     *            the tag of the element
+     * @param strValue
+     *            the value of the element
+     * @param bCData
+     *            true to write the value in a CDATA section, false to escape it
+     * @throws XMLStreamException
+     *             if an error occurs while writing the XML
+     */
+    private static void writeXMLElement( XMLStreamWriter xmlWriter, String strTag, String strValue, boolean bCData ) throws XMLStreamException
+    {
+        xmlWriter.writeStartElement( strTag );
+
+        if ( bCData )
+        {
+            xmlWriter.writeCData( StringUtils.defaultString( strValue ) );
+        }
+        else
+        {
+            xmlWriter.writeCharacters( StringUtils.defaultString( strValue ) );
         }
 
-        XmlUtil.endElement( sbXML, TAG_UNIT );
+        xmlWriter.writeEndElement( );
+    }
+
+    /**
+     * Get the file of the XSL of the tree
+     * 
+     * @return the file of the XSL of the tree
+     */
+    private static File getTreeXslFile( )
+    {
+        return new File( AppPathService.getAbsolutePathFromRelativePath( PATH_XSL + FILE_TREE_XSL ) );
     }
 
     /**
@@ -694,27 +910,14 @@ public class UnitService implements IUnitService
             return new ArrayList<>( );
         }
 
-        List<Unit> listAllUnits = UnitHome.findAll( );
         List<Unit> listParentUnits = new ArrayList<>( );
+        listParentUnits.add( givenUnit );
 
-        // Build a map of id / unit :
-        Map<Integer, Unit> mapIdUnit = new HashMap<>( );
-        for ( Unit unit : listAllUnits )
+        if ( givenUnit.getIdParent( ) != Unit.ID_NULL )
         {
-            mapIdUnit.put( unit.getIdUnit( ), unit );
+            listParentUnits.addAll( UnitHome.getTreeSnapshot( ).getParentUnits( givenUnit.getIdParent( ) ) );
         }
 
-        Unit recursiveUnit = givenUnit;
-        while ( recursiveUnit != null )
-        {
-            listParentUnits.add( recursiveUnit );
-            if ( recursiveUnit.getIdParent( ) == -1 )
-            {
-                break;
-            }
-            recursiveUnit = mapIdUnit.get( recursiveUnit.getIdParent( ) );
-
-        }
         return listParentUnits;
     }
 
@@ -743,4 +946,27 @@ public class UnitService implements IUnitService
 
         return UnitHome.findByCode( strCode );
     }
+
+    /**
+     * Compiled XSL, with the last modification date of its file
+     */
+    private static final class CompiledXsl
+    {
+        private final Templates _templates;
+        private final long _lLastModified;
+
+        /**
+         * Constructor
+         * 
+         * @param templates
+         *            the compiled XSL
+         * @param lLastModified
+         *            the last modification date of the file
+         */
+        CompiledXsl( Templates templates, long lLastModified )
+        {
+            _templates = templates;
+            _lLastModified = lLastModified;
+        }
+    }
 }
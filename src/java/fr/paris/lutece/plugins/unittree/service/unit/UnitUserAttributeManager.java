@@ -35,7 +35,6 @@ package fr.paris.lutece.plugins.unittree.service.unit;
 
 import fr.paris.lutece.plugins.unittree.web.unit.IUnitUserAttributeComponent;
 import fr.paris.lutece.portal.business.user.AdminUser;
-import fr.paris.lutece.portal.service.spring.SpringContextService;
 
 import java.util.List;
 import java.util.Map;
@@ -63,7 +62,7 @@ public final class UnitUserAttributeManager
      */
     public static List<IUnitUserAttributeComponent> getListUnitUserAttributeComponents( )
     {
-        return SpringContextService.getBeansOfType( IUnitUserAttributeComponent.class );
+        return UnitExtensionRegistry.getInstance( ).getUnitUserAttributeComponents( );
     }
 
     /**
@@ -73,7 +72,7 @@ public final class UnitUserAttributeManager
      */
     public static List<IUnitUserAttributeService> getListUnitUserAttributeService( )
     {
-        return SpringContextService.getBeansOfType( IUnitUserAttributeService.class );
+        return UnitExtensionRegistry.getInstance( ).getUnitUserAttributeServices( );
     }
 
     /**
@@ -90,11 +89,13 @@ public final class UnitUserAttributeManager
      */
     public static void fillModel( HttpServletRequest request, AdminUser adminUser, Map<String, Object> model, String strMark )
     {
-        for ( IUnitUserAttributeComponent component : getListUnitUserAttributeComponents( ) )
+        List<IUnitUserAttributeComponent> listComponents = getListUnitUserAttributeComponents( );
+
+        for ( IUnitUserAttributeComponent component : listComponents )
         {
             component.fillModel( request, model );
         }
 
-        model.put( strMark, getListUnitUserAttributeComponents( ) );
+        model.put( strMark, listComponents );
     }
 }
@@ -35,17 +35,24 @@ package fr.paris.lutece.plugins.unittree.service.unit;
 
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
 import fr.paris.lutece.plugins.unittree.business.unit.UnitHome;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitMembershipIndex;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitTreeSnapshot;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitUserSearch;
+import fr.paris.lutece.plugins.unittree.business.workgroup.WorkgroupMembershipHome;
+import fr.paris.lutece.plugins.unittree.business.workgroup.WorkgroupMembershipSnapshot;
 import fr.paris.lutece.portal.business.user.AdminUser;
 import fr.paris.lutece.portal.business.user.AdminUserHome;
-import fr.paris.lutece.portal.business.workgroup.AdminWorkgroupHome;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
-import fr.paris.lutece.util.ReferenceItem;
-import fr.paris.lutece.util.ReferenceList;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -76,28 +83,72 @@ public class UnitUserService implements IUnitUserService
         return AdminUserHome.findByPrimaryKey( nIdUser );
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Integer, AdminUser> getUsers( Collection<Integer> listIdUsers )
+    {
+        return UnitHome.findUsersByPrimaryKeys( listIdUsers );
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public List<AdminUser> getUsers( int nIdUnit, Map<String, Unit> mapIdUserUnit, boolean isInDepthSearch )
     {
-        List<AdminUser> listAdminUsers = new ArrayList<>( );
+        Unit unit = _unitService.getUnit( nIdUnit, false );
+
+        if ( unit == null )
+        {
+            return new ArrayList<>( );
+        }
+
+        List<Unit> listUnits = new ArrayList<>( );
+        listUnits.add( unit );
+
+        if ( !isInDepthSearch )
+        {
+            return getUsers( listUnits, UnitHome.getMembershipIndex( ), mapIdUserUnit );
+        }
+
+        // The unit first, then its sub units in depth first order, with the assignments of the whole sub tree read in one query
+        listUnits.addAll( _unitService.getAllSubUnits( unit, false ) );
+
+        return getUsers( listUnits, UnitHome.findSubTreeMemberships( nIdUnit ), mapIdUserUnit );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int countUsers( UnitUserSearch search )
+    {
+        return UnitHome.countUsersBySearch( search );
+    }
 
-        // First add the users from the current unit
-        listAdminUsers.addAll( getUsers( nIdUnit, mapIdUserUnit ) );
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<AdminUser> getUsers( UnitUserSearch search, int nOffset, int nLimit, Map<String, Unit> mapIdUserUnit )
+    {
+        Map<Integer, Integer> mapIdUserIdUnit = new HashMap<>( );
+        List<AdminUser> listUsers = UnitHome.findUsersBySearch( search, nOffset, nLimit, mapIdUserIdUnit );
+        Map<Integer, Unit> mapUnits = _unitService.getUnits( new HashSet<>( mapIdUserIdUnit.values( ) ), false );
 
-        if ( isInDepthSearch )
+        for ( Map.Entry<Integer, Integer> entry : mapIdUserIdUnit.entrySet( ) )
         {
-            // Then add the users from the sub units
-            for ( Unit subUnit : _unitService.getSubUnits( nIdUnit, false ) )
+            Unit unit = mapUnits.get( entry.getValue( ) );
+
+            if ( unit != null )
             {
-                // Recursive function in order to get all users from all sub units of the unit
-                listAdminUsers.addAll( getUsers( subUnit.getIdUnit( ), mapIdUserUnit, isInDepthSearch ) );
+                mapIdUserUnit.put( Integer.toString( entry.getKey( ) ), unit );
             }
         }
 
-        return listAdminUsers;
+        return listUsers;
     }
 
     /**
@@ -109,9 +160,16 @@ public class UnitUserService implements IUnitUserService
         List<AdminUser> listUsers = new ArrayList<>( );
         Unit unit = _unitService.getUnit( nIdUnit, false );
 
+        if ( unit == null )
+        {
+            return listUsers;
+        }
+
+        AvailableUserFilter filter = new AvailableUserFilter( currentUser, unit, bMultiAffectationEnabled );
+
         for ( AdminUser user : AdminUserHome.findUserList( ) )
         {
-            if ( isUserAvailable( currentUser, user, unit, bMultiAffectationEnabled ) )
+            if ( filter.isUserAvailable( user ) )
             {
                 listUsers.add( user );
             }
@@ -139,10 +197,7 @@ public class UnitUserService implements IUnitUserService
     @Override
     public void doProcessAddUser( int nIdUser, AdminUser currentUser, HttpServletRequest request )
     {
-        for ( IUnitUserAttributeService service : UnitUserAttributeManager.getListUnitUserAttributeService( ) )
-        {
-            service.doAddUser( nIdUser, currentUser, request );
-        }
+        UnitExtensionRegistry.getInstance( ).doAddUser( nIdUser, currentUser, request );
     }
 
     /**
@@ -151,10 +206,7 @@ public class UnitUserService implements IUnitUserService
     @Override
     public void doProcessModifyUser( int nIdUser, AdminUser currentUser, HttpServletRequest request )
     {
-        for ( IUnitUserAttributeService service : UnitUserAttributeManager.getListUnitUserAttributeService( ) )
-        {
-            service.doModifyUser( nIdUser, currentUser, request );
-        }
+        UnitExtensionRegistry.getInstance( ).doModifyUser( nIdUser, currentUser, request );
     }
 
     /**
@@ -163,10 +215,7 @@ public class UnitUserService implements IUnitUserService
     @Override
     public void doProcessRemoveUser( int nIdUser, AdminUser currentUser, HttpServletRequest request )
     {
-        for ( IUnitUserAttributeService service : UnitUserAttributeManager.getListUnitUserAttributeService( ) )
-        {
-            service.doRemoveUser( nIdUser, currentUser, request );
-        }
+        UnitExtensionRegistry.getInstance( ).doRemoveUser( nIdUser, currentUser, request );
     }
 
     // CHECKS
@@ -191,7 +240,7 @@ public class UnitUserService implements IUnitUserService
     {
         if ( !isUserInUnit( nIdUser, nIdUnit ) )
         {
-            Unit unit = UnitHome.findByPrimaryKey( nIdUnit );
+            Unit unit = _unitService.getUnit( nIdUnit, false );
             List<Unit> listUnits = _unitService.getUnitsByIdUser( nIdUser, false );
             boolean bMultiAffectationEnabled = isMultiAffectationEnabled( );
 
@@ -216,6 +265,64 @@ public class UnitUserService implements IUnitUserService
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional( "unittree.transactionManager" )
+    public Map<Integer, Boolean> addUsersToUnit( int nIdUnit, int [ ] idsUser )
+    {
+        Map<Integer, Boolean> mapOutcomes = new LinkedHashMap<>( );
+        UnitMembershipIndex index = UnitHome.getMembershipIndex( );
+        UnitTreeSnapshot snapshot = UnitHome.getTreeSnapshot( );
+        boolean bUnitExists = snapshot.contains( nIdUnit );
+        boolean bMultiAffectationEnabled = isMultiAffectationEnabled( );
+        int [ ] idsUserToAdd = new int [ idsUser.length];
+        int nUsersToAdd = 0;
+        int [ ] idsUnitToLeave = new int [ 0];
+        int [ ] idsUserToLeave = new int [ 0];
+        int nUnitsToLeave = 0;
+
+        for ( int nIdUser : idsUser )
+        {
+            if ( mapOutcomes.containsKey( nIdUser ) )
+            {
+                continue;
+            }
+
+            int [ ] idsUnit = index.getIdsUnit( nIdUser );
+            boolean bAdd = bUnitExists && !index.isUserInUnit( nIdUser, nIdUnit ) && ( bMultiAffectationEnabled || ( idsUnit.length == 0 ) );
+
+            if ( bAdd )
+            {
+                // The user leaves the sub units of the unit
+                for ( int nIdUserUnit : idsUnit )
+                {
+                    if ( snapshot.isParent( nIdUnit, nIdUserUnit ) )
+                    {
+                        if ( nUnitsToLeave == idsUnitToLeave.length )
+                        {
+                            idsUnitToLeave = Arrays.copyOf( idsUnitToLeave, ( 2 * nUnitsToLeave ) + 1 );
+                            idsUserToLeave = Arrays.copyOf( idsUserToLeave, ( 2 * nUnitsToLeave ) + 1 );
+                        }
+
+                        idsUnitToLeave [nUnitsToLeave] = nIdUserUnit;
+                        idsUserToLeave [nUnitsToLeave++] = nIdUser;
+                    }
+                }
+
+                idsUserToAdd [nUsersToAdd++] = nIdUser;
+            }
+
+            mapOutcomes.put( nIdUser, bAdd );
+        }
+
+        UnitHome.removeUsersFromUnits( idsUnitToLeave, idsUserToLeave, nUnitsToLeave );
+        UnitHome.addUsersToUnit( nIdUnit, Arrays.copyOf( idsUserToAdd, nUsersToAdd ) );
+
+        return mapOutcomes;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -248,106 +355,122 @@ public class UnitUserService implements IUnitUserService
     // PRIVATE METHODS
 
     /**
-     * Tell if 2 users have groups in common
+     * Get the list of {@link AdminUser} assigned to the given units, loading the users in batch
      * 
-     * @param user1
-     *            User1
-     * @param user2
-     *            User2
-     * @return true or false
+     * @param listUnits
+     *            the units
+     * @param memberships
+     *            the index of the users assigned to the units
+     * @param mapIdUserUnit
+     *            the map of <idUser, Unit>
+     * @return a list of {@link AdminUser}, in the order of the units
      */
-    private boolean haveCommonWorkgroups( AdminUser user1, AdminUser user2 )
+    private List<AdminUser> getUsers( List<Unit> listUnits, UnitMembershipIndex memberships, Map<String, Unit> mapIdUserUnit )
     {
-        ReferenceList workgroups = AdminWorkgroupHome.getUserWorkgroups( user1 );
+        List<Integer> listIdUsers = new ArrayList<>( );
 
-        if ( CollectionUtils.isEmpty( workgroups ) )
+        for ( Unit unit : listUnits )
         {
-            return true;
+            for ( int nIdUser : memberships.getIdsUser( unit.getIdUnit( ) ) )
+            {
+                listIdUsers.add( nIdUser );
+            }
         }
 
-        for ( ReferenceItem item : workgroups )
+        Map<Integer, AdminUser> mapUsers = getUsers( listIdUsers );
+        List<AdminUser> listUsers = new ArrayList<>( );
+
+        for ( Unit unit : listUnits )
         {
-            if ( AdminWorkgroupHome.isUserInWorkgroup( user2, item.getCode( ) ) )
+            for ( int nIdUser : memberships.getIdsUser( unit.getIdUnit( ) ) )
             {
-                return true;
+                AdminUser user = mapUsers.get( nIdUser );
+
+                if ( user != null )
+                {
+                    listUsers.add( user );
+                    mapIdUserUnit.put( Integer.toString( user.getUserId( ) ), unit );
+                }
             }
         }
 
-        return false;
+        return listUsers;
     }
 
     /**
-     * Check if the user is available
-     * 
-     * @param currentUser
-     *            the current user
-     * @param userToCheck
-     *            the user to check
-     * @param unit
-     *            the unit to check if the user is available for
-     * @param bMultiAffectationEnabled
-     *            Indicates if this method should allow a user to be in several units, or if it should return false if he is already in a unit.
-     * @return true if the user is available, false otherwise
+     * Filter of the users available for a unit. Everything the filter needs is loaded once, when it is built, so that each user is then checked in
+     * memory.
      */
-    private boolean isUserAvailable( AdminUser currentUser, AdminUser userToCheck, Unit unit, boolean bMultiAffectationEnabled )
+    private final class AvailableUserFilter
     {
-        List<Unit> listUnits = _unitService.getUnitsByIdUser( userToCheck.getUserId( ), false );
-
-        if ( !bMultiAffectationEnabled && CollectionUtils.isNotEmpty( listUnits ) )
+        private final AdminUser _currentUser;
+        private final boolean _bMultiAffectationEnabled;
+        private final UnitMembershipIndex _memberships;
+        private final int [ ] _idsUnitAndParents;
+        private final WorkgroupMembershipSnapshot _workgroups;
+
+        /**
+         * Constructor
+         * 
+         * @param currentUser
+         *            the current user
+         * @param unit
+         *            the unit to check if the users are available for
+         * @param bMultiAffectationEnabled
+         *            Indicates if a user can be in several units, or if the users already in a unit are not available.
+         */
+        AvailableUserFilter( AdminUser currentUser, Unit unit, boolean bMultiAffectationEnabled )
         {
-            return false;
-        }
+            _currentUser = currentUser;
+            _bMultiAffectationEnabled = bMultiAffectationEnabled;
+            _memberships = UnitHome.getMembershipIndex( );
 
-        for ( Unit userUnit : listUnits )
-        {
-            // If the user is in the unit or in one if its parents
-            if ( ( userUnit.getIdUnit( ) == unit.getIdUnit( ) ) || _unitService.isParent( userUnit, unit ) )
+            List<Unit> listUnitAndParents = _unitService.getListParentUnits( unit );
+            _idsUnitAndParents = new int [ listUnitAndParents.size( )];
+
+            for ( int i = 0; i < _idsUnitAndParents.length; i++ )
             {
-                return false;
+                _idsUnitAndParents [i] = listUnitAndParents.get( i ).getIdUnit( );
             }
-        }
 
-        // Check if the current user is admin => visibility to all users
-        if ( currentUser.isAdmin( ) )
-        {
-            return true;
+            _workgroups = currentUser.isAdmin( ) ? null : WorkgroupMembershipHome.getSnapshot( );
         }
 
-        // Check if the current user is parent to the user to check
-        // Then check if they have the same workgroup, or the user to check does not have any workgroup
-        return currentUser.isParent( userToCheck )
-                && ( haveCommonWorkgroups( currentUser, userToCheck ) || !AdminWorkgroupHome.checkUserHasWorkgroup( userToCheck.getUserId( ) ) );
-    }
-
-    /**
-     * Get the list of {@link AdminUser} from a given id unit
-     * 
-     * @param nIdUnit
-     *            the id unit
-     * @param mapIdUserUnit
-     *            the map of <idUser, Unit>
-     * @return a list of {@link AdminUser}
-     */
-    private List<AdminUser> getUsers( int nIdUnit, Map<String, Unit> mapIdUserUnit )
-    {
-        Unit unit = _unitService.getUnit( nIdUnit, false );
-        List<AdminUser> listUsers = new ArrayList<>( );
-        List<Integer> listIdUsers = UnitHome.findIdsUser( nIdUnit );
-
-        if ( CollectionUtils.isNotEmpty( listIdUsers ) )
+        /**
+         * Check if the user is available
+         * 
+         * @param userToCheck
+         *            the user to check
+         * @return true if the user is available, false otherwise
+         */
+        boolean isUserAvailable( AdminUser userToCheck )
         {
-            for ( int nIdUser : listIdUsers )
+            int nIdUser = userToCheck.getUserId( );
+
+            if ( !_bMultiAffectationEnabled && _memberships.hasUnit( nIdUser ) )
             {
-                AdminUser user = AdminUserHome.findByPrimaryKey( nIdUser );
+                return false;
+            }
 
-                if ( user != null )
+            // If the user is in the unit or in one if its parents
+            for ( int nIdUnit : _idsUnitAndParents )
+            {
+                if ( _memberships.isUserInUnit( nIdUser, nIdUnit ) )
                 {
-                    listUsers.add( user );
-                    mapIdUserUnit.put( Integer.toString( user.getUserId( ) ), unit );
+                    return false;
                 }
             }
-        }
 
-        return listUsers;
+            // Check if the current user is admin => visibility to all users
+            if ( _currentUser.isAdmin( ) )
+            {
+                return true;
+            }
+
+            // Check if the current user is parent to the user to check
+            // Then check if they have the same workgroup, or one of them does not have any workgroup
+            return _currentUser.isParent( userToCheck ) && ( !_workgroups.hasWorkgroup( _currentUser.getUserId( ) )
+                    || _workgroups.haveCommonWorkgroups( _currentUser.getUserId( ), nIdUser ) || !_workgroups.hasWorkgroup( nIdUser ) );
+        }
     }
 }
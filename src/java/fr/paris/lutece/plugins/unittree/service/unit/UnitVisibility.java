@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.unit;
+
+import fr.paris.lutece.plugins.unittree.business.unit.CompactUnitTree;
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ *
+ * The units a set of roles may see, for a given version of the unit tree. The visible units are those for which the roles have the SEE_UNIT permission.
+ * The treeable units are the visible units, their sub units and their parent units, that is the units needed to display the visible units as a tree.
+ * Instances are immutable and are shared by all the users having the same roles.
+ *
+ */
+public final class UnitVisibility
+{
+    private final CompactUnitTree _tree;
+    private final long _lTreeVersion;
+    private final BitSet _visibleUnits;
+    private final BitSet _treeableUnits;
+
+    /**
+     * Constructor
+     * 
+     * @param tree
+     *            the tree index
+     * @param lTreeVersion
+     *            the version of the unit tree
+     * @param visibleUnits
+     *            the visible units, as a set of indexes of the tree index. The set is not copied and must not be modified afterwards.
+     */
+    public UnitVisibility( CompactUnitTree tree, long lTreeVersion, BitSet visibleUnits )
+    {
+        _tree = tree;
+        _lTreeVersion = lTreeVersion;
+        _visibleUnits = visibleUnits;
+        _treeableUnits = computeTreeableUnits( tree, visibleUnits );
+    }
+
+    /**
+     * Get the version of the unit tree this visibility has been computed for
+     * 
+     * @return the version of the unit tree
+     */
+    public long getTreeVersion( )
+    {
+        return _lTreeVersion;
+    }
+
+    /**
+     * Get the tree index this visibility has been computed for
+     * 
+     * @return the tree index
+     */
+    public CompactUnitTree getTree( )
+    {
+        return _tree;
+    }
+
+    /**
+     * Get the number of visible units
+     * 
+     * @return the number of visible units
+     */
+    public int getVisibleUnitsCount( )
+    {
+        return _visibleUnits.cardinality( );
+    }
+
+    /**
+     * Check if a unit is visible
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return true if the unit is visible, false otherwise
+     */
+    public boolean isVisible( int nIdUnit )
+    {
+        return isVisibleAt( _tree.indexOf( nIdUnit ) );
+    }
+
+    /**
+     * Check if the unit at a given index of the tree index is visible
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return true if the unit is visible, false otherwise
+     */
+    public boolean isVisibleAt( int nIndex )
+    {
+        return ( nIndex != CompactUnitTree.NONE ) && _visibleUnits.get( nIndex );
+    }
+
+    /**
+     * Check if a unit is part of the tree of the visible units
+     * 
+     * @param nIdUnit
+     *            the id unit
+     * @return true if the unit is visible, or is a sub unit or a parent unit of a visible unit, false otherwise
+     */
+    public boolean isTreeable( int nIdUnit )
+    {
+        return isTreeableAt( _tree.indexOf( nIdUnit ) );
+    }
+
+    /**
+     * Check if the unit at a given index of the tree index is part of the tree of the visible units
+     * 
+     * @param nIndex
+     *            the index of the unit
+     * @return true if the unit is visible, or is a sub unit or a parent unit of a visible unit, false otherwise
+     */
+    public boolean isTreeableAt( int nIndex )
+    {
+        return ( nIndex != CompactUnitTree.NONE ) && ( _tree.getLeft( nIndex ) != CompactUnitTree.NONE ) && _treeableUnits.get( _tree.getLeft( nIndex ) );
+    }
+
+    /**
+     * Keep the visible units of a collection
+     * 
+     * @param units
+     *            the units
+     * @return the visible units, in the order of the collection
+     */
+    public List<Unit> filter( Collection<Unit> units )
+    {
+        List<Unit> listVisibleUnits = new ArrayList<>( );
+
+        for ( Unit unit : units )
+        {
+            if ( ( unit != null ) && isVisible( unit.getIdUnit( ) ) )
+            {
+                listVisibleUnits.add( unit );
+            }
+        }
+
+        return listVisibleUnits;
+    }
+
+    /**
+     * Compute the treeable units from the visible units. The units are visited once, in pre-order, so that a visible sub tree is marked as a whole and
+     * skipped at once.
+     * 
+     * @param tree
+     *            the tree index
+     * @param visibleUnits
+     *            the visible units, as a set of indexes of the tree index
+     * @return the treeable units, as a set of positions in the pre-order of the tree (see {@link CompactUnitTree#getLeft(int)})
+     */
+    private static BitSet computeTreeableUnits( CompactUnitTree tree, BitSet visibleUnits )
+    {
+        BitSet treeableUnits = new BitSet( tree.size( ) );
+
+        for ( int nLeft = 0; ( nLeft < tree.size( ) ) && ( tree.getIndexAt( nLeft ) != CompactUnitTree.NONE ); nLeft++ )
+        {
+            int nIndex = tree.getIndexAt( nLeft );
+
+            if ( visibleUnits.get( nIndex ) )
+            {
+                // The whole sub tree is treeable and is skipped by the next iterations
+                treeableUnits.set( nLeft, tree.getRight( nIndex ) + 1 );
+                nLeft = tree.getRight( nIndex );
+
+                // The parent units are treeable, up to the first one already marked
+                for ( int nParent = tree.getParent( nIndex ); ( nParent != CompactUnitTree.NONE ) && !treeableUnits.get( tree.getLeft( nParent ) ); nParent = tree
+                        .getParent( nParent ) )
+                {
+                    treeableUnits.set( tree.getLeft( nParent ) );
+                }
+            }
+        }
+
+        return treeableUnits;
+    }
+}
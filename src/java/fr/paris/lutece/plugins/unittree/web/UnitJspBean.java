@@ -33,8 +33,13 @@
  */
 package fr.paris.lutece.plugins.unittree.web;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,27 +49,38 @@ import javax.servlet.http.HttpServletResponse;
 import javax.validation.ConstraintViolation;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import fr.paris.lutece.plugins.unittree.business.action.UnitAction;
 import fr.paris.lutece.plugins.unittree.business.action.UnitUserAction;
-import fr.paris.lutece.plugins.unittree.business.unit.TreeUnit;
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
 import fr.paris.lutece.plugins.unittree.service.UnitErrorException;
+import fr.paris.lutece.plugins.unittree.service.importer.IUnitImportService;
+import fr.paris.lutece.plugins.unittree.service.importer.UnitImportError;
+import fr.paris.lutece.plugins.unittree.service.importer.UnitImportFormat;
+import fr.paris.lutece.plugins.unittree.service.importer.UnitImportResult;
+import fr.paris.lutece.plugins.unittree.service.importer.UnitImportService;
 import fr.paris.lutece.plugins.unittree.service.rbac.UnittreeRBACRecursiveType;
-import fr.paris.lutece.plugins.unittree.service.unit.IUnitRemovalListener;
 import fr.paris.lutece.plugins.unittree.service.unit.IUnitService;
 import fr.paris.lutece.plugins.unittree.service.unit.IUnitUserService;
 import fr.paris.lutece.plugins.unittree.service.unit.UnitAttributeManager;
+import fr.paris.lutece.plugins.unittree.service.unit.UnitExtensionRegistry;
 import fr.paris.lutece.plugins.unittree.service.unit.UnitResourceIdService;
 import fr.paris.lutece.plugins.unittree.service.unit.UnitService;
 import fr.paris.lutece.plugins.unittree.service.unit.UnitUserAttributeManager;
+import fr.paris.lutece.plugins.unittree.service.unit.UnitVisibility;
 import fr.paris.lutece.plugins.unittree.web.action.IUnitPluginAction;
+import fr.paris.lutece.plugins.unittree.web.unit.UnitRequestCache;
 import fr.paris.lutece.plugins.unittree.web.action.IUnitSearchFields;
 import fr.paris.lutece.plugins.unittree.web.action.UnitUserSearchFields;
 import fr.paris.lutece.portal.business.user.AdminUser;
 import fr.paris.lutece.portal.service.admin.AccessDeniedException;
-import fr.paris.lutece.portal.service.admin.AdminUserService;
 import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.service.message.AdminMessage;
 import fr.paris.lutece.portal.service.message.AdminMessageService;
@@ -79,7 +95,9 @@ import fr.paris.lutece.portal.web.constants.Messages;
 import fr.paris.lutece.portal.web.pluginaction.DefaultPluginActionResult;
 import fr.paris.lutece.portal.web.pluginaction.IPluginActionResult;
 import fr.paris.lutece.portal.web.pluginaction.PluginActionManager;
+import fr.paris.lutece.portal.web.upload.MultipartHttpServletRequest;
 import fr.paris.lutece.util.beanvalidation.BeanValidationUtil;
+import fr.paris.lutece.util.ReferenceList;
 import fr.paris.lutece.util.html.HtmlTemplate;
 import fr.paris.lutece.util.url.UrlItem;
 
@@ -103,6 +121,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
     private static final String PROPERTY_ADD_USERS_PAGE_TITLE = "unittree.addUsers.pageTitle";
     private static final String PROPERTY_MOVE_USER_PAGE_TITLE = "unittree.moveUser.pageTitle";
     private static final String PROPERTY_MOVE_UNIT_PAGE_TITLE = "unittree.moveSubTree.pageTitle";
+    private static final String PROPERTY_IMPORT_UNITS_PAGE_TITLE = "unittree.importUnits.pageTitle";
 
     // MESSAGES
     private static final String MESSAGE_ERROR_GENERIC_MESSAGE = "unittree.message.error.genericMessage";
@@ -110,14 +129,15 @@ public class UnitJspBean extends PluginAdminPageJspBean
     private static final String MESSAGE_ERROR_UNIT_HAS_SUB_UNITS = "unittree.message.error.unitHasSubUnits";
     private static final String MESSAGE_ERROR_USER_ALREADY_IN_UNIT = "unittree.message.error.userAlreadyInUnit";
     private static final String MESSAGE_ERROR_NO_SUB_UNITS = "unittree.message.error.noSubUnits";
+    private static final String MESSAGE_USERS_NOT_ADDED = "unittree.message.usersNotAdded";
     private static final String MESSAGE_CONFIRM_REMOVE_UNIT = "unittree.message.removeUnit";
     private static final String MESSAGE_CONFIRM_REMOVE_USER = "unittree.message.removeUser";
     private static final String MESSAGE_ACCESS_DENIED = "unittree.message.accessDenied";
     private static final String MESSAGE_SUB_TREE_MOVED = "unittree.moveSubTree.subTreeMoved";
     private static final String MESSAGE_CANT_MOVE_SUB_TREE_TO_CHILD = "unittree.moveSubTree.cantMoveSubTreeToChild";
+    private static final String MESSAGE_ERROR_IMPORT_FILE = "unittree.importUnits.errorFile";
 
     // MARKS
-    private static final String MARK_UNIT_TREE = "unitTree";
     private static final String MARK_PARENT_UNIT = "parentUnit";
     private static final String MARK_LIST_SUB_UNITS = "listSubUnits";
     private static final String MARK_LIST_UNIT_ACTIONS = "listUnitActions";
@@ -133,6 +153,10 @@ public class UnitJspBean extends PluginAdminPageJspBean
     private static final String MARK_MULTI_AFFECTATION_ENABLED = "multi_affection_enabled";
     private static final String MARK_FILTER_AFFECTED_USERS = "filterAffectedUsers";
     private static final String MARK_ADMIN_AVATAR = "adminAvatar";
+    private static final String MARK_CAN_IMPORT_UNITS = "canImportUnits";
+    private static final String MARK_ERROR_MESSAGE = "errorMessage";
+    private static final String MARK_IMPORT_RESULT = "importResult";
+    private static final String MARK_LIST_IMPORT_ERRORS = "listImportErrors";
 
     // PARAMETERS
     private static final String PARAMETER_CANCEL = "cancel";
@@ -145,6 +169,8 @@ public class UnitJspBean extends PluginAdminPageJspBean
     private static final String PARAMETER_ID_SELECTED_UNIT = "idSelectedUnit";
     private static final String PARAMETER_FILTER_AFFECTED_USERS = "filterAffectedUsers";
     private static final String PARAMETER_ID_UNIT_PARENT = "idUnitParent";
+    private static final String PARAMETER_NODE = "node";
+    private static final String PARAMETER_FILE = "file";
 
     // TEMPLATES
     private static final String TEMPLATE_MANAGE_UNITS = "/admin/plugins/unittree/manage_units.html";
@@ -153,6 +179,8 @@ public class UnitJspBean extends PluginAdminPageJspBean
     private static final String TEMPLATE_ADD_USERS = "/admin/plugins/unittree/add_users.html";
     private static final String TEMPLATE_MOVE_USER = "/admin/plugins/unittree/move_user.html";
     private static final String TEMPLATE_MOVE_SUB_UNIT = "admin/plugins/unittree/move_sub_tree.html";
+    private static final String TEMPLATE_IMPORT_UNITS = "/admin/plugins/unittree/import_units.html";
+    private static final String TEMPLATE_IMPORT_UNITS_RESULT = "/admin/plugins/unittree/import_units_result.html";
 
     // JSP
     private static final String JSP_MANAGE_UNITS = "ManageUnits.jsp";
@@ -162,14 +190,30 @@ public class UnitJspBean extends PluginAdminPageJspBean
     private static final String JSP_URL_ADD_USERS = "jsp/admin/plugins/unittree/AddUsers.jsp";
     private static final String JSP_URL_DO_REMOVE_USER = "jsp/admin/plugins/unittree/DoRemoveUser.jsp";
 
+    // JSON
+    private static final String JSON_ROOT_NODE = "#";
+    private static final String JSON_NODE_PREFIX = "node-";
+    private static final String JSON_ID = "id";
+    private static final String JSON_TEXT = "text";
+    private static final String JSON_CHILDREN = "children";
+    private static final String JSON_STATE = "state";
+    private static final String JSON_OPENED = "opened";
+    private static final String JSON_SELECTED = "selected";
+    private static final String JSON_A_ATTR = "a_attr";
+    private static final String JSON_HREF = "href";
+    private static final String JSON_DATA = "data";
+    private static final String JSON_CHILDREN_COUNT = "childrenCount";
+    private static final ObjectMapper _mapper = new ObjectMapper( );
+
     // SERVICES
     private transient IUnitService _unitService = SpringContextService.getBean( UnitService.BEAN_UNIT_SERVICE );
     private transient IUnitUserService _unitUserService = SpringContextService.getBean( BEAN_UNIT_USER_SERVICE );
+    private transient IUnitImportService _unitImportService = SpringContextService.getBean( UnitImportService.BEAN_NAME );
     private transient IUnitSearchFields _unitUserSearchFields = new UnitUserSearchFields( );
 
     // INSTANCE VARS
     private boolean _bAdminAvatar = PluginService.isPluginEnable( "adminavatar" );
-    private TreeUnit _fullUnitTree;
+    private transient volatile UnitVisibility _unitVisibility;
 
     /**
      * Get manage units
@@ -203,7 +247,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         if ( StringUtils.isNotBlank( strIdUnit ) && StringUtils.isNumeric( strIdUnit ) )
         {
             int nIdUnit = Integer.parseInt( strIdUnit );
-            unit = _unitService.getUnit( nIdUnit, false );
+            unit = getUnit( request, nIdUnit );
         }
 
         if ( unit == null )
@@ -217,26 +261,20 @@ public class UnitJspBean extends PluginAdminPageJspBean
             reInitSearchFields( request );
         }
 
-        if ( _fullUnitTree == null )
-        {
-            initTreeUnit( request );
-        }
-
         Map<String, Object> model = new HashMap<>( );
 
         // Add elements for user search form in the model
         Map<String, Unit> mapIdUserUnit = new HashMap<>( );
         _unitUserSearchFields.setInDepthSearch( request );
 
-        List<AdminUser> listUsers = _unitUserService.getUsers( unit.getIdUnit( ), mapIdUserUnit, _unitUserSearchFields.isInDepthSearch( ) );
         String strBaseUrl = AppPathService.getBaseUrl( request ) + JSP_URL_MANAGE_UNITS;
-        _unitUserSearchFields.fillModelForUserSearchForm( listUsers, strBaseUrl, request, model, unit );
+        _unitUserSearchFields.fillModelForUnitUserSearchForm( _unitUserService, strBaseUrl, request, model, unit, mapIdUserUnit );
 
-        model.put( MARK_UNIT_TREE, _fullUnitTree );
         model.put( MARK_UNIT, unit );
         model.put( MARK_LIST_SUB_UNITS, _unitService.getSubUnits( unit.getIdUnit( ), false ) );
         model.put( MARK_MAP_ID_USER_UNIT, mapIdUserUnit );
         model.put( MARK_ADMIN_AVATAR, _bAdminAvatar );
+        model.put( MARK_CAN_IMPORT_UNITS, canImportUnits( ) );
 
         // Add actions in the model
         model.put( MARK_LIST_UNIT_ACTIONS,
@@ -254,6 +292,60 @@ public class UnitJspBean extends PluginAdminPageJspBean
         return result;
     }
 
+    /**
+     * Get the JSON of the visible sub units of a node of the tree, in the format of jstree. The root node ("#") is answered with the root unit, opened
+     * down to the selected unit : the other nodes are loaded when they are expanded.
+     * 
+     * @param request
+     *            the HTTP request
+     * @return the JSON array of the nodes
+     */
+    public String getUnitChildren( HttpServletRequest request )
+    {
+        UnitVisibility visibility = getUnitVisibility( );
+        String strNode = StringUtils.removeStart( request.getParameter( PARAMETER_NODE ), JSON_NODE_PREFIX );
+        ArrayNode jsonNodes = _mapper.createArrayNode( );
+
+        if ( JSON_ROOT_NODE.equals( strNode ) )
+        {
+            Unit unitSelected = null;
+            String strIdUnit = request.getParameter( PARAMETER_ID_UNIT );
+
+            if ( StringUtils.isNotBlank( strIdUnit ) && StringUtils.isNumeric( strIdUnit ) )
+            {
+                unitSelected = getUnit( request, Integer.parseInt( strIdUnit ) );
+            }
+
+            Unit unitRoot = _unitService.getRootUnit( false );
+
+            if ( unitSelected == null )
+            {
+                unitSelected = unitRoot;
+            }
+
+            // The selected unit and its parents are opened
+            Set<Integer> setOpenedUnits = new HashSet<>( );
+
+            for ( Unit unitParent : _unitService.getListParentUnits( unitSelected ) )
+            {
+                setOpenedUnits.add( unitParent.getIdUnit( ) );
+            }
+
+            setOpenedUnits.add( unitRoot.getIdUnit( ) );
+            jsonNodes.add( getJsonNode( unitRoot, visibility, setOpenedUnits, unitSelected.getIdUnit( ) ) );
+        }
+        else
+            if ( StringUtils.isNumeric( strNode ) )
+            {
+                for ( Unit subUnit : visibility.filter( _unitService.getSubUnits( Integer.parseInt( strNode ), false ) ) )
+                {
+                    jsonNodes.add( getJsonNode( subUnit, visibility, Collections.emptySet( ), Unit.ID_NULL ) );
+                }
+            }
+
+        return jsonNodes.toString( );
+    }
+
     /**
      * Get create unit
      * 
@@ -273,7 +365,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         if ( StringUtils.isNotBlank( strIdParent ) && StringUtils.isNumeric( strIdParent ) )
         {
             int nIdParent = Integer.parseInt( strIdParent );
-            unitParent = _unitService.getUnit( nIdParent, false );
+            unitParent = getUnit( request, nIdParent );
         }
 
         if ( unitParent == null )
@@ -332,7 +424,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
             throw new AccessDeniedException( strErrorMessage );
         }
 
-        Unit parentUnit = _unitService.getUnit( unit.getIdParent( ), false );
+        Unit parentUnit = getUnit( request, unit.getIdParent( ) );
 
         Map<String, Object> model = new HashMap<>( );
         model.put( MARK_UNIT, unit );
@@ -361,7 +453,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         }
 
         // Check permissions
-        if ( !_unitService.isAuthorized( strIdUnit, UnitResourceIdService.PERMISSION_DELETE, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
+        if ( !isAuthorized( request, strIdUnit, UnitResourceIdService.PERMISSION_DELETE, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
         }
@@ -392,7 +484,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         if ( StringUtils.isNotBlank( strIdUnit ) && StringUtils.isNumeric( strIdUnit ) )
         {
             int nIdUnit = Integer.parseInt( strIdUnit );
-            unit = _unitService.getUnit( nIdUnit, false );
+            unit = getUnit( request, nIdUnit );
         }
 
         if ( unit == null )
@@ -456,7 +548,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
                 && StringUtils.isNumeric( strIdUser ) )
         {
             nIdUnit = Integer.parseInt( strIdUnit );
-            unit = _unitService.getUnit( nIdUnit, false );
+            unit = getUnit( request, nIdUnit );
             nIdUser = Integer.parseInt( strIdUser );
             user = _unitUserService.getUser( nIdUser );
         }
@@ -481,11 +573,11 @@ public class UnitJspBean extends PluginAdminPageJspBean
                 && ( StringUtils.isNumeric( strIdSelectedUnit ) || Integer.toString( Unit.ID_NULL ).equals( strIdSelectedUnit ) ) )
         {
             int nIdSelectedUnit = Integer.parseInt( strIdSelectedUnit );
-            Unit selectedUnit = _unitService.getUnit( nIdSelectedUnit, false );
+            Unit selectedUnit = getUnit( request, nIdSelectedUnit );
 
             if ( selectedUnit != null )
             {
-                unitParent = _unitService.getUnit( selectedUnit.getIdParent( ), false );
+                unitParent = getUnit( request, selectedUnit.getIdParent( ) );
             }
 
             listSubUnits = _unitService.getSubUnits( nIdSelectedUnit, false );
@@ -494,11 +586,11 @@ public class UnitJspBean extends PluginAdminPageJspBean
         if ( listSubUnits == null )
         {
             // We need to get the unit parent parent
-            unitParent = _unitService.getUnit( unit.getIdParent( ), false );
+            unitParent = getUnit( request, unit.getIdParent( ) );
 
             if ( unitParent != null )
             {
-                unitParent = _unitService.getUnit( unitParent.getIdParent( ), false );
+                unitParent = getUnit( request, unitParent.getIdParent( ) );
             }
 
             listSubUnits = _unitService.getSubUnits( unit.getIdParent( ), false );
@@ -535,7 +627,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         }
 
         // Check permissions
-        if ( !_unitService.isAuthorized( strIdUnit, UnitResourceIdService.PERMISSION_REMOVE_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
+        if ( !isAuthorized( request, strIdUnit, UnitResourceIdService.PERMISSION_REMOVE_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
         }
@@ -547,6 +639,29 @@ public class UnitJspBean extends PluginAdminPageJspBean
         return AdminMessageService.getMessageUrl( request, MESSAGE_CONFIRM_REMOVE_USER, url.getUrl( ), AdminMessage.TYPE_CONFIRMATION );
     }
 
+    /**
+     * Get import units
+     * 
+     * @param request
+     *            the HTTP request
+     * @return the HTML code
+     * @throws AccessDeniedException
+     *             exception if the user does not have the permission
+     */
+    public String getImportUnits( HttpServletRequest request ) throws AccessDeniedException
+    {
+        setPageTitleProperty( PROPERTY_IMPORT_UNITS_PAGE_TITLE );
+
+        // Check permissions
+        if ( !canImportUnits( ) )
+        {
+            String strErrorMessage = I18nService.getLocalizedString( MESSAGE_ACCESS_DENIED, getLocale( ) );
+            throw new AccessDeniedException( strErrorMessage );
+        }
+
+        return getImportUnitsPage( null );
+    }
+
     // DO
 
     /**
@@ -573,7 +688,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         int nIdParent = Integer.parseInt( strIdParent );
 
         // Check permissions
-        if ( !_unitService.isAuthorized( strIdParent, UnitResourceIdService.PERMISSION_CREATE, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE )
+        if ( !isAuthorized( request, strIdParent, UnitResourceIdService.PERMISSION_CREATE, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE )
                 || !_unitService.canCreateSubUnit( nIdParent ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
@@ -604,6 +719,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         try
         {
             _unitService.createUnit( unit, request );
+            UnitRequestCache.clear( request );
         }
         catch( Exception ex )
         {
@@ -611,11 +727,11 @@ public class UnitJspBean extends PluginAdminPageJspBean
             AppLogService.error( ex.getMessage( ) + " when creating an unit ", ex );
             // Revert
             _unitService.removeUnit( unit.getIdUnit( ), request );
+            UnitRequestCache.clear( request );
 
             return AdminMessageService.getMessageUrl( request, MESSAGE_ERROR_GENERIC_MESSAGE, AdminMessage.TYPE_ERROR );
         }
 
-        initTreeUnit( request );
         UrlItem url = new UrlItem( JSP_MANAGE_UNITS );
 
         return url.getUrl( );
@@ -649,7 +765,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
 
         int nIdUnit = Integer.parseInt( strIdUnit );
 
-        Unit unit = _unitService.getUnit( nIdUnit, false );
+        Unit unit = getUnit( request, nIdUnit );
 
         if ( unit == null )
         {
@@ -685,6 +801,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         try
         {
             _unitService.updateUnit( unit, request );
+            UnitRequestCache.clear( request );
         }
         catch( Exception ex )
         {
@@ -694,7 +811,6 @@ public class UnitJspBean extends PluginAdminPageJspBean
             return AdminMessageService.getMessageUrl( request, MESSAGE_ERROR_GENERIC_MESSAGE, AdminMessage.TYPE_ERROR );
         }
 
-        initTreeUnit( request );
         UrlItem url = new UrlItem( JSP_MANAGE_UNITS );
 
         return url.getUrl( );
@@ -717,14 +833,14 @@ public class UnitJspBean extends PluginAdminPageJspBean
         }
 
         // Check permissions
-        if ( !_unitService.isAuthorized( strIdUnit, UnitResourceIdService.PERMISSION_DELETE, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
+        if ( !isAuthorized( request, strIdUnit, UnitResourceIdService.PERMISSION_DELETE, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
         }
 
         int nIdUnit = Integer.parseInt( strIdUnit );
         int nIdParent = Unit.ID_ROOT;
-        Unit unit = _unitService.getUnit( nIdUnit, false );
+        Unit unit = getUnit( request, nIdUnit );
 
         if ( unit != null )
         {
@@ -738,19 +854,16 @@ public class UnitJspBean extends PluginAdminPageJspBean
             try
             {
                 // Notify registered listener
-                List<IUnitRemovalListener> listRemovalListener = SpringContextService.getBeansOfType( IUnitRemovalListener.class );
-                for ( IUnitRemovalListener removalLister : listRemovalListener )
+                try
+                {
+                    UnitExtensionRegistry.getInstance( ).notifyRemoval( nIdUnit );
+                }
+                catch( UnitErrorException e )
                 {
-                    try
-                    {
-                        removalLister.notify( nIdUnit );
-                    }
-                    catch( UnitErrorException e )
-                    {
-                        return AdminMessageService.getMessageUrl( request, e.getI18nErrorMessage( ), AdminMessage.TYPE_STOP );
-                    }
+                    return AdminMessageService.getMessageUrl( request, e.getI18nErrorMessage( ), AdminMessage.TYPE_STOP );
                 }
                 _unitService.removeUnit( nIdUnit, request );
+                UnitRequestCache.clear( request );
             }
             catch( Exception ex )
             {
@@ -761,7 +874,6 @@ public class UnitJspBean extends PluginAdminPageJspBean
             }
         }
 
-        initTreeUnit( request );
         UrlItem url = new UrlItem( JSP_MANAGE_UNITS );
         url.addParameter( PARAMETER_ID_UNIT, nIdParent );
 
@@ -788,7 +900,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
             return url.getUrl( );
         }
 
-        if ( !_unitService.isAuthorized( strIdUnit, UnitResourceIdService.PERMISSION_ADD_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
+        if ( !isAuthorized( request, strIdUnit, UnitResourceIdService.PERMISSION_ADD_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
         }
@@ -801,7 +913,10 @@ public class UnitJspBean extends PluginAdminPageJspBean
         }
 
         int nIdUnit = Integer.parseInt( strIdUnit );
+        int [ ] idsUser = new int [ listIdUsers.length];
+        int nUsers = 0;
 
+        // All the users are checked before any of them is added
         for ( String strIdUser : listIdUsers )
         {
             if ( StringUtils.isNotBlank( strIdUser ) && StringUtils.isNumeric( strIdUser ) )
@@ -813,14 +928,49 @@ public class UnitJspBean extends PluginAdminPageJspBean
                     return AdminMessageService.getMessageUrl( request, MESSAGE_ERROR_USER_ALREADY_IN_UNIT, AdminMessage.TYPE_STOP );
                 }
 
-                _unitUserService.doProcessAddUser( nIdUser, getUser( ), request );
-                _unitUserService.addUserToUnit( nIdUnit, nIdUser );
+                idsUser [nUsers++] = nIdUser;
+            }
+        }
+
+        idsUser = Arrays.copyOf( idsUser, nUsers );
+
+        Map<Integer, Boolean> mapOutcomes = _unitUserService.addUsersToUnit( nIdUnit, idsUser );
+        List<Integer> listRejectedIdUsers = new ArrayList<>( );
+
+        // Only the users actually added to the unit are processed
+        for ( Map.Entry<Integer, Boolean> outcome : mapOutcomes.entrySet( ) )
+        {
+            if ( Boolean.TRUE.equals( outcome.getValue( ) ) )
+            {
+                _unitUserService.doProcessAddUser( outcome.getKey( ), getUser( ), request );
+            }
+            else
+            {
+                listRejectedIdUsers.add( outcome.getKey( ) );
             }
         }
 
         UrlItem url = new UrlItem( JSP_MANAGE_UNITS );
         url.addParameter( PARAMETER_ID_UNIT, nIdUnit );
 
+        if ( !listRejectedIdUsers.isEmpty( ) )
+        {
+            Map<Integer, AdminUser> mapRejectedUsers = _unitUserService.getUsers( listRejectedIdUsers );
+            List<String> listRejectedUsers = new ArrayList<>( listRejectedIdUsers.size( ) );
+
+            for ( Integer nIdUser : listRejectedIdUsers )
+            {
+                AdminUser user = mapRejectedUsers.get( nIdUser );
+                listRejectedUsers.add( ( user != null ) ? user.getAccessCode( ) : String.valueOf( nIdUser ) );
+            }
+
+            Object [ ] args = {
+                    StringUtils.join( listRejectedUsers, ", " )
+            };
+
+            return AdminMessageService.getMessageUrl( request, MESSAGE_USERS_NOT_ADDED, args, url.getUrl( ), AdminMessage.TYPE_WARNING );
+        }
+
         return url.getUrl( );
     }
 
@@ -855,7 +1005,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         }
 
         // Check permissions
-        if ( !_unitService.isAuthorized( strIdUnit, UnitResourceIdService.PERMISSION_MOVE_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
+        if ( !isAuthorized( request, strIdUnit, UnitResourceIdService.PERMISSION_MOVE_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
         }
@@ -883,7 +1033,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
         }
 
         // The user must have the permission to move on both units (from and to)
-        if ( !_unitService.isAuthorized( strIdSelectedUnit, UnitResourceIdService.PERMISSION_MOVE_USER, getUser( ),
+        if ( !isAuthorized( request, strIdSelectedUnit, UnitResourceIdService.PERMISSION_MOVE_USER, getUser( ),
                 UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
@@ -892,8 +1042,8 @@ public class UnitJspBean extends PluginAdminPageJspBean
         int nIdUser = Integer.parseInt( strIdUser );
         int nIdUnit = Integer.parseInt( strIdUnit );
         AdminUser user = _unitUserService.getUser( nIdUser );
-        Unit unit = _unitService.getUnit( nIdUnit, false );
-        Unit selectedUnit = _unitService.getUnit( nIdSelectedUnit, false );
+        Unit unit = getUnit( request, nIdUnit );
+        Unit selectedUnit = getUnit( request, nIdSelectedUnit );
 
         if ( ( user != null ) && ( unit != null ) && ( selectedUnit != null ) )
         {
@@ -940,14 +1090,14 @@ public class UnitJspBean extends PluginAdminPageJspBean
         }
 
         // Check permissions
-        if ( !_unitService.isAuthorized( strIdUnit, UnitResourceIdService.PERMISSION_REMOVE_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
+        if ( !isAuthorized( request, strIdUnit, UnitResourceIdService.PERMISSION_REMOVE_USER, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
         {
             return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
         }
 
         int nIdUnit = Integer.parseInt( strIdUnit );
         int nIdUser = Integer.parseInt( strIdUser );
-        Unit unit = _unitService.getUnit( nIdUnit, false );
+        Unit unit = getUnit( request, nIdUnit );
         AdminUser user = _unitUserService.getUser( nIdUser );
 
         if ( ( unit != null ) && ( user != null ) )
@@ -987,7 +1137,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
 
         String strIdUnitToMove = request.getParameter( PARAMETER_ID_UNIT );
         String strIdUnit = request.getParameter( PARAMETER_ID_UNIT_PARENT );
-        Unit unitToMove = _unitService.getUnit( Integer.parseInt( strIdUnitToMove ), false );
+        Unit unitToMove = getUnit( request, Integer.parseInt( strIdUnitToMove ) );
         int nIdUnit;
 
         if ( StringUtils.isNotBlank( strIdUnit ) )
@@ -999,7 +1149,7 @@ public class UnitJspBean extends PluginAdminPageJspBean
             nIdUnit = unitToMove.getIdParent( );
         }
 
-        Unit unit = _unitService.getUnit( nIdUnit, false );
+        Unit unit = getUnit( request, nIdUnit );
 
         // Check permissions
         if ( !_unitService.isAuthorized( unitToMove, UnitResourceIdService.PERMISSION_MOVE_UNIT, getUser( ), UnittreeRBACRecursiveType.PARENT_RECURSIVE ) )
@@ -1071,23 +1221,113 @@ public class UnitJspBean extends PluginAdminPageJspBean
 
         int nIdUnitToMove = Integer.parseInt( strIdUnitToMove );
         int nIdUnitParent = Integer.parseInt( strIdUnitParent );
-        Unit unitToMove = _unitService.getUnit( nIdUnitToMove, false );
-        Unit unitParent = _unitService.getUnit( nIdUnitParent, false );
+        Unit unitToMove = getUnit( request, nIdUnitToMove );
+        Unit unitParent = getUnit( request, nIdUnitParent );
 
         if ( _unitService.moveSubTree( unitToMove, unitParent ) )
         {
+            UnitRequestCache.clear( request );
             UrlItem urlItem = new UrlItem( JSP_URL_MANAGE_UNITS );
             urlItem.addParameter( PARAMETER_ID_UNIT, unitToMove.getIdUnit( ) );
 
-            initTreeUnit( request );
             return AdminMessageService.getMessageUrl( request, MESSAGE_SUB_TREE_MOVED, urlItem.getUrl( ), AdminMessage.TYPE_INFO );
         }
 
         return AdminMessageService.getMessageUrl( request, MESSAGE_CANT_MOVE_SUB_TREE_TO_CHILD, AdminMessage.TYPE_ERROR );
     }
 
+    /**
+     * Do import the units of a CSV or JSON file
+     * 
+     * @param request
+     *            the HTTP request
+     * @return the HTML code of the result of the import
+     * @throws AccessDeniedException
+     *             exception if the user does not have the permission
+     */
+    public String doImportUnits( HttpServletRequest request ) throws AccessDeniedException
+    {
+        setPageTitleProperty( PROPERTY_IMPORT_UNITS_PAGE_TITLE );
+
+        // Check permissions
+        if ( !canImportUnits( ) )
+        {
+            String strErrorMessage = I18nService.getLocalizedString( MESSAGE_ACCESS_DENIED, getLocale( ) );
+            throw new AccessDeniedException( strErrorMessage );
+        }
+
+        FileItem fileItem = ( request instanceof MultipartHttpServletRequest ) ? ( (MultipartHttpServletRequest) request ).getFile( PARAMETER_FILE ) : null;
+        UnitImportFormat format = ( fileItem != null ) ? UnitImportFormat.fromFileName( fileItem.getName( ) ) : null;
+
+        if ( format == null )
+        {
+            return getImportUnitsPage( I18nService.getLocalizedString( MESSAGE_ERROR_IMPORT_FILE, getLocale( ) ) );
+        }
+
+        UnitImportResult result;
+
+        try ( InputStream inputStream = fileItem.getInputStream( ) )
+        {
+            result = _unitImportService.importUnits( inputStream, format );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( e.getMessage( ) + " when importing units ", e );
+
+            return getImportUnitsPage( I18nService.getLocalizedString( MESSAGE_ERROR_IMPORT_FILE, getLocale( ) ) );
+        }
+        finally
+        {
+            UnitRequestCache.clear( request );
+        }
+
+        ReferenceList listImportErrors = new ReferenceList( );
+
+        for ( UnitImportError error : result.getErrors( ) )
+        {
+            listImportErrors.addItem( String.valueOf( error.getRecordNumber( ) ),
+                    I18nService.getLocalizedString( error.getMessageKey( ), error.getArguments( ), getLocale( ) ) );
+        }
+
+        Map<String, Object> model = new HashMap<>( );
+        model.put( MARK_IMPORT_RESULT, result );
+        model.put( MARK_LIST_IMPORT_ERRORS, listImportErrors );
+
+        HtmlTemplate template = AppTemplateService.getTemplate( TEMPLATE_IMPORT_UNITS_RESULT, getLocale( ), model );
+
+        return getAdminPage( template.getHtml( ) );
+    }
+
     // PRIVATE METHODS
 
+    /**
+     * Get the page of the form importing the units
+     * 
+     * @param strErrorMessage
+     *            the error message to display, or null
+     * @return the HTML code
+     */
+    private String getImportUnitsPage( String strErrorMessage )
+    {
+        Map<String, Object> model = new HashMap<>( );
+        model.put( MARK_ERROR_MESSAGE, strErrorMessage );
+
+        HtmlTemplate template = AppTemplateService.getTemplate( TEMPLATE_IMPORT_UNITS, getLocale( ), model );
+
+        return getAdminPage( template.getHtml( ) );
+    }
+
+    /**
+     * Check if the user may import units. The imported units may be created anywhere in the tree, so the creation must be allowed from the root unit.
+     * 
+     * @return true if the user may import units, false otherwise
+     */
+    private boolean canImportUnits( )
+    {
+        return _unitService.isAuthorized( _unitService.getRootUnit( false ), UnitResourceIdService.PERMISSION_CREATE, getUser( ),
+                UnittreeRBACRecursiveType.PARENT_RECURSIVE );
+    }
+
     /**
      * Reinit the search fields
      * 
@@ -1100,14 +1340,109 @@ public class UnitJspBean extends PluginAdminPageJspBean
     }
 
     /**
-     * Reinit the tree
+     * Get the units the user of the session may see. The tree itself is shared by all the sessions : the session only keeps the visibility of the
+     * units, which is shared by the users having the same roles, and refreshes it when the version of the tree changes.
+     * 
+     * @return the units the user may see
+     */
+    private UnitVisibility getUnitVisibility( )
+    {
+        UnitVisibility visibility = _unitVisibility;
+
+        if ( ( visibility == null ) || ( visibility.getTreeVersion( ) != _unitService.getTreeVersion( ) ) )
+        {
+            visibility = _unitService.getUnitVisibility( getUser( ) );
+            _unitVisibility = visibility;
+        }
+
+        return visibility;
+    }
+
+    /**
+     * Build the jstree node of a unit. The visible sub units of the opened units are included, the other units only tell if they have visible sub units.
+     * 
+     * @param unit
+     *            the unit
+     * @param visibility
+     *            the units the user may see
+     * @param setOpenedUnits
+     *            the ids of the opened units
+     * @param nIdSelectedUnit
+     *            the id of the selected unit
+     * @return the jstree node
+     */
+    private ObjectNode getJsonNode( Unit unit, UnitVisibility visibility, Set<Integer> setOpenedUnits, int nIdSelectedUnit )
+    {
+        UrlItem url = new UrlItem( JSP_URL_MANAGE_UNITS );
+        url.addParameter( PARAMETER_ID_UNIT, unit.getIdUnit( ) );
+
+        ObjectNode jsonNode = _mapper.createObjectNode( );
+        jsonNode.put( JSON_ID, JSON_NODE_PREFIX + unit.getIdUnit( ) );
+        jsonNode.put( JSON_TEXT, StringEscapeUtils.escapeHtml4( unit.getLabel( ) + " (" + unit.getCode( ) + ")" ) );
+        jsonNode.putObject( JSON_A_ATTR ).put( JSON_HREF, url.getUrl( ) );
+
+        List<Unit> listVisibleSubUnits = visibility.filter( _unitService.getSubUnits( unit.getIdUnit( ), false ) );
+        jsonNode.putObject( JSON_DATA ).put( JSON_CHILDREN_COUNT, listVisibleSubUnits.size( ) );
+
+        ObjectNode jsonState = jsonNode.putObject( JSON_STATE );
+        jsonState.put( JSON_SELECTED, unit.getIdUnit( ) == nIdSelectedUnit );
+
+        if ( setOpenedUnits.contains( unit.getIdUnit( ) ) )
+        {
+            jsonState.put( JSON_OPENED, true );
+
+            ArrayNode jsonChildren = jsonNode.putArray( JSON_CHILDREN );
+
+            for ( Unit subUnit : listVisibleSubUnits )
+            {
+                jsonChildren.add( getJsonNode( subUnit, visibility, setOpenedUnits, nIdSelectedUnit ) );
+            }
+        }
+        else
+        {
+            jsonNode.put( JSON_CHILDREN, !listVisibleSubUnits.isEmpty( ) );
+        }
+
+        return jsonNode;
+    }
+
+    /**
+     * Get a unit, without its additional infos, from the units already loaded by the request
      * 
      * @param request
      *            the HTTP request
+     * @param nIdUnit
+     *            the id unit
+     * @return the unit, or null if it does not exist
      */
-    private void initTreeUnit( HttpServletRequest request )
+    private Unit getUnit( HttpServletRequest request, int nIdUnit )
     {
-        _fullUnitTree = new TreeUnit( _unitService.getRootUnit( false ) );
-        _unitService.populateTreeUnit( _fullUnitTree, AdminUserService.getAdminUser( request ), false );
+        return UnitRequestCache.getUnit( request, _unitService, nIdUnit );
+    }
+
+    /**
+     * Check if a user has a permission on a unit, loading the unit from the units already loaded by the request
+     * 
+     * @param request
+     *            the HTTP request
+     * @param strIdUnit
+     *            the id unit
+     * @param strPermission
+     *            the permission
+     * @param user
+     *            the user
+     * @param recursiveType
+     *            the recursive type
+     * @return true if the user is authorized, false otherwise
+     */
+    private boolean isAuthorized( HttpServletRequest request, String strIdUnit, String strPermission, AdminUser user,
+            UnittreeRBACRecursiveType recursiveType )
+    {
+        if ( StringUtils.isNotBlank( strIdUnit ) && StringUtils.isNumeric( strIdUnit ) )
+        {
+            return _unitService.isAuthorized( getUnit( request, Integer.parseInt( strIdUnit ) ), strPermission, user, recursiveType );
+        }
+
+        return false;
     }
 }
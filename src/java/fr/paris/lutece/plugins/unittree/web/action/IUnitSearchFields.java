@@ -34,6 +34,7 @@
 package fr.paris.lutece.plugins.unittree.web.action;
 
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.service.unit.IUnitUserService;
 import fr.paris.lutece.portal.business.user.AdminUser;
 import fr.paris.lutece.portal.service.admin.AccessDeniedException;
 
@@ -143,6 +144,32 @@ public interface IUnitSearchFields
     void fillModelForUserSearchForm( List<AdminUser> listUsers, String strBaseUrl, HttpServletRequest request, Map<String, Object> model, Unit unit )
             throws AccessDeniedException;
 
+    /**
+     * Fill the model for the user search form of the users of a unit. The default implementation loads all the users of the unit then delegates to
+     * {@link #fillModelForUserSearchForm(List, String, HttpServletRequest, Map, Unit)}.
+     * 
+     * @param unitUserService
+     *            the unit user service
+     * @param strBaseUrl
+     *            the base url
+     * @param request
+     *            the HTTP request
+     * @param model
+     *            the model
+     * @param unit
+     *            the unit
+     * @param mapIdUserUnit
+     *            the map of <idUser, Unit> to fill for the displayed users
+     * @throws AccessDeniedException
+     *             exception if the user does not have the rights
+     */
+    default void fillModelForUnitUserSearchForm( IUnitUserService unitUserService, String strBaseUrl, HttpServletRequest request, Map<String, Object> model,
+            Unit unit, Map<String, Unit> mapIdUserUnit ) throws AccessDeniedException
+    {
+        List<AdminUser> listUsers = unitUserService.getUsers( unit.getIdUnit( ), mapIdUserUnit, isInDepthSearch( ) );
+        fillModelForUserSearchForm( listUsers, strBaseUrl, request, model, unit );
+    }
+
     /**
      * Check if if it an in depth search. <br />
      * It will check if the request possesses the parameter <strong>isInDepthSearch</strong>
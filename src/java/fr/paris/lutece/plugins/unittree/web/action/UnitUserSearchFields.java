@@ -43,8 +43,11 @@ import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.business.unit.UnitUserSearch;
+import fr.paris.lutece.plugins.unittree.service.unit.IUnitUserService;
 import fr.paris.lutece.portal.business.right.Level;
 import fr.paris.lutece.portal.business.right.LevelHome;
 import fr.paris.lutece.portal.business.user.AdminUser;
@@ -54,6 +57,7 @@ import fr.paris.lutece.portal.service.admin.AccessDeniedException;
 import fr.paris.lutece.portal.service.admin.AdminUserService;
 import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.web.constants.Parameters;
+import fr.paris.lutece.portal.web.util.LocalizedDelegatePaginator;
 import fr.paris.lutece.portal.web.util.LocalizedPaginator;
 import fr.paris.lutece.util.html.AbstractPaginator;
 import fr.paris.lutece.util.sort.AttributeComparator;
@@ -114,19 +118,7 @@ public class UnitUserSearchFields extends DefaultUnitSearchFields
     public void fillModelForUserSearchForm( List<AdminUser> listUsers, String strBaseUrl, HttpServletRequest request, Map<String, Object> model, Unit unit )
             throws AccessDeniedException
     {
-        if ( _user == null )
-        {
-            String strErrorMessage = I18nService.getLocalizedString( MESSAGE_ERROR_USER_NOT_LOGGED, request.getLocale( ) );
-            throw new AccessDeniedException( strErrorMessage );
-        }
-
-        if ( StringUtils.isBlank( request.getParameter( PARAMETER_SESSION ) ) )
-        {
-            _auFilter = new AdminUserFilter( );
-            _auFilter.setAdminUserFilter( request );
-        }
-
-        UrlItem url = new UrlItem( strBaseUrl );
+        initSearch( request );
 
         List<AdminUser> listFilteredUsers = new ArrayList<>( );
 
@@ -151,18 +143,115 @@ public class UnitUserSearchFields extends DefaultUnitSearchFields
         }
 
         // SORT
+        if ( getSortedAttributeName( ) != null )
+        {
+            Collections.sort( listFilteredUsers, new AttributeComparator( getSortedAttributeName( ), this.isAscSort( ) ) );
+        }
+
+        LocalizedPaginator<AdminUser> paginator = new LocalizedPaginator<>( listFilteredUsers, getItemsPerPage( ), getUrl( strBaseUrl, unit ),
+                AbstractPaginator.PARAMETER_PAGE_INDEX, getCurrentPageIndex( ), request.getLocale( ) );
+
+        fillModel( model, paginator );
+    }
+
+    /**
+     * {@inheritDoc} The users are filtered, sorted and paginated by the database : only the users of the current page are loaded.
+     */
+    @Override
+    public void fillModelForUnitUserSearchForm( IUnitUserService unitUserService, String strBaseUrl, HttpServletRequest request, Map<String, Object> model,
+            Unit unit, Map<String, Unit> mapIdUserUnit ) throws AccessDeniedException
+    {
+        initSearch( request );
+
+        UnitUserSearch search = new UnitUserSearch( );
+        search.setIdUnit( unit.getIdUnit( ) );
+        search.setInDepthSearch( this.isInDepthSearch( ) );
+        search.setAdminUserFilter( _auFilter );
+        search.setLevelAbove( _user.isAdmin( ) ? UnitUserSearch.LEVEL_NONE : _user.getUserLevel( ) );
+
+        if ( getSortedAttributeName( ) != null )
+        {
+            search.setSortedAttributeName( getSortedAttributeName( ) );
+            search.setAscSort( this.isAscSort( ) );
+        }
+
+        int nItemsCount = unitUserService.countUsers( search );
+        int nItemsPerPage = Math.max( 1, getItemsPerPage( ) );
+        int nPageIndex = getPageIndex( getCurrentPageIndex( ), nItemsCount, nItemsPerPage );
+        this.setCurrentPageIndex( Integer.toString( nPageIndex ) );
+
+        List<AdminUser> listUsers = unitUserService.getUsers( search, ( nPageIndex - 1 ) * nItemsPerPage, nItemsPerPage, mapIdUserUnit );
+
+        LocalizedDelegatePaginator<AdminUser> paginator = new LocalizedDelegatePaginator<>( listUsers, nItemsPerPage, getUrl( strBaseUrl, unit ),
+                AbstractPaginator.PARAMETER_PAGE_INDEX, getCurrentPageIndex( ), nItemsCount, request.getLocale( ) );
+
+        fillModel( model, paginator );
+    }
+
+    /**
+     * Get the index of the page to display, clamped to the existing pages, so that a page index kept from a previous search still shows users
+     * 
+     * @param strPageIndex
+     *            the requested page index
+     * @param nItemsCount
+     *            the number of users found
+     * @param nItemsPerPage
+     *            the number of users per page
+     * @return the page index, from 1 to the number of pages
+     */
+    static int getPageIndex( String strPageIndex, int nItemsCount, int nItemsPerPage )
+    {
+        int nPagesCount = Math.max( 1, ( ( nItemsCount - 1 ) / nItemsPerPage ) + 1 );
+
+        return Math.min( Math.max( 1, NumberUtils.toInt( strPageIndex, 1 ) ), nPagesCount );
+    }
+
+    /**
+     * Check the user is logged, then read the criteria, the sort and the page of the search from the request
+     * 
+     * @param request
+     *            the HTTP request
+     * @throws AccessDeniedException
+     *             exception if the user is not logged
+     */
+    private void initSearch( HttpServletRequest request ) throws AccessDeniedException
+    {
+        if ( _user == null )
+        {
+            String strErrorMessage = I18nService.getLocalizedString( MESSAGE_ERROR_USER_NOT_LOGGED, request.getLocale( ) );
+            throw new AccessDeniedException( strErrorMessage );
+        }
+
+        if ( StringUtils.isBlank( request.getParameter( PARAMETER_SESSION ) ) )
+        {
+            _auFilter = new AdminUserFilter( );
+            _auFilter.setAdminUserFilter( request );
+        }
+
         this.setSortedAttributeName( request );
 
         if ( getSortedAttributeName( ) != null )
         {
             this.setAscSort( request );
-
-            Collections.sort( listFilteredUsers, new AttributeComparator( getSortedAttributeName( ), this.isAscSort( ) ) );
         }
 
         this.setCurrentPageIndex( AbstractPaginator.getPageIndex( request, AbstractPaginator.PARAMETER_PAGE_INDEX, this.getCurrentPageIndex( ) ) );
         this.setItemsPerPage( AbstractPaginator.getItemsPerPage( request, AbstractPaginator.PARAMETER_ITEMS_PER_PAGE, this.getItemsPerPage( ),
                 this.getDefaultItemsPerPage( ) ) );
+    }
+
+    /**
+     * Get the url of the pages of the search
+     * 
+     * @param strBaseUrl
+     *            the base url
+     * @param unit
+     *            the unit
+     * @return the url
+     */
+    private String getUrl( String strBaseUrl, Unit unit )
+    {
+        UrlItem url = new UrlItem( strBaseUrl );
 
         if ( getSortedAttributeName( ) != null )
         {
@@ -173,9 +262,19 @@ public class UnitUserSearchFields extends DefaultUnitSearchFields
         url.addParameter( PARAMETER_ID_UNIT, unit.getIdUnit( ) );
         url.addParameter( PARAMETER_SESSION, PARAMETER_SESSION );
 
-        LocalizedPaginator<AdminUser> paginator = new LocalizedPaginator<>( listFilteredUsers, getItemsPerPage( ), url.getUrl( ),
-                AbstractPaginator.PARAMETER_PAGE_INDEX, getCurrentPageIndex( ), request.getLocale( ) );
+        return url.getUrl( );
+    }
 
+    /**
+     * Fill the model with the page of users and the search form
+     * 
+     * @param model
+     *            the model
+     * @param paginator
+     *            the paginator of the users
+     */
+    private void fillModel( Map<String, Object> model, AbstractPaginator<AdminUser> paginator )
+    {
         // USER LEVEL
         Collection<Level> filteredLevels = LevelHome.getLevelsList( ).stream( ).filter( level -> _user.isAdmin( ) || _user.hasRights( level.getId( ) ) )
                 .collect( Collectors.toList( ) );
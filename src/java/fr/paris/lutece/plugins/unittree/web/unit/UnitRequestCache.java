@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.web.unit;
+
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.plugins.unittree.service.unit.IUnitService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ *
+ * Identity map of the units loaded while processing an HTTP request. Each unit is loaded at most once per request, and the same instance is returned to
+ * all the callers of the request. The map is stored as an attribute of the request, so it is discarded with the request.
+ *
+ */
+public final class UnitRequestCache
+{
+    private static final String ATTRIBUTE_UNITS = "unittree.requestUnits";
+
+    /**
+     * Private constructor
+     */
+    private UnitRequestCache( )
+    {
+    }
+
+    /**
+     * Get a unit, without its additional infos, loading it only if it has not been loaded yet by the request
+     * 
+     * @param request
+     *            the HTTP request
+     * @param unitService
+     *            the unit service used to load the unit
+     * @param nIdUnit
+     *            the id unit
+     * @return the unit, or null if it does not exist
+     */
+    public static Unit getUnit( HttpServletRequest request, IUnitService unitService, int nIdUnit )
+    {
+        Map<Integer, Unit> mapUnits = getUnits( request );
+
+        // Missing units are cached as well, hence containsKey
+        if ( !mapUnits.containsKey( nIdUnit ) )
+        {
+            mapUnits.put( nIdUnit, unitService.getUnit( nIdUnit, false ) );
+        }
+
+        return mapUnits.get( nIdUnit );
+    }
+
+    /**
+     * Forget the units loaded by the request. This must be called when the request modifies the units.
+     * 
+     * @param request
+     *            the HTTP request
+     */
+    public static void clear( HttpServletRequest request )
+    {
+        request.removeAttribute( ATTRIBUTE_UNITS );
+    }
+
+    /**
+     * Get the identity map of the request, creating it if needed
+     * 
+     * @param request
+     *            the HTTP request
+     * @return the map of the units, by id unit
+     */
+    @SuppressWarnings( "unchecked" )
+    private static Map<Integer, Unit> getUnits( HttpServletRequest request )
+    {
+        Map<Integer, Unit> mapUnits = (Map<Integer, Unit>) request.getAttribute( ATTRIBUTE_UNITS );
+
+        if ( mapUnits == null )
+        {
+            mapUnits = new HashMap<>( );
+            request.setAttribute( ATTRIBUTE_UNITS, mapUnits );
+        }
+
+        return mapUnits;
+    }
+}
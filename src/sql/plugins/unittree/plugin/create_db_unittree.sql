@@ -1,5 +1,7 @@
 DROP TABLE IF EXISTS unittree_unit CASCADE;
 DROP TABLE IF EXISTS unittree_unit_user CASCADE;
+DROP TABLE IF EXISTS unittree_unit_closure;
+DROP TABLE IF EXISTS unittree_sequence;
 DROP TABLE IF EXISTS unittree_action;
 DROP TABLE IF EXISTS unittree_unit_assignment;
 
@@ -12,10 +14,35 @@ CREATE TABLE unittree_unit (
 	code VARCHAR(255) DEFAULT '' NOT NULL,
 	label VARCHAR(255) DEFAULT '' NOT NULL,
 	description VARCHAR(255) DEFAULT '' NOT NULL,
+	path VARCHAR(700) DEFAULT '' NOT NULL,
 	PRIMARY KEY (id_unit)
 );
 
 CREATE INDEX index_unittree_unit_code ON unittree_unit (code);
+CREATE INDEX index_unittree_unit_path ON unittree_unit (path);
+
+--
+-- Table structure for table unittree_unit_closure
+-- One row per (ancestor, descendant) pair, including each unit with itself at depth 0
+--
+CREATE TABLE unittree_unit_closure (
+	id_ancestor INT DEFAULT 0 NOT NULL,
+	id_descendant INT DEFAULT 0 NOT NULL,
+	depth INT DEFAULT 0 NOT NULL,
+	PRIMARY KEY (id_ancestor, id_descendant)
+);
+
+CREATE INDEX index_unittree_unit_closure_descendant ON unittree_unit_closure (id_descendant, depth);
+
+--
+-- Table structure for table unittree_sequence
+-- Next value of each sequence, incremented by blocks of ids
+--
+CREATE TABLE unittree_sequence (
+	name VARCHAR(50) DEFAULT '' NOT NULL,
+	next_value INT DEFAULT 0 NOT NULL,
+	PRIMARY KEY (name)
+);
 
 --
 -- Table structure for table unittree_unit_user
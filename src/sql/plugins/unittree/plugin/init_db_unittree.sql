@@ -2,7 +2,17 @@
 --
 -- Dumping data for table unittree_unit
 --
-INSERT INTO unittree_unit (id_unit, id_parent, code, label, description) VALUES (0,-1,'ROOT', 'Racine','Racine des entités');
+INSERT INTO unittree_unit (id_unit, id_parent, code, label, description, path) VALUES (0,-1,'ROOT', 'Racine','Racine des entités','/0/');
+
+--
+-- Dumping data for table unittree_unit_closure
+--
+INSERT INTO unittree_unit_closure (id_ancestor, id_descendant, depth) VALUES (0,0,0);
+
+--
+-- Dumping data for table unittree_sequence
+--
+INSERT INTO unittree_sequence (name, next_value) VALUES ('unittree_unit', 1);
 
 --
 -- Dumping data for table unittree_unit_action
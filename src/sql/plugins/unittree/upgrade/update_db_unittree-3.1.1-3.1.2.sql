@@ -0,0 +1,42 @@
+--
+-- Closure table of the unit tree : one row per (ancestor, descendant) pair
+--
+DROP TABLE IF EXISTS unittree_unit_closure;
+CREATE TABLE unittree_unit_closure (
+	id_ancestor INT DEFAULT 0 NOT NULL,
+	id_descendant INT DEFAULT 0 NOT NULL,
+	depth INT DEFAULT 0 NOT NULL,
+	PRIMARY KEY (id_ancestor, id_descendant)
+);
+
+CREATE INDEX index_unittree_unit_closure_descendant ON unittree_unit_closure (id_descendant, depth);
+
+--
+-- Each unit is linked to itself. The links to the parent units are inserted by the plugin when it starts (UnitHome.completeClosure),
+-- level by level until the deepest unit is reached, whatever the depth of the tree.
+--
+INSERT INTO unittree_unit_closure (id_ancestor, id_descendant, depth) SELECT id_unit, id_unit, 0 FROM unittree_unit;
+
+--
+-- Materialized path of the units, for instance /0/12/453/ : the ids of the unit and of its parent units from the root unit.
+-- The paths are set by the plugin when it starts (UnitHome.completePaths), level by level from the root unit.
+--
+ALTER TABLE unittree_unit ADD COLUMN path VARCHAR(700) DEFAULT '' NOT NULL;
+CREATE INDEX index_unittree_unit_path ON unittree_unit (path);
+
+--
+-- Sequence of the ids of the units, incremented by blocks of ids, starting after the greatest id unit
+--
+DROP TABLE IF EXISTS unittree_sequence;
+CREATE TABLE unittree_sequence (
+	name VARCHAR(50) DEFAULT '' NOT NULL,
+	next_value INT DEFAULT 0 NOT NULL,
+	PRIMARY KEY (name)
+);
+
+INSERT INTO unittree_sequence (name, next_value) SELECT 'unittree_unit', COALESCE(MAX(id_unit), 0) + 1 FROM unittree_unit;
+
+--
+-- To use a native sequence instead (unittree.unitIdGenerator=unittree.sequenceUnitIdGenerator), create it starting after the greatest id unit, for instance :
+-- CREATE SEQUENCE unittree_unit_seq START WITH <greatest id unit + 1>;
+--
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CompactUnitTreeTest extends LuteceTestCase
+{
+    // 0
+    // +- 10
+    // |  +- 12
+    // |  +- 11
+    // |     +- 13
+    // +- 20
+    private CompactUnitTree _tree;
+
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+
+        List<Unit> listUnits = new ArrayList<>( );
+        listUnits.add( createUnit( 0, Unit.ID_NULL ) );
+        listUnits.add( createUnit( 10, 0 ) );
+        listUnits.add( createUnit( 12, 10 ) );
+        listUnits.add( createUnit( 11, 10 ) );
+        listUnits.add( createUnit( 13, 11 ) );
+        listUnits.add( createUnit( 20, 0 ) );
+        _tree = new CompactUnitTree( listUnits );
+    }
+
+    public void testIndexOf( )
+    {
+        assertThat( _tree.size( ), is( 6 ) );
+        assertThat( _tree.getIdUnit( _tree.indexOf( 13 ) ), is( 13 ) );
+        assertThat( _tree.indexOf( 14 ), is( CompactUnitTree.NONE ) );
+    }
+
+    public void testChildrenKeepTheOrderOfTheList( )
+    {
+        int nChild = _tree.getFirstChild( _tree.indexOf( 10 ) );
+
+        assertThat( _tree.getIdUnit( nChild ), is( 12 ) );
+        assertThat( _tree.getIdUnit( _tree.getNextSibling( nChild ) ), is( 11 ) );
+        assertThat( _tree.getNextSibling( _tree.getNextSibling( nChild ) ), is( CompactUnitTree.NONE ) );
+    }
+
+    public void testDepth( )
+    {
+        assertThat( _tree.getDepth( _tree.indexOf( 0 ) ), is( 0 ) );
+        assertThat( _tree.getDepth( _tree.indexOf( 13 ) ), is( 3 ) );
+    }
+
+    public void testIsAncestor( )
+    {
+        assertThat( _tree.isAncestor( _tree.indexOf( 0 ), _tree.indexOf( 13 ) ), is( true ) );
+        assertThat( _tree.isAncestor( _tree.indexOf( 11 ), _tree.indexOf( 13 ) ), is( true ) );
+        assertThat( _tree.isAncestor( _tree.indexOf( 13 ), _tree.indexOf( 13 ) ), is( false ) );
+        assertThat( _tree.isAncestor( _tree.indexOf( 20 ), _tree.indexOf( 13 ) ), is( false ) );
+    }
+
+    public void testTraversalInPreOrder( )
+    {
+        int nRoot = _tree.indexOf( 10 );
+        List<Integer> listIds = new ArrayList<>( );
+
+        for ( int n = _tree.next( nRoot, nRoot ); n != CompactUnitTree.NONE; n = _tree.next( n, nRoot ) )
+        {
+            listIds.add( _tree.getIdUnit( n ) );
+        }
+
+        assertThat( listIds.toString( ), is( "[12, 11, 13]" ) );
+        assertThat( _tree.getSubTreeSize( nRoot ), is( 4 ) );
+        assertThat( _tree.getSubTreeSize( _tree.indexOf( 0 ) ), is( 6 ) );
+    }
+
+    public void testNestedIntervals( )
+    {
+        int nIndex = _tree.indexOf( 10 );
+
+        assertThat( _tree.getLeft( _tree.indexOf( 0 ) ), is( 0 ) );
+        assertThat( _tree.getRight( _tree.indexOf( 0 ) ), is( 5 ) );
+        assertThat( _tree.getLeft( nIndex ), is( 1 ) );
+        assertThat( _tree.getRight( nIndex ), is( 4 ) );
+        assertThat( _tree.getIdUnit( _tree.getIndexAt( 4 ) ), is( 13 ) );
+        assertThat( _tree.getIdUnit( _tree.getIndexAt( 5 ) ), is( 20 ) );
+    }
+
+    public void testLowestCommonAncestor( )
+    {
+        assertThat( _tree.getIdUnit( _tree.getLowestCommonAncestor( _tree.indexOf( 13 ), _tree.indexOf( 12 ) ) ), is( 10 ) );
+        assertThat( _tree.getIdUnit( _tree.getLowestCommonAncestor( _tree.indexOf( 13 ), _tree.indexOf( 20 ) ) ), is( 0 ) );
+        assertThat( _tree.getIdUnit( _tree.getLowestCommonAncestor( _tree.indexOf( 13 ), _tree.indexOf( 11 ) ) ), is( 11 ) );
+        assertThat( _tree.getIdUnit( _tree.getAncestorAtDepth( _tree.indexOf( 13 ), 1 ) ), is( 10 ) );
+        assertThat( _tree.getAncestorAtDepth( _tree.indexOf( 10 ), 2 ), is( CompactUnitTree.NONE ) );
+    }
+
+    public void testIncrementalChangesMatchAFullRebuild( )
+    {
+        Random random = new Random( 42 );
+        List<Unit> listUnits = new ArrayList<>( );
+        listUnits.add( createUnit( 0, Unit.ID_NULL ) );
+
+        for ( int nIdUnit = 1; nIdUnit < 30; nIdUnit++ )
+        {
+            listUnits.add( createUnit( nIdUnit, random.nextInt( nIdUnit ) ) );
+        }
+
+        listUnits.sort( ( unit1, unit2 ) -> unit1.getLabel( ).compareTo( unit2.getLabel( ) ) );
+
+        UnitTreeSnapshot snapshot = new UnitTreeSnapshot( listUnits, 0 );
+        long lLoadTime = snapshot.getLoadTime( );
+        int nNextId = 100;
+
+        for ( int nChange = 1; nChange <= 500; nChange++ )
+        {
+            List<Unit> listCurrentUnits = snapshot.getUnits( );
+            Unit unit = listCurrentUnits.get( random.nextInt( listCurrentUnits.size( ) ) );
+            Unit unitOther = listCurrentUnits.get( random.nextInt( listCurrentUnits.size( ) ) );
+
+            switch( random.nextInt( 4 ) )
+            {
+                case 0:
+                    // Ids are not always allocated in order
+                    snapshot = snapshot.withUnit( createUnit( ( random.nextInt( 3 ) == 0 ) ? -nNextId++ : nNextId++, unit.getIdUnit( ) ), nChange );
+                    break;
+                case 1:
+                    if ( !snapshot.hasSubUnits( unit.getIdUnit( ) ) && ( unit.getIdParent( ) != Unit.ID_NULL ) )
+                    {
+                        snapshot = snapshot.withoutUnit( unit.getIdUnit( ), nChange );
+                    }
+
+                    break;
+                case 2:
+                    if ( ( unit.getIdParent( ) != Unit.ID_NULL ) && ( unit.getIdUnit( ) != unitOther.getIdUnit( ) )
+                            && !snapshot.isParent( unit.getIdUnit( ), unitOther.getIdUnit( ) ) )
+                    {
+                        snapshot = snapshot.withParent( unit.getIdUnit( ), unitOther.getIdUnit( ), nChange );
+                    }
+
+                    break;
+                default:
+                    unit.setLabel( "L" + random.nextInt( 1000 ) );
+                    snapshot = snapshot.withUnit( unit, nChange );
+                    break;
+            }
+
+            assertSameTree( snapshot.getTree( ), new CompactUnitTree( snapshot.getUnits( ) ) );
+        }
+
+        // The time to live counts from the load of the units, not from the last change
+        assertThat( snapshot.getLoadTime( ), is( lLoadTime ) );
+    }
+
+    private static void assertSameTree( CompactUnitTree tree, CompactUnitTree treeRebuilt )
+    {
+        assertThat( tree.size( ), is( treeRebuilt.size( ) ) );
+
+        for ( int nIndex = 0; nIndex < tree.size( ); nIndex++ )
+        {
+            assertThat( tree.getIdUnit( nIndex ), is( treeRebuilt.getIdUnit( nIndex ) ) );
+            assertThat( tree.getParent( nIndex ), is( treeRebuilt.getParent( nIndex ) ) );
+            assertThat( tree.getFirstChild( nIndex ), is( treeRebuilt.getFirstChild( nIndex ) ) );
+            assertThat( tree.getNextSibling( nIndex ), is( treeRebuilt.getNextSibling( nIndex ) ) );
+            assertThat( tree.getLeft( nIndex ), is( treeRebuilt.getLeft( nIndex ) ) );
+            assertThat( tree.getRight( nIndex ), is( treeRebuilt.getRight( nIndex ) ) );
+            assertThat( tree.getIndexAt( nIndex ), is( treeRebuilt.getIndexAt( nIndex ) ) );
+            assertThat( tree.getDepth( nIndex ), is( treeRebuilt.getDepth( nIndex ) ) );
+
+            for ( int nDepth = 0; nDepth <= tree.getDepth( nIndex ); nDepth++ )
+            {
+                assertThat( tree.getAncestorAtDepth( nIndex, nDepth ), is( treeRebuilt.getAncestorAtDepth( nIndex, nDepth ) ) );
+            }
+        }
+    }
+
+    private static Unit createUnit( int nIdUnit, int nIdParent )
+    {
+        Unit unit = new Unit( );
+        unit.setIdUnit( nIdUnit );
+        unit.setIdParent( nIdParent );
+        unit.setLabel( String.valueOf( nIdUnit ) );
+
+        return unit;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.paris.lutece.plugins.unittree.service.UnitTreePlugin;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.test.LuteceTestCase;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HiLoUnitIdGeneratorTest extends LuteceTestCase
+{
+    private static final int [ ] BLOCK_SIZES = {
+            1, 3, 50
+    };
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 120;
+
+    // Same statement as the upgrade script creating the sequence
+    private static final String SQL_QUERY_SEED = "INSERT INTO unittree_sequence (name, next_value) SELECT 'unittree_unit', COALESCE(MAX(id_unit), 0) + 1 FROM unittree_unit";
+    private static final String SQL_QUERY_DELETE_SEQUENCE = "DELETE FROM unittree_sequence WHERE name = 'unittree_unit'";
+    private static final String SQL_QUERY_SELECT_NEXT_VALUE = "SELECT next_value FROM unittree_sequence WHERE name = 'unittree_unit'";
+    private static final String SQL_QUERY_UPDATE_NEXT_VALUE = "UPDATE unittree_sequence SET next_value = ? WHERE name = 'unittree_unit'";
+    private static final String SQL_QUERY_SELECT_MAX_ID_UNIT = "SELECT MAX(id_unit) FROM unittree_unit";
+
+    private Plugin _plugin;
+
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _plugin = PluginService.getPlugin( UnitTreePlugin.PLUGIN_NAME );
+    }
+
+    public void testBlockIsRefilledWhenExhausted( )
+    {
+        HiLoUnitIdGenerator generator = new HiLoUnitIdGenerator( 3 );
+        int nNextValue = selectInt( SQL_QUERY_SELECT_NEXT_VALUE );
+
+        // The first block is reserved by the first id
+        assertThat( generator.newId( _plugin ), is( nNextValue ) );
+        assertThat( selectInt( SQL_QUERY_SELECT_NEXT_VALUE ), is( nNextValue + 3 ) );
+        assertThat( generator.newId( _plugin ), is( nNextValue + 1 ) );
+        assertThat( generator.newId( _plugin ), is( nNextValue + 2 ) );
+        assertThat( selectInt( SQL_QUERY_SELECT_NEXT_VALUE ), is( nNextValue + 3 ) );
+
+        // The fourth id needs a new block
+        assertThat( generator.newId( _plugin ), is( nNextValue + 3 ) );
+        assertThat( selectInt( SQL_QUERY_SELECT_NEXT_VALUE ), is( nNextValue + 6 ) );
+    }
+
+    public void testConcurrentIdsAreUnique( ) throws Exception
+    {
+        for ( int nBlockSize : BLOCK_SIZES )
+        {
+            int nNextValue = selectInt( SQL_QUERY_SELECT_NEXT_VALUE );
+
+            // Two nodes sharing the sequence, with different block sizes
+            HiLoUnitIdGenerator [ ] generators = {
+                    new HiLoUnitIdGenerator( nBlockSize ), new HiLoUnitIdGenerator( 7 )
+            };
+            List<Integer> listIds = newIds( generators );
+            Set<Integer> setIds = new HashSet<>( listIds );
+
+            assertThat( "block size " + nBlockSize, setIds.size( ), is( THREADS * IDS_PER_THREAD ) );
+
+            for ( int nId : setIds )
+            {
+                assertThat( "block size " + nBlockSize, nId >= nNextValue, is( true ) );
+            }
+
+            assertThat( "block size " + nBlockSize, selectInt( SQL_QUERY_SELECT_NEXT_VALUE ) >= ( nNextValue + ( THREADS * IDS_PER_THREAD ) ), is( true ) );
+        }
+    }
+
+    public void testSeedStartsAfterTheGreatestIdUnit( )
+    {
+        Unit unit = MockUnit.create( );
+        UnitHome.create( unit );
+        int nPreviousNextValue = selectInt( SQL_QUERY_SELECT_NEXT_VALUE );
+
+        try
+        {
+            execute( SQL_QUERY_DELETE_SEQUENCE );
+            execute( SQL_QUERY_SEED );
+
+            int nMaxIdUnit = selectInt( SQL_QUERY_SELECT_MAX_ID_UNIT );
+
+            assertThat( nMaxIdUnit >= unit.getIdUnit( ), is( true ) );
+            assertThat( selectInt( SQL_QUERY_SELECT_NEXT_VALUE ), is( nMaxIdUnit + 1 ) );
+
+            HiLoUnitIdGenerator generator = new HiLoUnitIdGenerator( 5 );
+
+            assertThat( generator.newId( _plugin ), is( nMaxIdUnit + 1 ) );
+            assertThat( generator.newId( _plugin ), is( nMaxIdUnit + 2 ) );
+        }
+        finally
+        {
+            // The blocks already reserved by the running generators must stay reserved
+            int nNextValue = selectInt( SQL_QUERY_SELECT_NEXT_VALUE );
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_NEXT_VALUE, _plugin ) )
+            {
+                daoUtil.setInt( 1, Math.max( nNextValue, nPreviousNextValue ) );
+                daoUtil.executeUpdate( );
+            }
+
+            UnitHome.remove( unit.getIdUnit( ) );
+        }
+    }
+
+    /**
+     * Get ids from several threads started together, each thread using one of the generators in turn
+     * 
+     * @param generators
+     *            the generators
+     * @return all the ids
+     * @throws Exception
+     *             if a thread failed
+     */
+    private List<Integer> newIds( HiLoUnitIdGenerator [ ] generators ) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        CountDownLatch latchStart = new CountDownLatch( 1 );
+        List<Future<List<Integer>>> listFutures = new ArrayList<>( );
+
+        try
+        {
+            for ( int i = 0; i < THREADS; i++ )
+            {
+                HiLoUnitIdGenerator generator = generators [i % generators.length];
+                Callable<List<Integer>> task = ( ) -> {
+                    List<Integer> listIds = new ArrayList<>( IDS_PER_THREAD );
+                    latchStart.await( );
+
+                    for ( int j = 0; j < IDS_PER_THREAD; j++ )
+                    {
+                        listIds.add( generator.newId( _plugin ) );
+                    }
+
+                    return listIds;
+                };
+                listFutures.add( executor.submit( task ) );
+            }
+
+            latchStart.countDown( );
+
+            List<Integer> listIds = new ArrayList<>( );
+
+            for ( Future<List<Integer>> future : listFutures )
+            {
+                listIds.addAll( future.get( ) );
+            }
+
+            return listIds;
+        }
+        finally
+        {
+            executor.shutdownNow( );
+        }
+    }
+
+    private void execute( String strQuery )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( strQuery, _plugin ) )
+        {
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    private int selectInt( String strQuery )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( strQuery, _plugin ) )
+        {
+            daoUtil.executeQuery( );
+            daoUtil.next( );
+
+            return daoUtil.getInt( 1 );
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UnitMembershipIndexTest extends LuteceTestCase
+{
+    public void testLoadedIndex( )
+    {
+        UnitMembershipIndex index = new UnitMembershipIndex( new int [ ] {
+                2, 1, 2, 2, 0
+        }, new int [ ] {
+                30, 10, 10, 30, 0
+        }, 4 );
+
+        assertThat( index.isUserInUnit( 10, 1 ), is( true ) );
+        assertThat( index.isUserInUnit( 10, 2 ), is( true ) );
+        assertThat( index.isUserInUnit( 30, 1 ), is( false ) );
+        assertThat( index.isUserInUnit( 0, 0 ), is( false ) );
+        assertThat( index.getIdsUser( 2 ), is( new int [ ] {
+                10, 30
+        } ) );
+        assertThat( index.getIdsUnit( 10 ), is( new int [ ] {
+                1, 2
+        } ) );
+        assertThat( index.getAllIdsUser( ), is( new int [ ] {
+                10, 30
+        } ) );
+    }
+
+    public void testModifiedIndex( )
+    {
+        UnitMembershipIndex index = new UnitMembershipIndex( new int [ 0], new int [ 0], 0 );
+        UnitMembershipIndex indexModified = index.withUserInUnit( 1, 10 ).withUserInUnit( 2, 10 ).withUserInUnit( 2, 20 );
+
+        assertThat( index.hasUnit( 10 ), is( false ) );
+        assertThat( indexModified.withUserInUnit( 1, 10 ), is( indexModified ) );
+        assertThat( indexModified.getIdsUnit( 10 ), is( new int [ ] {
+                1, 2
+        } ) );
+
+        indexModified = indexModified.withoutUserInUnit( 10, 1 );
+        assertThat( indexModified.getIdsUnit( 10 ), is( new int [ ] {
+                2
+        } ) );
+        assertThat( indexModified.getIdsUser( 1 ), is( new int [ 0] ) );
+
+        indexModified = indexModified.withoutUsersInUnit( 2 );
+        assertThat( indexModified.hasUnit( 10 ), is( false ) );
+        assertThat( indexModified.hasUnit( 20 ), is( false ) );
+    }
+
+    public void testBulkModifiedIndex( )
+    {
+        UnitMembershipIndex index = new UnitMembershipIndex( new int [ 0], new int [ 0], 0 ).withUserInUnit( 1, 20 ).withUserInUnit( 2, 10 );
+        UnitMembershipIndex indexModified = index.withUsersInUnit( 1, new int [ ] {
+                30, 10, 20, 30
+        } );
+
+        assertThat( indexModified.getIdsUser( 1 ), is( new int [ ] {
+                10, 20, 30
+        } ) );
+        assertThat( indexModified.getIdsUnit( 10 ), is( new int [ ] {
+                1, 2
+        } ) );
+        assertThat( indexModified.getIdsUnit( 20 ), is( new int [ ] {
+                1
+        } ) );
+        assertThat( indexModified.getAllIdsUser( ), is( new int [ ] {
+                10, 20, 30
+        } ) );
+        assertThat( index.isUserInUnit( 30, 1 ), is( false ) );
+    }
+
+    public void testModifiedIndexKeepsTheLoadTime( )
+    {
+        UnitMembershipIndex index = new UnitMembershipIndex( new int [ 0], new int [ 0], 0 );
+        UnitMembershipIndex indexModified = index.withUserInUnit( 1, 10 ).withUsersInUnit( 2, new int [ ] {
+                10, 20
+        } ).withoutUserInUnit( 10, 1 ).withoutUsersInUnit( 2 );
+
+        assertThat( indexModified.getLoadTime( ), is( index.getLoadTime( ) ) );
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import fr.paris.lutece.plugins.unittree.service.UnitTreePlugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.test.LuteceTestCase;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UnitPathBusinessTest extends LuteceTestCase
+{
+    private List<Unit> _listCreatedUnits = new ArrayList<>( );
+
+    @Override
+    public void tearDown( ) throws Exception
+    {
+        // The sub units are removed first
+        for ( int i = _listCreatedUnits.size( ) - 1; i >= 0; i-- )
+        {
+            UnitHome.remove( _listCreatedUnits.get( i ).getIdUnit( ) );
+        }
+
+        super.tearDown( );
+    }
+
+    public void testPathsFollowTheMovedSubTree( )
+    {
+        Unit unitParent = createUnit( Unit.ID_ROOT );
+        Unit unitChild = createUnit( unitParent.getIdUnit( ) );
+        Unit unitGrandChild = createUnit( unitChild.getIdUnit( ) );
+        Unit unitOther = createUnit( Unit.ID_ROOT );
+
+        assertThat( UnitHome.getPath( unitGrandChild.getIdUnit( ) ), is( path( Unit.ID_ROOT, unitParent.getIdUnit( ), unitChild.getIdUnit( ),
+                unitGrandChild.getIdUnit( ) ) ) );
+
+        UnitHome.updateParent( unitChild.getIdUnit( ), unitOther.getIdUnit( ) );
+
+        assertThat( UnitHome.getPath( unitChild.getIdUnit( ) ), is( path( Unit.ID_ROOT, unitOther.getIdUnit( ), unitChild.getIdUnit( ) ) ) );
+        assertThat( UnitHome.getPath( unitGrandChild.getIdUnit( ) ), is( path( Unit.ID_ROOT, unitOther.getIdUnit( ), unitChild.getIdUnit( ),
+                unitGrandChild.getIdUnit( ) ) ) );
+        assertThat( UnitHome.getPath( unitParent.getIdUnit( ) ), is( path( Unit.ID_ROOT, unitParent.getIdUnit( ) ) ) );
+    }
+
+    public void testSubTreeFilter( )
+    {
+        Unit unitParent = createUnit( Unit.ID_ROOT );
+        Unit unitChild = createUnit( unitParent.getIdUnit( ) );
+        Unit unitGrandChild = createUnit( unitChild.getIdUnit( ) );
+        Unit unitOther = createUnit( Unit.ID_ROOT );
+
+        Set<Integer> setIncluding = selectIds( UnitHome.getSubTreeFilter( "u.id_unit", unitParent.getIdUnit( ), true ) );
+        Set<Integer> setExcluding = selectIds( UnitHome.getSubTreeFilter( "u.id_unit", unitParent.getIdUnit( ), false ) );
+
+        assertThat( setIncluding.size( ), is( 3 ) );
+        assertThat( setIncluding.contains( unitParent.getIdUnit( ) ), is( true ) );
+        assertThat( setIncluding.contains( unitGrandChild.getIdUnit( ) ), is( true ) );
+        assertThat( setIncluding.contains( unitOther.getIdUnit( ) ), is( false ) );
+        assertThat( setExcluding.size( ), is( 2 ) );
+        assertThat( setExcluding.contains( unitParent.getIdUnit( ) ), is( false ) );
+        assertThat( setExcluding.contains( unitChild.getIdUnit( ) ), is( true ) );
+
+        // The filter follows a move
+        UnitHome.updateParent( unitChild.getIdUnit( ), unitOther.getIdUnit( ) );
+
+        assertThat( selectIds( UnitHome.getSubTreeFilter( "u.id_unit", unitParent.getIdUnit( ), false ) ).size( ), is( 0 ) );
+        assertThat( selectIds( UnitHome.getSubTreeFilter( "u.id_unit", unitOther.getIdUnit( ), false ) ).size( ), is( 2 ) );
+    }
+
+    public void testSubTreeFilterOfNotExistingUnit( )
+    {
+        Unit unit = MockUnit.create( );
+
+        assertThat( selectIds( UnitHome.getSubTreeFilter( "u.id_unit", unit.getIdUnit( ), true ) ).size( ), is( 0 ) );
+    }
+
+    public void testSubTreeFilterRejectsInvalidColumn( )
+    {
+        try
+        {
+            UnitHome.getSubTreeFilter( "id_unit ) OR ( 1 = 1", Unit.ID_ROOT, true );
+            fail( "An invalid column must be rejected" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // Expected
+        }
+    }
+
+    public void testMoveMakingTheTreeTooDeepIsRejected( )
+    {
+        Unit unitBottom1 = createChain( 360 );
+        Unit unitTop2 = createUnit( Unit.ID_ROOT );
+        Unit unitBottom2 = createUnit( unitTop2.getIdUnit( ) );
+
+        while ( UnitHome.getPath( unitBottom2.getIdUnit( ) ).length( ) < 360 )
+        {
+            unitBottom2 = createUnit( unitBottom2.getIdUnit( ) );
+        }
+
+        String strPath = UnitHome.getPath( unitBottom2.getIdUnit( ) );
+
+        try
+        {
+            UnitHome.updateParent( unitTop2.getIdUnit( ), unitBottom1.getIdUnit( ) );
+            fail( "A path longer than the column must be rejected" );
+        }
+        catch( AppException e )
+        {
+            // Expected
+        }
+
+        // Nothing was updated
+        assertThat( UnitHome.findByPrimaryKey( unitTop2.getIdUnit( ) ).getIdParent( ), is( Unit.ID_ROOT ) );
+        assertThat( UnitHome.getPath( unitBottom2.getIdUnit( ) ), is( strPath ) );
+    }
+
+    private Unit createChain( int nPathLength )
+    {
+        Unit unit = createUnit( Unit.ID_ROOT );
+
+        while ( UnitHome.getPath( unit.getIdUnit( ) ).length( ) < nPathLength )
+        {
+            unit = createUnit( unit.getIdUnit( ) );
+        }
+
+        return unit;
+    }
+
+    private Unit createUnit( int nIdParent )
+    {
+        Unit unit = MockUnit.create( );
+        unit.setIdParent( nIdParent );
+        UnitHome.create( unit );
+        _listCreatedUnits.add( unit );
+
+        return unit;
+    }
+
+    private static String path( int... ids )
+    {
+        StringBuilder sbPath = new StringBuilder( "/" );
+
+        for ( int nId : ids )
+        {
+            sbPath.append( nId ).append( '/' );
+        }
+
+        return sbPath.toString( );
+    }
+
+    private static Set<Integer> selectIds( String strFilter )
+    {
+        Set<Integer> setIds = new HashSet<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( "SELECT u.id_unit FROM unittree_unit u WHERE " + strFilter, PluginService.getPlugin( UnitTreePlugin.PLUGIN_NAME ) ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                setIds.add( daoUtil.getInt( 1 ) );
+            }
+        }
+
+        return setIds;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.business.unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.business.user.AdminUserFilter;
+import fr.paris.lutece.portal.business.user.AdminUserHome;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UnitUserSearchBusinessTest extends LuteceTestCase
+{
+    private static final String PREFIX = "unittreeSearch";
+
+    // root
+    // +- unitTop
+    //    +- unitDeep, created first so that its id is smaller
+    private Unit _unitTop;
+    private Unit _unitDeep;
+    private AdminUser _userA;
+    private AdminUser _userB;
+    private AdminUser _userC;
+
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+
+        _unitDeep = createUnit( );
+        _unitTop = createUnit( );
+        UnitHome.updateParent( _unitDeep.getIdUnit( ), _unitTop.getIdUnit( ) );
+
+        _userA = createUser( "A", AdminUser.ACTIVE_CODE, 1 );
+        _userB = createUser( "B", AdminUser.NOT_ACTIVE_CODE, 1 );
+        _userC = createUser( "C", AdminUser.ACTIVE_CODE, 2 );
+
+        UnitHome.addUserToUnit( _unitTop.getIdUnit( ), _userA.getUserId( ) );
+        UnitHome.addUserToUnit( _unitDeep.getIdUnit( ), _userB.getUserId( ) );
+        UnitHome.addUserToUnit( _unitTop.getIdUnit( ), _userC.getUserId( ) );
+        UnitHome.addUserToUnit( _unitDeep.getIdUnit( ), _userC.getUserId( ) );
+    }
+
+    @Override
+    public void tearDown( ) throws Exception
+    {
+        UnitHome.removeUsersFromUnit( _unitDeep.getIdUnit( ) );
+        UnitHome.removeUsersFromUnit( _unitTop.getIdUnit( ) );
+        UnitHome.remove( _unitDeep.getIdUnit( ) );
+        UnitHome.remove( _unitTop.getIdUnit( ) );
+        AdminUserHome.remove( _userA.getUserId( ) );
+        AdminUserHome.remove( _userB.getUserId( ) );
+        AdminUserHome.remove( _userC.getUserId( ) );
+
+        super.tearDown( );
+    }
+
+    public void testSearchInUnitAndInSubTree( )
+    {
+        UnitUserSearch search = createSearch( false );
+
+        assertThat( UnitHome.countUsersBySearch( search ), is( 2 ) );
+        assertThat( getLastNames( UnitHome.findUsersBySearch( search, 0, 10, null ) ), is( names( "A", "C" ) ) );
+
+        search.setInDepthSearch( true );
+
+        assertThat( UnitHome.countUsersBySearch( search ), is( 3 ) );
+        assertThat( getLastNames( UnitHome.findUsersBySearch( search, 0, 10, null ) ), is( names( "A", "B", "C" ) ) );
+    }
+
+    public void testCriteriaAreBoundInTheirOrder( )
+    {
+        UnitUserSearch search = createSearch( true );
+        AdminUserFilter filter = new AdminUserFilter( );
+        filter.setAccessCode( PREFIX + "C" );
+        filter.setLastName( PREFIX + "C" );
+        filter.setFirstName( "first" + PREFIX );
+        filter.setEmail( PREFIX + "C@" );
+        filter.setStatus( AdminUser.ACTIVE_CODE );
+        filter.setUserLevel( 2 );
+        search.setAdminUserFilter( filter );
+        search.setLevelAbove( 1 );
+
+        assertThat( UnitHome.countUsersBySearch( search ), is( 1 ) );
+        assertThat( getLastNames( UnitHome.findUsersBySearch( search, 0, 10, null ) ), is( names( "C" ) ) );
+
+        // A criterion bound to the wrong parameter would not match the same user
+        filter.setStatus( AdminUser.NOT_ACTIVE_CODE );
+
+        assertThat( UnitHome.countUsersBySearch( search ), is( 0 ) );
+    }
+
+    public void testSortOnWhitelistedColumnOnly( )
+    {
+        UnitUserSearch search = createSearch( true );
+        search.setSortedAttributeName( "email" );
+        search.setAscSort( false );
+
+        assertThat( getLastNames( UnitHome.findUsersBySearch( search, 0, 10, null ) ), is( names( "C", "B", "A" ) ) );
+
+        // An attribute out of the whitelist is never written in the query : the users are sorted by last name
+        search.setSortedAttributeName( "password, ( SELECT 1 )" );
+        search.setAscSort( true );
+
+        assertThat( getLastNames( UnitHome.findUsersBySearch( search, 0, 10, null ) ), is( names( "A", "B", "C" ) ) );
+    }
+
+    public void testLimitAndOffset( )
+    {
+        UnitUserSearch search = createSearch( true );
+
+        assertThat( getLastNames( UnitHome.findUsersBySearch( search, 1, 1, null ) ), is( names( "B" ) ) );
+        assertThat( getLastNames( UnitHome.findUsersBySearch( search, 2, 10, null ) ), is( names( "C" ) ) );
+        assertThat( UnitHome.findUsersBySearch( search, 3, 10, null ).size( ), is( 0 ) );
+    }
+
+    public void testShownUnitIsTheNearestUnit( )
+    {
+        Map<Integer, Integer> mapIdUserIdUnit = new HashMap<>( );
+        UnitHome.findUsersBySearch( createSearch( true ), 0, 10, mapIdUserIdUnit );
+
+        // The user C is in both units : the top unit is nearer, even if the deep unit has a smaller id
+        assertThat( mapIdUserIdUnit.get( _userC.getUserId( ) ), is( _unitTop.getIdUnit( ) ) );
+        assertThat( mapIdUserIdUnit.get( _userB.getUserId( ) ), is( _unitDeep.getIdUnit( ) ) );
+
+        mapIdUserIdUnit.clear( );
+        UnitUserSearch search = createSearch( false );
+        search.setIdUnit( _unitDeep.getIdUnit( ) );
+        UnitHome.findUsersBySearch( search, 0, 10, mapIdUserIdUnit );
+
+        assertThat( mapIdUserIdUnit.get( _userC.getUserId( ) ), is( _unitDeep.getIdUnit( ) ) );
+    }
+
+    public void testUsersAreLoadedLikeTheCore( )
+    {
+        _userA.setLocale( Locale.ENGLISH );
+        _userA.setAccessibilityMode( true );
+        AdminUserHome.update( _userA );
+
+        AdminUser userCore = AdminUserHome.findByPrimaryKey( _userA.getUserId( ) );
+        AdminUser userById = UnitHome.findUsersByPrimaryKeys( Arrays.asList( _userA.getUserId( ) ) ).get( _userA.getUserId( ) );
+        AdminUser userBySearch = UnitHome.findUsersBySearch( createSearch( false ), 0, 1, null ).get( 0 );
+
+        for ( AdminUser user : Arrays.asList( userById, userBySearch ) )
+        {
+            assertThat( user.getUserId( ), is( userCore.getUserId( ) ) );
+            assertThat( user.getAccessCode( ), is( userCore.getAccessCode( ) ) );
+            assertThat( user.getLocale( ), is( userCore.getLocale( ) ) );
+            assertThat( user.getAccessibilityMode( ), is( userCore.getAccessibilityMode( ) ) );
+            assertThat( user.getPasswordMaxValidDate( ), is( userCore.getPasswordMaxValidDate( ) ) );
+            assertThat( user.getAccountMaxValidDate( ), is( userCore.getAccountMaxValidDate( ) ) );
+            assertThat( user.getLastLogin( ), is( userCore.getLastLogin( ) ) );
+            assertThat( user.getWorkgroupKey( ), is( userCore.getWorkgroupKey( ) ) );
+        }
+
+        assertThat( userById.getLocale( ), is( Locale.ENGLISH ) );
+    }
+
+    private UnitUserSearch createSearch( boolean bInDepthSearch )
+    {
+        // Only the users of this test match the filter
+        AdminUserFilter filter = new AdminUserFilter( );
+        filter.setLastName( PREFIX );
+
+        UnitUserSearch search = new UnitUserSearch( );
+        search.setIdUnit( _unitTop.getIdUnit( ) );
+        search.setInDepthSearch( bInDepthSearch );
+        search.setAdminUserFilter( filter );
+        search.setAscSort( true );
+
+        return search;
+    }
+
+    private static Unit createUnit( )
+    {
+        Unit unit = MockUnit.create( );
+        UnitHome.create( unit );
+
+        return unit;
+    }
+
+    private static AdminUser createUser( String strName, int nStatus, int nLevel )
+    {
+        AdminUser user = new AdminUser( );
+        user.setAccessCode( PREFIX + strName );
+        user.setLastName( PREFIX + strName );
+        user.setFirstName( "first" + PREFIX );
+        user.setEmail( PREFIX + strName + "@example.com" );
+        user.setStatus( nStatus );
+        user.setUserLevel( nLevel );
+        AdminUserHome.create( user );
+
+        return user;
+    }
+
+    private static List<String> getLastNames( List<AdminUser> listUsers )
+    {
+        List<String> listNames = new ArrayList<>( );
+
+        for ( AdminUser user : listUsers )
+        {
+            listNames.add( user.getLastName( ) );
+        }
+
+        return listNames;
+    }
+
+    private static List<String> names( String... names )
+    {
+        List<String> listNames = new ArrayList<>( );
+
+        for ( String strName : names )
+        {
+            listNames.add( PREFIX + strName );
+        }
+
+        return listNames;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CsvUnitImportReaderTest extends LuteceTestCase
+{
+    private static final String HEADER = "code;parent_code;label;description;users\n";
+
+    public void testQuotedFields( ) throws IOException
+    {
+        CsvUnitImportReader reader = createReader( HEADER + "A;;\"Label; with \"\"quotes\"\"\";\"First line\r\nsecond line\";\"jdoe, asmith\"\n" );
+
+        UnitImportRecord record = reader.read( );
+
+        assertThat( record.getCode( ), is( "A" ) );
+        assertThat( record.getParentCode( ), is( "" ) );
+        assertThat( record.getLabel( ), is( "Label; with \"quotes\"" ) );
+        assertThat( record.getDescription( ), is( "First line\r\nsecond line" ) );
+        assertThat( record.getUserAccessCodes( ), is( Arrays.asList( "jdoe", "asmith" ) ) );
+        assertThat( reader.read( ), is( nullValue( ) ) );
+    }
+
+    public void testLineEndings( ) throws IOException
+    {
+        CsvUnitImportReader reader = createReader( "code;parent_code;label;description;users\r\nA;;Label A;;\r\nB;A;Label B;Description B;jdoe\r\nC;A;Label C" );
+
+        UnitImportRecord record = reader.read( );
+
+        assertThat( record.getRecordNumber( ), is( 1 ) );
+        assertThat( record.getLabel( ), is( "Label A" ) );
+        assertThat( record.getUserAccessCodes( ).isEmpty( ), is( true ) );
+
+        record = reader.read( );
+
+        assertThat( record.getRecordNumber( ), is( 2 ) );
+        assertThat( record.getParentCode( ), is( "A" ) );
+        assertThat( record.getDescription( ), is( "Description B" ) );
+        assertThat( record.getUserAccessCodes( ), is( Arrays.asList( "jdoe" ) ) );
+
+        // The last line has neither a line break nor the last columns
+        record = reader.read( );
+
+        assertThat( record.getRecordNumber( ), is( 3 ) );
+        assertThat( record.getLabel( ), is( "Label C" ) );
+        assertThat( record.getDescription( ), is( nullValue( ) ) );
+        assertThat( record.getUserAccessCodes( ).isEmpty( ), is( true ) );
+        assertThat( reader.read( ), is( nullValue( ) ) );
+    }
+
+    public void testBlankLinesAreIgnored( ) throws IOException
+    {
+        CsvUnitImportReader reader = createReader( HEADER + "\nA;;Label A;;\n   \n\r\nB;A;Label B;;\n\n" );
+
+        UnitImportRecord record = reader.read( );
+
+        assertThat( record.getCode( ), is( "A" ) );
+        assertThat( record.getRecordNumber( ), is( 1 ) );
+
+        record = reader.read( );
+
+        assertThat( record.getCode( ), is( "B" ) );
+        assertThat( record.getRecordNumber( ), is( 2 ) );
+        assertThat( reader.read( ), is( nullValue( ) ) );
+    }
+
+    public void testHeaderOnly( ) throws IOException
+    {
+        assertThat( createReader( HEADER ).read( ), is( nullValue( ) ) );
+        assertThat( createReader( "" ).read( ), is( nullValue( ) ) );
+    }
+
+    public void testUnterminatedQuote( ) throws IOException
+    {
+        CsvUnitImportReader reader = createReader( HEADER + "A;;Label A;;\nB;A;\"Label B;;\nC;A;Label C;;\n" );
+
+        assertThat( reader.read( ).getCode( ), is( "A" ) );
+
+        try
+        {
+            reader.read( );
+            fail( "An unterminated quoted field must be rejected" );
+        }
+        catch( IOException e )
+        {
+            // Expected
+        }
+    }
+
+    private static CsvUnitImportReader createReader( String strContent )
+    {
+        return new CsvUnitImportReader( new ByteArrayInputStream( strContent.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+}
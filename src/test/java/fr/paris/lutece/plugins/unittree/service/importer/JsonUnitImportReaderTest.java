@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class JsonUnitImportReaderTest extends LuteceTestCase
+{
+    public void testRecords( ) throws IOException
+    {
+        JsonUnitImportReader reader = createReader( "[\r\n\r\n  { \"code\" : \"A\", \"parentCode\" : null, \"label\" : \" Label \\\"quoted\\\" \", \"users\" : [ \" jdoe \", \"asmith\" ] },\r\n\n"
+                + "  { \"code\" : \"B\", \"parentCode\" : \"A\", \"label\" : \"First line\\r\\nsecond line\", \"description\" : \"Description B\", \"other\" : { \"users\" : 1 } }\n\n]\n" );
+
+        UnitImportRecord record = reader.read( );
+
+        assertThat( record.getRecordNumber( ), is( 1 ) );
+        assertThat( record.getCode( ), is( "A" ) );
+        assertThat( record.getParentCode( ), is( nullValue( ) ) );
+        assertThat( record.getLabel( ), is( "Label \"quoted\"" ) );
+        assertThat( record.getDescription( ), is( nullValue( ) ) );
+        assertThat( record.getUserAccessCodes( ), is( Arrays.asList( "jdoe", "asmith" ) ) );
+
+        record = reader.read( );
+
+        assertThat( record.getRecordNumber( ), is( 2 ) );
+        assertThat( record.getParentCode( ), is( "A" ) );
+        assertThat( record.getLabel( ), is( "First line\r\nsecond line" ) );
+        assertThat( record.getDescription( ), is( "Description B" ) );
+        assertThat( record.getUserAccessCodes( ).isEmpty( ), is( true ) );
+        assertThat( reader.read( ), is( nullValue( ) ) );
+    }
+
+    public void testEmptyArray( ) throws IOException
+    {
+        assertThat( createReader( " [ ] " ).read( ), is( nullValue( ) ) );
+    }
+
+    public void testArrayIsExpected( )
+    {
+        assertRejected( "{ \"code\" : \"A\" }" );
+        assertRejected( "[ \"A\" ]" );
+    }
+
+    public void testUnterminatedContent( ) throws IOException
+    {
+        JsonUnitImportReader reader = createReader( "[ { \"code\" : \"A\", \"label\" : \"Label A\" }, { \"code\" : \"B\", \"label\" : \"Label B" );
+
+        assertThat( reader.read( ).getCode( ), is( "A" ) );
+
+        try
+        {
+            reader.read( );
+            fail( "An unterminated string must be rejected" );
+        }
+        catch( IOException e )
+        {
+            // Expected
+        }
+    }
+
+    private static void assertRejected( String strContent )
+    {
+        try
+        {
+            createReader( strContent ).read( );
+            fail( "The content must be rejected : " + strContent );
+        }
+        catch( IOException e )
+        {
+            // Expected
+        }
+    }
+
+    private static JsonUnitImportReader createReader( String strContent ) throws IOException
+    {
+        return new JsonUnitImportReader( new ByteArrayInputStream( strContent.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+}
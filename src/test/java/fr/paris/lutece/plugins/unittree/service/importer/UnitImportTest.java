@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.unittree.service.importer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.paris.lutece.plugins.unittree.business.unit.Unit;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UnitImportTest extends LuteceTestCase
+{
+    private static final String MESSAGE_ERROR_MISSING_FIELDS = "unittree.import.error.missingFields";
+    private static final String MESSAGE_ERROR_DUPLICATE_CODE = "unittree.import.error.duplicateCode";
+    private static final String MESSAGE_ERROR_PARENT_NOT_FOUND = "unittree.import.error.parentNotFound";
+    private static final String MESSAGE_ERROR_USER_NOT_FOUND = "unittree.import.error.userNotFound";
+    private static final String MESSAGE_ERROR_USER_ALREADY_IN_UNIT = "unittree.import.error.userAlreadyInUnit";
+    private static final int ID_EXISTING_UNIT = 1;
+    private static final int ID_USER_IN_UNIT = 10;
+
+    private StubStore _store;
+    private UnitImportResult _result;
+
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _store = new StubStore( );
+        _result = new UnitImportResult( );
+    }
+
+    public void testChildBeforeParent( )
+    {
+        importRecords( false, 10, record( 1, "C", "B" ), record( 2, "B", "A" ), record( 3, "D", "EXISTING" ), record( 4, "A", "" ) );
+
+        assertThat( _result.getErrorsCount( ), is( 0 ) );
+        assertThat( _result.getCreatedUnitsCount( ), is( 4 ) );
+        assertThat( _store._listWrites.size( ), is( 1 ) );
+        assertThat( codes( _store._listWrites.get( 0 ) ), is( Arrays.asList( "D", "A", "B", "C" ) ) );
+        assertThat( _store.getUnit( "A" ).getIdParent( ), is( Unit.ID_ROOT ) );
+        assertThat( _store.getUnit( "B" ).getIdParent( ), is( _store.getUnit( "A" ).getIdUnit( ) ) );
+        assertThat( _store.getUnit( "C" ).getIdParent( ), is( _store.getUnit( "B" ).getIdUnit( ) ) );
+        assertThat( _store.getUnit( "D" ).getIdParent( ), is( ID_EXISTING_UNIT ) );
+        assertThat( _store._listPathsRead, is( Arrays.asList( ID_EXISTING_UNIT, Unit.ID_ROOT ) ) );
+    }
+
+    public void testSelfParentAndCyclesAreReported( )
+    {
+        importRecords( false, 10, record( 1, "X", "X" ), record( 2, "P", "Q" ), record( 3, "A", "" ), record( 4, "Q", "P" ) );
+
+        assertThat( _result.getCreatedUnitsCount( ), is( 1 ) );
+        assertErrors( MESSAGE_ERROR_PARENT_NOT_FOUND, 1, MESSAGE_ERROR_PARENT_NOT_FOUND, 2, MESSAGE_ERROR_PARENT_NOT_FOUND, 4 );
+        assertThat( _result.getErrors( ).get( 0 ).getArguments( ), is( new Object [ ] {
+                "X", "X"
+        } ) );
+    }
+
+    public void testMissingParentIsReportedAtTheEnd( )
+    {
+        UnitImport unitImport = new UnitImport( _result, false, 10, _store );
+        unitImport.accept( record( 1, "A", "MISSING" ) );
+        unitImport.accept( record( 2, "B", "" ) );
+        unitImport.accept( record( 3, "C", "A" ) );
+        unitImport.accept( record( 4, "D", "OTHER MISSING" ) );
+        unitImport.flush( );
+
+        // The parent may come later : nothing is reported before the end of the file
+        assertThat( _result.getErrorsCount( ), is( 0 ) );
+
+        unitImport.reportPendingRecords( );
+
+        // The records waiting for a missing parent are reported too
+        assertErrors( MESSAGE_ERROR_PARENT_NOT_FOUND, 1, MESSAGE_ERROR_PARENT_NOT_FOUND, 3, MESSAGE_ERROR_PARENT_NOT_FOUND, 4 );
+        assertThat( _result.getErrors( ).get( 2 ).getArguments( ), is( new Object [ ] {
+                "OTHER MISSING", "D"
+        } ) );
+        assertThat( _result.getCreatedUnitsCount( ), is( 1 ) );
+    }
+
+    public void testDuplicateCodes( )
+    {
+        importRecords( false, 10, record( 1, "EXISTING", "" ), record( 2, "A", "" ), record( 3, "A", "" ), record( 4, "B", "A" ) );
+
+        assertErrors( MESSAGE_ERROR_DUPLICATE_CODE, 1, MESSAGE_ERROR_DUPLICATE_CODE, 3 );
+        assertThat( codes( _store._listWrites.get( 0 ) ), is( Arrays.asList( "A", "B" ) ) );
+    }
+
+    public void testMissingFields( )
+    {
+        UnitImportRecord recordWithoutLabel = record( 2, "B", "" );
+        recordWithoutLabel.setLabel( " " );
+
+        importRecords( false, 10, record( 1, " ", "" ), recordWithoutLabel, record( 3, "C", "" ) );
+
+        assertErrors( MESSAGE_ERROR_MISSING_FIELDS, 1, MESSAGE_ERROR_MISSING_FIELDS, 2 );
+        assertThat( _result.getCreatedUnitsCount( ), is( 1 ) );
+    }
+
+    public void testUserOfAnotherUnitIsRejected( )
+    {
+        importRecords( false, 10, record( 1, "A", "", "user10", "user11" ), record( 2, "B", "", "user11", "user12", "user12", "nobody" ) );
+
+        assertErrors( MESSAGE_ERROR_USER_ALREADY_IN_UNIT, 1, MESSAGE_ERROR_USER_ALREADY_IN_UNIT, 2, MESSAGE_ERROR_USER_NOT_FOUND, 2 );
+        assertThat( _store._listAssignments, is( Arrays.asList( assignment( "A", 11 ), assignment( "B", 12 ) ) ) );
+        assertThat( _result.getAddedUsersCount( ), is( 2 ) );
+    }
+
+    public void testUsersInSeveralUnitsWithMultiAffectation( )
+    {
+        importRecords( true, 10, record( 1, "A", "", "user10", "user11" ), record( 2, "B", "", "user11" ) );
+
+        assertThat( _result.getErrorsCount( ), is( 0 ) );
+        assertThat( _store._listAssignments, is( Arrays.asList( assignment( "A", 10 ), assignment( "A", 11 ), assignment( "B", 11 ) ) ) );
+    }
+
+    public void testChunksAreFlushedAtTheChunkSize( )
+    {
+        UnitImport unitImport = new UnitImport( _result, false, 2, _store );
+        unitImport.accept( record( 1, "A", "", "user11" ) );
+
+        assertThat( _store._listWrites.size( ), is( 0 ) );
+
+        unitImport.accept( record( 2, "B", "A" ) );
+
+        assertThat( _store._listWrites.size( ), is( 1 ) );
+        assertThat( _result.getCreatedUnitsCount( ), is( 2 ) );
+        assertThat( _result.getAddedUsersCount( ), is( 1 ) );
+
+        // The five waiting records are created when their parent comes, over several chunks
+        unitImport.accept( record( 3, "E", "D" ) );
+        unitImport.accept( record( 4, "F", "D" ) );
+        unitImport.accept( record( 5, "G", "E" ) );
+        unitImport.accept( record( 6, "H", "G" ) );
+        unitImport.accept( record( 7, "D", "B", "user12" ) );
+
+        assertThat( _store._listWrites.size( ), is( 3 ) );
+
+        unitImport.flush( );
+        unitImport.flush( );
+        unitImport.reportPendingRecords( );
+
+        assertThat( _store._listWrites.size( ), is( 4 ) );
+        assertThat( _result.getErrorsCount( ), is( 0 ) );
+        assertThat( _result.getCreatedUnitsCount( ), is( 7 ) );
+        assertThat( _result.getAddedUsersCount( ), is( 2 ) );
+
+        for ( List<Unit> listUnits : _store._listWrites )
+        {
+            assertThat( listUnits.size( ) <= 2, is( true ) );
+        }
+    }
+
+    private void importRecords( boolean bMultiAffectationEnabled, int nChunkSize, UnitImportRecord... records )
+    {
+        UnitImport unitImport = new UnitImport( _result, bMultiAffectationEnabled, nChunkSize, _store );
+
+        for ( UnitImportRecord record : records )
+        {
+            unitImport.accept( record );
+        }
+
+        unitImport.flush( );
+        unitImport.reportPendingRecords( );
+    }
+
+    private void assertErrors( Object... expected )
+    {
+        List<Object> listErrors = new ArrayList<>( );
+
+        for ( UnitImportError error : _result.getErrors( ) )
+        {
+            listErrors.add( error.getMessageKey( ) );
+            listErrors.add( error.getRecordNumber( ) );
+        }
+
+        assertThat( listErrors, is( Arrays.asList( expected ) ) );
+    }
+
+    private String assignment( String strCode, int nIdUser )
+    {
+        return _store.getUnit( strCode ).getIdUnit( ) + ":" + nIdUser;
+    }
+
+    private static List<String> codes( List<Unit> listUnits )
+    {
+        List<String> listCodes = new ArrayList<>( );
+
+        for ( Unit unit : listUnits )
+        {
+            listCodes.add( unit.getCode( ) );
+        }
+
+        return listCodes;
+    }
+
+    private static UnitImportRecord record( int nRecordNumber, String strCode, String strParentCode, String... accessCodes )
+    {
+        UnitImportRecord record = new UnitImportRecord( );
+        record.setRecordNumber( nRecordNumber );
+        record.setCode( strCode );
+        record.setParentCode( strParentCode );
+        record.setLabel( "Label " + strCode );
+        record.getUserAccessCodes( ).addAll( Arrays.asList( accessCodes ) );
+
+        return record;
+    }
+
+    private static Unit createUnit( int nIdUnit, int nIdParent, String strCode )
+    {
+        Unit unit = new Unit( );
+        unit.setIdUnit( nIdUnit );
+        unit.setIdParent( nIdParent );
+        unit.setCode( strCode );
+        unit.setLabel( strCode );
+
+        return unit;
+    }
+
+    /**
+     * Store keeping the writes in memory, and checking that each parent is written before its children
+     */
+    private static final class StubStore implements IUnitImportStore
+    {
+        private final List<Unit> _listExistingUnits = Arrays.asList( createUnit( Unit.ID_ROOT, Unit.ID_NULL, "ROOT" ),
+                createUnit( ID_EXISTING_UNIT, Unit.ID_ROOT, "EXISTING" ) );
+        private final Set<Integer> _setWrittenIds = new HashSet<>( );
+        private final Map<String, Unit> _mapWrittenUnits = new HashMap<>( );
+        private final List<List<Unit>> _listWrites = new ArrayList<>( );
+        private final List<String> _listAssignments = new ArrayList<>( );
+        private final List<Integer> _listPathsRead = new ArrayList<>( );
+        private int _nNextId = 100;
+
+        StubStore( )
+        {
+            for ( Unit unit : _listExistingUnits )
+            {
+                _setWrittenIds.add( unit.getIdUnit( ) );
+            }
+        }
+
+        Unit getUnit( String strCode )
+        {
+            return _mapWrittenUnits.get( strCode );
+        }
+
+        @Override
+        public Collection<Unit> getUnits( )
+        {
+            return _listExistingUnits;
+        }
+
+        @Override
+        public boolean containsUnit( int nIdUnit )
+        {
+            return ( nIdUnit == Unit.ID_ROOT ) || ( nIdUnit == ID_EXISTING_UNIT );
+        }
+
+        @Override
+        public String getPath( int nIdUnit )
+        {
+            _listPathsRead.add( nIdUnit );
+
+            return ( nIdUnit == Unit.ID_ROOT ) ? "/0/" : "/0/" + nIdUnit + "/";
+        }
+
+        @Override
+        public boolean hasUnit( int nIdUser )
+        {
+            return nIdUser == ID_USER_IN_UNIT;
+        }
+
+        @Override
+        public Map<String, Integer> getIdsUserByAccessCode( )
+        {
+            Map<String, Integer> mapIdsUser = new HashMap<>( );
+            mapIdsUser.put( "user10", 10 );
+            mapIdsUser.put( "user11", 11 );
+            mapIdsUser.put( "user12", 12 );
+
+            return mapIdsUser;
+        }
+
+        @Override
+        public int newPrimaryKey( )
+        {
+            return _nNextId++;
+        }
+
+        @Override
+        public void write( List<Unit> listUnits, Map<Integer, String> mapPaths, int [ ] idsUnit, int [ ] idsUser, int nAssignments )
+        {
+            for ( Unit unit : listUnits )
+            {
+                // The parent is an existing unit, a unit of a previous chunk or a unit written before in this chunk
+                assertThat( "parent of " + unit.getCode( ), _setWrittenIds.contains( unit.getIdParent( ) ), is( true ) );
+                assertThat( "path of the parent of " + unit.getCode( ), mapPaths.containsKey( unit.getIdParent( ) ), is( true ) );
+
+                mapPaths.put( unit.getIdUnit( ), mapPaths.get( unit.getIdParent( ) ) + unit.getIdUnit( ) + "/" );
+                _setWrittenIds.add( unit.getIdUnit( ) );
+                _mapWrittenUnits.put( unit.getCode( ), unit );
+            }
+
+            for ( int i = 0; i < nAssignments; i++ )
+            {
+                assertThat( _setWrittenIds.contains( idsUnit [i] ), is( true ) );
+                _listAssignments.add( idsUnit [i] + ":" + idsUser [i] );
+            }
+
+            _listWrites.add( new ArrayList<>( listUnits ) );
+        }
+    }
+}
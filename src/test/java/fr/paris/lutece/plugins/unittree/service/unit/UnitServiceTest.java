@@ -206,4 +206,37 @@ public class UnitServiceTest extends LuteceTestCase
         UnitHome.remove( unitChild2.getIdUnit( ) );
         UnitHome.remove( unitParent.getIdUnit( ) );
     }
+
+    public void testParentUnitsAfterSubTreeMove( )
+    {
+        Unit unitParent1 = insertUnitInDatabase( );
+        Unit unitParent2 = insertUnitInDatabase( );
+        Unit unitChild = insertUnitInDatabase( );
+        Unit unitChild_1 = insertUnitInDatabase( );
+        setParentUnit( unitChild, unitParent1 );
+        setParentUnit( unitChild_1, unitChild );
+
+        assertThat( _unitService.isParent( unitParent1, unitChild_1 ), is( true ) );
+        assertThat( _unitService.isParent( unitParent2, unitChild_1 ), is( false ) );
+
+        setParentUnit( unitChild, unitParent2 );
+
+        assertThat( _unitService.isParent( unitParent1, unitChild_1 ), is( false ) );
+        assertThat( _unitService.isParent( unitParent2, unitChild_1 ), is( true ) );
+        assertThatSubUnitListsAreEqual( _unitService.getAllSubUnits( unitParent2, false ), unitChild, unitChild_1 );
+        assertThat( _unitService.getAllSubUnits( unitParent1, false ).size( ), is( 0 ) );
+
+        List<Unit> listParentUnits = _unitService.getListParentUnits( unitChild_1 );
+        assertThat( listParentUnits.size( ), is( 4 ) );
+        assertThat( listParentUnits.get( 1 ).getIdUnit( ), is( unitChild.getIdUnit( ) ) );
+        assertThat( listParentUnits.get( 2 ).getIdUnit( ), is( unitParent2.getIdUnit( ) ) );
+        assertThat( listParentUnits.get( 3 ).getIdUnit( ), is( Unit.ID_ROOT ) );
+        assertThat( UnitHome.getPath( unitChild_1.getIdUnit( ) ),
+                is( "/0/" + unitParent2.getIdUnit( ) + "/" + unitChild.getIdUnit( ) + "/" + unitChild_1.getIdUnit( ) + "/" ) );
+
+        UnitHome.remove( unitChild_1.getIdUnit( ) );
+        UnitHome.remove( unitChild.getIdUnit( ) );
+        UnitHome.remove( unitParent2.getIdUnit( ) );
+        UnitHome.remove( unitParent1.getIdUnit( ) );
+    }
 }
@@ -0,0 +1,6 @@
+<%@ page errorPage="../../ErrorPage.jsp" contentType="application/json; charset=UTF-8" trimDirectiveWhitespaces="true" %>
+
+<jsp:useBean id="unit" scope="session" class="fr.paris.lutece.plugins.unittree.web.UnitJspBean" />
+
+<% unit.init( request, unit.RIGHT_MANAGE_UNITS ); %>
+<%= unit.getUnitChildren( request ) %>